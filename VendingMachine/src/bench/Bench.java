@@ -0,0 +1,199 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Small benchmark harness. Every benchmark is warmed up and then measured in several timed iterations, each thread
+// calls the operation in a loop until the iteration ends. Results are operations per second with the spread between
+// iterations and the average time of one operation.
+// Output printed by the machine is discarded while benchmarks run
+public final class Bench
+{
+    // Benchmarked operation
+    public interface Operation
+    {
+        // Runs operation once
+        // Param - int thread - index of the calling thread
+        // Returns - long - any result, consumed so the work can not be optimised away
+        long run(int thread) throws Exception;
+    }
+
+    // Prepares state of one benchmark run, called before warm up
+    public interface Setup
+    {
+        void run() throws Exception;
+    }
+
+    private final PrintStream out = System.out; // report output
+    private final String filter; // only benchmarks with names containing it are run, empty runs all
+    private final long iterationMillis; // length of one timed iteration
+    private final int warmupIterations; // iterations run before measuring
+    private final int iterations; // measured iterations
+
+    private long sink; // consumes operation results
+
+    // Bench constructor
+    // Param - String filter - only benchmarks with names containing it are run, empty runs all
+    // Param - long iterationMillis - length of one timed iteration in milliseconds
+    // Param - int warmupIterations - iterations run before measuring
+    // Param - int iterations - measured iterations
+    public Bench(String filter, long iterationMillis, int warmupIterations, int iterations)
+    {
+        this.filter = filter;
+        this.iterationMillis = iterationMillis;
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+
+        this.out.printf("%-60s %8s %14s %12s %14s\n", "Benchmark", "Threads", "ops/s", "+-", "us/op");
+    }
+
+    // Checks whether benchmark is selected by the filter
+    // Param - String name - benchmark name
+    // Returns - boolean - true if benchmark should run
+    public boolean selected(String name){return name.contains(this.filter);}
+
+    // Runs and reports one benchmark
+    // Param - String name - benchmark name
+    // Param - int threads - amount of threads calling the operation at once
+    // Param - Setup setup - prepares state, may be null
+    // Param - Operation operation - benchmarked operation
+    public void run(String name, int threads, Setup setup, Operation operation)
+    {
+        if (!this.selected(name))
+        {
+            return;
+        }
+
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(quiet);
+        try
+        {
+            if (setup != null)
+            {
+                setup.run();
+            }
+
+            for (int i = 0; i < this.warmupIterations; i++)
+            {
+                this.iteration(threads, operation);
+            }
+
+            double[] rates = new double[this.iterations];
+            for (int i = 0; i < this.iterations; i++)
+            {
+                rates[i] = this.iteration(threads, operation);
+            }
+
+            this.report(name, threads, rates);
+        }
+        catch (Exception e)
+        {
+            this.out.println("ERROR: Benchmark " + name + " failed: " + e);
+        }
+        finally
+        {
+            System.setOut(this.out);
+        }
+    }
+
+    // Runs one timed iteration
+    // Param - int threads - amount of threads calling the operation
+    // Param - Operation operation - benchmarked operation
+    // Returns - double - operations per second of all threads together
+    private double iteration(int threads, Operation operation) throws Exception
+    {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        long[] sinks = new long[threads];
+        Exception[] failures = new Exception[threads];
+
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            Thread worker = new Thread(() ->
+            {
+                long count = 0;
+                long result = 0;
+                try
+                {
+                    start.await();
+                    while (running.get())
+                    {
+                        result += operation.run(thread);
+                        count++;
+                    }
+                }
+                catch (Exception e)
+                {
+                    failures[thread] = e;
+                }
+
+                counts[thread] = count;
+                sinks[thread] = result;
+            }, "bench-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(this.iterationMillis);
+        running.set(false);
+
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        long elapsed = System.nanoTime() - begin;
+
+        long total = 0;
+        for (int t = 0; t < threads; t++)
+        {
+            if (failures[t] != null)
+            {
+                throw failures[t];
+            }
+
+            total += counts[t];
+            this.sink += sinks[t];
+        }
+
+        return total * 1e9 / elapsed;
+    }
+
+    // Prints benchmark result
+    // Param - String name - benchmark name
+    // Param - int threads - amount of threads
+    // Param - double[] rates - operations per second of each measured iteration
+    private void report(String name, int threads, double[] rates)
+    {
+        double mean = 0;
+        for (double rate : rates)
+        {
+            mean += rate;
+        }
+
+        mean /= rates.length;
+
+        double variance = 0;
+        for (double rate : rates)
+        {
+            variance += (rate - mean) * (rate - mean);
+        }
+
+        double deviation = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) : 0;
+
+        // average time of one operation as seen by one thread
+        this.out.printf("%-60s %8d %14.1f %12.1f %14.3f\n", name, threads, mean, deviation, threads * 1e6 / mean);
+    }
+
+    // Gets sum of all consumed results, printed at the end so results stay observable
+    // Returns - long - consumed results
+    public long getSink(){return this.sink;}
+}
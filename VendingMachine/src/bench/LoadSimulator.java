@@ -0,0 +1,279 @@
+package bench;
+
+import main.*;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives seeded synthetic customers through the machine purchase flow and reports throughput, latency percentiles
+// and failure rates. Every customer is generated from the seed and its number, so the same seed gives the same
+// customers whatever the thread count, and a single thread replays the same run exactly.
+// Coin stock starts small and is printed every second, showing how change failures grow as small coins drain.
+// Usage - LoadSimulator [customers] [threads] [seed] [catalog] [coin stock]
+public class LoadSimulator
+{
+    private static final int itemStock = 1000000000; // items never run out
+    private static final long reportMillis = 1000; // time between progress lines
+
+    // Share of customers, in percent
+    private static final int cartPercent = 20; // buy two or three items at once
+    private static final int exactPercent = 40; // pay with exact coins
+    private static final int bigCoinPercent = 40; // pay with 2.00 and 1.00 coins, the rest pay with random coins
+    private static final int abandonPercent = 5; // walk away after the first coin and take a refund
+
+    private final Machine machine;
+    private final int catalog; // amount of items
+    private final long seed;
+    private final long[] coinValues; // coin values in pennies by denomination index
+    private final AtomicLong nextCustomer = new AtomicLong(); // number of the next customer to serve
+
+    // Outcomes
+    private final LatencyHistogram sessions = new LatencyHistogram("session"); // whole customer sessions
+    private final LongAdder customers = new LongAdder();
+    private final LongAdder purchases = new LongAdder();
+    private final LongAdder changeFailures = new LongAdder();
+    private final LongAdder rejectedCoins = new LongAdder();
+    private final LongAdder exactChangeWarnings = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder outOfStock = new LongAdder();
+
+    // Load simulator constructor
+    // Param - Machine machine - stocked machine
+    // Param - int catalog - amount of items
+    // Param - long seed - seed of all customers
+    LoadSimulator(Machine machine, int catalog, long seed)
+    {
+        this.machine = machine;
+        this.catalog = catalog;
+        this.seed = seed;
+        this.coinValues = new long[machine.getCoinCount()];
+        for (int i = 0; i < this.coinValues.length; i++)
+        {
+            this.coinValues[i] = Money.parse(machine.getCoinName(i));
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        long customerCount = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        int catalog = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int coinStock = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+
+        int[] coins = new int[new Cashier().getCoinCount()];
+        Arrays.fill(coins, coinStock);
+        String stockFile = MachineBenchmarks.writeStock(Files.createTempDirectory("vending-load"), "stock.xml",
+                catalog, itemStock, coins);
+
+        Machine machine = new Machine();
+        machine.restock(stockFile);
+
+        System.out.printf("customers=%d threads=%d seed=%d catalog=%d coinStock=%d\n", customerCount, threads, seed,
+                catalog, coinStock);
+        new LoadSimulator(machine, catalog, seed).run(customerCount, threads);
+    }
+
+    // Serves customers on several threads and prints progress and results
+    // Param - long customerCount - amount of customers
+    // Param - int threads - amount of customer threads
+    void run(long customerCount, int threads) throws InterruptedException
+    {
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            Thread worker = new Thread(() -> this.serveCustomers(customerCount), "customer-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+
+        System.out.printf("%8s %10s %10s %9s %9s %9s  %s\n", "seconds", "customers", "tps", "bought%",
+                "noChange%", "rejected", "coin stock 2.00 .. 0.01");
+
+        long begin = System.nanoTime();
+        long lastCustomers = 0;
+        long lastPurchases = 0;
+        long lastFailures = 0;
+        long lastRejected = 0;
+        long lastTime = begin;
+        boolean running = true;
+        while (running)
+        {
+            workers.get(0).join(reportMillis);
+            running = false;
+            for (Thread worker : workers)
+            {
+                running |= worker.isAlive();
+            }
+
+            long now = System.nanoTime();
+            long served = this.customers.sum() - lastCustomers;
+            long bought = this.purchases.sum() - lastPurchases;
+            long failed = this.changeFailures.sum() - lastFailures;
+            long rejected = this.rejectedCoins.sum() - lastRejected;
+
+            System.out.printf(Locale.ROOT, "%8.1f %10d %10.0f %9.1f %9.1f %9d  %s\n", (now - begin) / 1e9,
+                    this.customers.sum(), served * 1e9 / Math.max(now - lastTime, 1), percent(bought, served),
+                    percent(failed, served), rejected, Arrays.toString(this.machine.getCoinStock()));
+
+            lastCustomers += served;
+            lastPurchases += bought;
+            lastFailures += failed;
+            lastRejected += rejected;
+            lastTime = now;
+        }
+
+        this.report(System.nanoTime() - begin);
+    }
+
+    // Serves customers until all have been served. Every thread keeps one session for all its customers
+    // Param - long customerCount - amount of customers
+    private void serveCustomers(long customerCount)
+    {
+        Session session = this.machine.openSession();
+        Random random = new Random();
+
+        long customer;
+        while ((customer = this.nextCustomer.getAndIncrement()) < customerCount)
+        {
+            // customer behaviour depends only on the seed and the customer number
+            random.setSeed(this.seed * 0x9E3779B97F4A7C15L + customer);
+
+            long start = System.nanoTime();
+            this.serve(session, random);
+            this.sessions.recordSince(start);
+            this.customers.increment();
+        }
+
+        this.machine.closeSession(session);
+    }
+
+    // Serves one customer - selects items, pays with the customer's kind of coins and buys or takes a refund
+    // Param - Session session - session of the thread
+    // Param - Random random - seeded customer behaviour
+    private void serve(Session session, Random random)
+    {
+        int items = random.nextInt(100) < cartPercent ? 2 + random.nextInt(2) : 1;
+        for (int i = 0; i < items; i++)
+        {
+            // popular items are bought more often
+            double popularity = random.nextDouble();
+            int id = (int) (this.catalog * popularity * popularity);
+            boolean reserved = i == 0 ? this.machine.selectItem(session, id) : this.machine.addToCart(session, id);
+            if (!reserved)
+            {
+                this.outOfStock.increment();
+                this.machine.refund(session);
+                return;
+            }
+        }
+
+        if (this.machine.needsExactChange(session))
+        {
+            this.exactChangeWarnings.increment();
+        }
+
+        int style = random.nextInt(100);
+        boolean abandon = random.nextInt(100) < abandonPercent;
+
+        long remaining;
+        while ((remaining = this.machine.getRemainingAmount(session)) > 0)
+        {
+            int coin;
+            if (style < exactPercent)
+            {
+                coin = this.biggestCoinUpTo(remaining);
+            }
+            else if (style < exactPercent + bigCoinPercent)
+            {
+                coin = random.nextInt(2);
+            }
+            else
+            {
+                coin = random.nextInt(this.coinValues.length);
+            }
+
+            if (!this.machine.insertCoin(session, this.machine.getCoinName(coin)))
+            {
+                // machine can not give change for the coin, customer pays the rest exactly
+                this.rejectedCoins.increment();
+                style = 0;
+                continue;
+            }
+
+            if (abandon)
+            {
+                this.abandoned.increment();
+                this.machine.refund(session);
+                return;
+            }
+        }
+
+        if (this.machine.commit(session) == null)
+        {
+            this.changeFailures.increment();
+            this.machine.refund(session);
+            return;
+        }
+
+        this.purchases.increment();
+    }
+
+    // Gets biggest coin not worth more than the amount
+    // Param - long amount - amount in pennies, at least the smallest coin
+    // Returns - int - denomination index
+    private int biggestCoinUpTo(long amount)
+    {
+        for (int i = 0; i < this.coinValues.length; i++)
+        {
+            if (this.coinValues[i] <= amount)
+            {
+                return i;
+            }
+        }
+
+        return this.coinValues.length - 1;
+    }
+
+    // Prints totals of the whole run
+    // Param - long elapsedNanos - time of the run
+    private void report(long elapsedNanos)
+    {
+        long served = this.customers.sum();
+        System.out.println();
+        System.out.printf(Locale.ROOT, "customers %d in %.1fs, %.0f customers/s\n", served, elapsedNanos / 1e9,
+                served * 1e9 / elapsedNanos);
+        System.out.printf(Locale.ROOT, "purchases %d (%.2f%%)\n", this.purchases.sum(),
+                percent(this.purchases.sum(), served));
+        System.out.printf(Locale.ROOT, "changeFailures %d (%.2f%%)\n", this.changeFailures.sum(),
+                percent(this.changeFailures.sum(), served));
+        System.out.printf(Locale.ROOT, "abandoned %d (%.2f%%)\n", this.abandoned.sum(),
+                percent(this.abandoned.sum(), served));
+        System.out.printf(Locale.ROOT, "outOfStock %d (%.2f%%)\n", this.outOfStock.sum(),
+                percent(this.outOfStock.sum(), served));
+        System.out.printf(Locale.ROOT, "rejectedCoins %d, exactChangeWarnings %d\n", this.rejectedCoins.sum(),
+                this.exactChangeWarnings.sum());
+        System.out.printf(Locale.ROOT, "session p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus\n",
+                this.sessions.getP50Micros(), this.sessions.getP90Micros(), this.sessions.getP99Micros(),
+                this.sessions.getP999Micros(), this.sessions.getMaxMicros());
+
+        // machine side of the same run
+        for (String line : this.machine.getMetrics().report())
+        {
+            if (line.startsWith("selectItem") || line.startsWith("change ") || line.startsWith("commit"))
+            {
+                System.out.println(line);
+            }
+        }
+    }
+
+    // Param - long part - part of the whole
+    // Param - long whole - whole
+    // Returns - double - part in percent of the whole, 0 if whole is 0
+    private static double percent(long part, long whole){return whole == 0 ? 0 : part * 100.0 / whole;}
+}
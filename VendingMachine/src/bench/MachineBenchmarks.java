@@ -0,0 +1,412 @@
+package bench;
+
+import main.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Benchmarks of purchase, change, stock loading and saving paths with different catalog sizes and coin stock.
+// Usage - MachineBenchmarks [filter] [iteration millis] [warm up iterations] [iterations]
+//         filter selects benchmarks by name, for example "purchase" or "catalog=1000"
+public class MachineBenchmarks
+{
+    private static final int[] catalogSizes = {10, 1000, 100000};
+    private static final int[] threadCounts = {1, 4, 8};
+    private static final int itemStock = 1000000000; // items never run out while measuring purchases
+    private static final int fileStock = 10; // item stock of load and save files, small so add stock never overflows
+    private static final int maxChange = 500; // biggest change measured by change benchmarks, in pennies
+
+    // Coin distributions by denomination, from 2.00 down to 0.01 like the cashier
+    private static final String[] coinNames = {"2.00", "1.00", "0.50", "0.20", "0.10", "0.05", "0.02", "0.01"};
+    private static final String[] distributionNames = {"plenty", "scarce", "bigCoins"};
+    private static final int[][] distributions =
+    {
+        {1000000, 1000000, 1000000, 1000000, 1000000, 1000000, 1000000, 1000000}, // change is always possible
+        {5, 5, 5, 5, 5, 5, 5, 5}, // most change fails or needs a search of the change tables
+        {1000000, 1000000, 3, 2, 1, 1, 1, 1}, // small change runs out quickly
+    };
+
+    private static Path directory; // temporary stock files
+
+    public static void main(String[] args) throws IOException
+    {
+        String filter = args.length > 0 ? args[0] : "";
+        long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int warmupIterations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        directory = Files.createTempDirectory("vending-bench");
+        Bench bench = new Bench(filter, iterationMillis, warmupIterations, iterations);
+
+        benchPurchase(bench);
+        benchChange(bench);
+        benchInsertCoin(bench);
+        benchLoad(bench);
+        benchSave(bench);
+        benchCatalog(bench);
+        benchPricing(bench);
+        benchFind(bench);
+
+        System.out.println("sink " + bench.getSink());
+    }
+
+    // Whole purchase through customer sessions - select, insert 2.00 coins, commit and refund if change failed or
+    // a coin was rejected
+    // Param - Bench bench - harness
+    private static void benchPurchase(Bench bench) throws IOException
+    {
+        for (int catalog : catalogSizes)
+        {
+            for (int d = 0; d < distributions.length; d++)
+            {
+                for (int threads : threadCounts)
+                {
+                    String name = "purchase catalog=" + catalog + " coins=" + distributionNames[d];
+                    if (!bench.selected(name))
+                    {
+                        continue;
+                    }
+
+                    String stockFile = writeStock(directory, "stock-" + catalog + "-" + d + ".xml", catalog, itemStock,
+                            distributions[d]);
+                    Machine machine = new Machine();
+                    Session[] sessions = new Session[threads];
+
+                    bench.run(name, threads, () ->
+                    {
+                        machine.restock(stockFile);
+                        for (int t = 0; t < threads; t++)
+                        {
+                            sessions[t] = machine.openSession();
+                        }
+                    }, thread ->
+                    {
+                        Session session = sessions[thread];
+                        machine.selectItem(session, ThreadLocalRandom.current().nextInt(catalog));
+                        while (machine.getRemainingAmount(session) > 0)
+                        {
+                            // coins the machine could not give change for are rejected, the customer walks away
+                            if (!machine.insertCoin(session, "2.00"))
+                            {
+                                return machine.refund(session)[0];
+                            }
+                        }
+
+                        int[] change = machine.commit(session);
+                        if (change == null)
+                        {
+                            return machine.refund(session)[0];
+                        }
+
+                        return change[change.length - 1];
+                    });
+                }
+            }
+        }
+    }
+
+    // Reserving change from shared coin stock and putting it back
+    // Param - Bench bench - harness
+    private static void benchChange(Bench bench)
+    {
+        for (int d = 0; d < distributions.length; d++)
+        {
+            for (int threads : threadCounts)
+            {
+                int[] coinStock = distributions[d];
+                Cashier cashier = new Cashier();
+                int[][] changeCoins = new int[threads][cashier.getCoinCount()];
+
+                bench.run("change coins=" + distributionNames[d], threads, () -> stockCoins(cashier, coinStock),
+                        thread ->
+                {
+                    long change = 1 + ThreadLocalRandom.current().nextInt(maxChange);
+                    if (!cashier.reserveChange(change, changeCoins[thread]))
+                    {
+                        return 0;
+                    }
+
+                    cashier.releaseChange(changeCoins[thread]);
+                    return changeCoins[thread][0];
+                });
+            }
+        }
+    }
+
+    // Inserting coins into session escrow
+    // Param - Bench bench - harness
+    private static void benchInsertCoin(Bench bench)
+    {
+        Cashier cashier = new Cashier();
+        int[] pendingCoins = new int[cashier.getCoinCount()];
+
+        bench.run("insertCoin", 1, null, thread ->
+        {
+            String coin = coinNames[ThreadLocalRandom.current().nextInt(coinNames.length)];
+            return cashier.addPendingCoin(pendingCoins, coin) ? 1 : 0;
+        });
+    }
+
+    // Loading stock from xml and binary stock files
+    // Param - Bench bench - harness
+    private static void benchLoad(Bench bench) throws IOException
+    {
+        for (int catalog : catalogSizes)
+        {
+            if (!bench.selected("load restock catalog=" + catalog)
+                    && !bench.selected("load addStock catalog=" + catalog)
+                    && !bench.selected("load snapshot catalog=" + catalog))
+            {
+                continue;
+            }
+
+            String stockFile = writeStock(directory, "load-" + catalog + ".xml", catalog, fileStock, distributions[1]);
+            String snapshotFile = directory.resolve("load-" + catalog + ".bin").toString();
+            StockController stockController = new StockController(new HeapCatalog(), new Cashier());
+
+            bench.run("load restock catalog=" + catalog, 1, null, thread ->
+            {
+                stockController.restock(stockFile);
+                return stockController.getJournalSequence();
+            });
+
+            bench.run("load addStock catalog=" + catalog, 1, () -> stockController.restock(stockFile), thread ->
+            {
+                stockController.addStock(stockFile);
+                return stockController.getJournalSequence();
+            });
+
+            bench.run("load snapshot catalog=" + catalog, 1, () ->
+            {
+                stockController.restock(stockFile);
+                stockController.saveSnapshot(snapshotFile);
+            }, thread ->
+            {
+                stockController.loadSnapshot(snapshotFile);
+                return stockController.getJournalSequence();
+            });
+        }
+    }
+
+    // Saving stock into xml and binary stock files
+    // Param - Bench bench - harness
+    private static void benchSave(Bench bench) throws IOException
+    {
+        for (int catalog : catalogSizes)
+        {
+            if (!bench.selected("save saveStock catalog=" + catalog)
+                    && !bench.selected("save saveSnapshot catalog=" + catalog))
+            {
+                continue;
+            }
+
+            String stockFile = writeStock(directory, "save-" + catalog + ".xml", catalog, fileStock, distributions[1]);
+            String targetFile = directory.resolve("saved-" + catalog).toString();
+            StockController stockController = new StockController(new HeapCatalog(), new Cashier());
+
+            bench.run("save saveStock catalog=" + catalog, 1, () -> stockController.restock(stockFile),
+                    thread -> stockController.saveStock(targetFile + ".xml") ? 1 : 0);
+
+            bench.run("save saveSnapshot catalog=" + catalog, 1, () -> stockController.restock(stockFile),
+                    thread -> stockController.saveSnapshot(targetFile + ".bin") ? 1 : 0);
+        }
+    }
+
+    // Reserving and releasing random items and scanning all prices of heap and columnar catalogs
+    // Param - Bench bench - harness
+    private static void benchCatalog(Bench bench)
+    {
+        for (int catalog : catalogSizes)
+        {
+            for (String store : new String[]{"heap", "columnar"})
+            {
+                String name = "catalog store=" + store + " catalog=" + catalog;
+                if (!bench.selected(name))
+                {
+                    continue;
+                }
+
+                Catalog items = store.equals("heap") ? new HeapCatalog() : new ColumnarCatalog();
+                for (int i = 0; i < catalog; i++)
+                {
+                    items.add("Item " + i, 5 + i % 296, itemStock);
+                }
+
+                for (int threads : threadCounts)
+                {
+                    bench.run(name + " reserve", threads, null, thread ->
+                    {
+                        int id = ThreadLocalRandom.current().nextInt(catalog);
+                        if (!items.reserve(id))
+                        {
+                            return 0;
+                        }
+
+                        items.release(id);
+                        return id;
+                    });
+                }
+
+                bench.run(name + " scan", 1, null, thread ->
+                {
+                    long sum = 0;
+                    for (int id = 0; id < items.size(); id++)
+                    {
+                        sum += items.getPrice(id) * items.getStock(id);
+                    }
+
+                    return sum;
+                });
+            }
+        }
+    }
+
+    // Selecting two items into a cart without pricing rules and with promotions and bundles of every item
+    // Param - Bench bench - harness
+    private static void benchPricing(Bench bench) throws IOException
+    {
+        for (String pricing : new String[]{"none", "rules"})
+        {
+            String name = "select pricing=" + pricing;
+            if (!bench.selected(name))
+            {
+                continue;
+            }
+
+            int catalog = catalogSizes[1];
+            String stockFile = writeStock(directory, "select.xml", catalog, itemStock, distributions[0]);
+            Machine machine = new Machine();
+            Session[] sessions = new Session[threadCounts[threadCounts.length - 1]];
+
+            PricingRules rules = new PricingRules();
+            if (pricing.equals("rules"))
+            {
+                for (int i = 0; i < catalog; i += 2)
+                {
+                    rules.addPromotion("Item " + i, 0, 1440, -1, 10);
+                    rules.addBundle(new String[]{"Item " + i, "Item " + (i + 1)}, 100);
+                }
+
+                rules.addPromotion(null, 22 * 60, 6 * 60, -1, 20);
+            }
+
+            for (int threads : threadCounts)
+            {
+                bench.run(name, threads, () ->
+                {
+                    machine.restock(stockFile);
+                    machine.setPricingRules(rules);
+                    for (int t = 0; t < threads; t++)
+                    {
+                        sessions[t] = machine.openSession();
+                    }
+                }, thread ->
+                {
+                    Session session = sessions[thread];
+                    int id = ThreadLocalRandom.current().nextInt(catalog) & ~1;
+                    machine.selectItem(session, id);
+                    machine.addToCart(session, id + 1);
+                    return machine.getDueAmount(session);
+                });
+            }
+        }
+    }
+
+    // Finding items by the start of the name, by a part of it and by a name with a typo
+    // Param - Bench bench - harness
+    private static void benchFind(Bench bench)
+    {
+        for (int catalog : catalogSizes)
+        {
+            SearchIndex index = null;
+            for (String query : new String[]{"prefix", "part", "typo"})
+            {
+                String name = "find query=" + query + " catalog=" + catalog;
+                if (!bench.selected(name))
+                {
+                    continue;
+                }
+
+                if (index == null)
+                {
+                    Catalog items = new ColumnarCatalog(catalog);
+                    for (int i = 0; i < catalog; i++)
+                    {
+                        items.add("Item " + i, 5 + i % 296, itemStock);
+                    }
+
+                    index = new SearchIndex();
+                    index.update(items);
+                }
+
+                SearchIndex searched = index;
+                for (int threads : threadCounts)
+                {
+                    bench.run(name, threads, null, thread ->
+                    {
+                        int i = ThreadLocalRandom.current().nextInt(catalog);
+                        String text = query.equals("prefix") ? "item " + i
+                                    : query.equals("part") ? "em " + i : "Itme " + i;
+                        return searched.find(text, 20).length;
+                    });
+                }
+            }
+        }
+    }
+
+    // Writes stock file with generated items. Same catalog size gives the same catalog every run
+    // Param - Path directory - directory of the file
+    // Param - String fileName - file name inside the directory
+    // Param - int catalog - amount of items
+    // Param - int stock - stock of every item
+    // Param - int[] coinStock - coin stock by denomination index
+    // Returns - String - stock file location
+    static String writeStock(Path directory, String fileName, int catalog, int stock, int[] coinStock)
+            throws IOException
+    {
+        Path file = directory.resolve(fileName);
+        Random random = new Random(catalog);
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file)))
+        {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+            writer.println("<wendingMachineStock>");
+            writer.println("    <items>");
+            for (int i = 0; i < catalog; i++)
+            {
+                // prices from 0.05 to 3.00 in steps of 1p
+                long price = 5 + random.nextInt(296);
+                writer.printf("        <item name=\"Item %d\" price=\"%d.%02d\" stock=\"%d\"/>\n", i, price / 100,
+                        price % 100, stock);
+            }
+
+            writer.println("    </items>");
+            writer.println("    <coins>");
+            for (int i = 0; i < coinNames.length; i++)
+            {
+                writer.printf("        <coin stock=\"%d\" value=\"%s\"/>\n", coinStock[i], coinNames[i]);
+            }
+
+            writer.println("    </coins>");
+            writer.println("</wendingMachineStock>");
+        }
+
+        return file.toString();
+    }
+
+    // Fills cashier coin stock
+    // Param - Cashier cashier - cashier to fill
+    // Param - int[] coinStock - coin stock by denomination index
+    private static void stockCoins(Cashier cashier, int[] coinStock)
+    {
+        cashier.clearContents();
+        for (int i = 0; i < coinNames.length; i++)
+        {
+            cashier.stockCoin(coinNames[i], coinStock[i]);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package main;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Prints on a background thread so callers never wait for console I/O. Texts are queued in a bounded ring buffer
+// and the writer thread writes everything queued meanwhile as one batch with one flush of the stream. Callers wait
+// only when the buffer is full
+public class AsyncOutputSink implements OutputSink
+{
+    private final PrintStream stream; // destination stream
+    private final ArrayBlockingQueue<String> buffer; // texts waiting to be written
+    private final Thread writer; // writes queued texts until the sink is closed
+
+    private long queued = 0; // amount of texts queued so far, guarded by this
+    private long written = 0; // amount of texts written so far, guarded by this
+    private volatile boolean closed = false; // true once the writer thread has to stop
+
+    // Asynchronous sink constructor
+    // Param - PrintStream stream - destination stream
+    // Param - int capacity - amount of texts buffered before callers wait
+    public AsyncOutputSink(PrintStream stream, int capacity)
+    {
+        this.stream = stream;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+
+        this.writer = new Thread(this::writeBatches, "output-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void print(String text)
+    {
+        // counted before queueing so flush never misses a text that is already being written
+        synchronized (this)
+        {
+            this.queued++;
+        }
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                this.buffer.put(text);
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized void flush()
+    {
+        long target = this.queued;
+        boolean interrupted = false;
+        while (this.written < target)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes everything printed so far and stops the writer thread. Nothing may be printed afterwards, the stream
+    // is left open
+    public void close()
+    {
+        this.flush();
+        this.closed = true;
+        this.writer.interrupt();
+    }
+
+    // Writer thread loop. Takes all queued texts, writes them and flushes the stream once
+    private void writeBatches()
+    {
+        ArrayList<String> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (true)
+        {
+            try
+            {
+                batch.add(this.buffer.take());
+            }
+            catch (InterruptedException e)
+            {
+                if (this.closed)
+                {
+                    return;
+                }
+
+                continue;
+            }
+
+            this.buffer.drainTo(batch);
+            for (String part : batch)
+            {
+                text.append(part);
+            }
+
+            this.stream.print(text);
+            this.stream.flush();
+
+            synchronized (this)
+            {
+                this.written += batch.size();
+                this.notifyAll();
+            }
+
+            batch.clear();
+            text.setLength(0);
+        }
+    }
+}
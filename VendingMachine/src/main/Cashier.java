@@ -1,166 +1,214 @@
 package main;
 
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 // Class representing the cashier in the machine which handles all the coins.
+// Coins are the denominations of the currency profile the cashier is created with. Coins are found by value in a
+// table of the profile, so validating and indexing a coin does not compare or hash strings.
+// Coin stock is kept in counters indexed by denomination and updated with compare and set so that concurrent
+// purchases never wait for each other on the cashier. All amounts are whole pennies and coins are passed around
+// as amount of coins by denomination index, so buying an item does not create any objects.
 public class Cashier
 {
-    private Map<String, Coin> coins = new HashMap<>(); // Dictionary of coins inside the cashier
-    private Map<String, Coin> pendingCoins = new HashMap<>(); // Dictionary of pending coins inserted by user
+    // How many times change reservation is retried when other purchases take the planned coins first
+    private static final int MAX_RESERVE_ATTEMPTS = 8;
 
-    // Dictionary of coins for change after user bought an item used to reset coins in case correct change cant be given
-    private Map<String, Coin> changeCoins = new HashMap<>();
+    private static final int MAX_TABLE_CHANGE = 5000; // biggest change in pennies answered from change tables
 
-    // all available coin denominations
-    private ArrayList<String> acceptedCoins = new ArrayList<>(Arrays.asList("2.00", "1.00", "0.50", "0.20",
-            "0.10", "0.05", "0.02", "0.01"));
+    private final CurrencyProfile currency; // all available coin denominations
+
+    private final long[] coinValues; // coin values in pennies by denomination index
+    private final ChangeMaker changeMaker; // finds correct change from limited coin stock
+
+    // Coins inside the cashier that can be given as change, by denomination index
+    private final AtomicIntegerArray coins;
+
+    // Coins reserved as change for purchases that are not committed yet. They are still inside the machine
+    private final AtomicIntegerArray reservedCoins;
+
+    // Constructor for cashier working in the currency chosen on start
+    public Cashier(){this(Money.getCurrency());}
 
     // Constructor for cashier
-    public Cashier()
+    // Param - CurrencyProfile currency - coin denominations
+    public Cashier(CurrencyProfile currency)
     {
-        // Initialises all coin dictionaries based on all available denominations
-        for (String acceptedCoin : acceptedCoins)
+        this.currency = currency;
+        this.coinValues = new long[currency.getCoinCount()];
+        this.coins = new AtomicIntegerArray(currency.getCoinCount());
+        this.reservedCoins = new AtomicIntegerArray(currency.getCoinCount());
+
+        // Initialises coin values based on all available denominations
+        int[] coinPennies = new int[currency.getCoinCount()];
+        for (int i = 0; i < coinPennies.length; i++)
         {
-            this.coins.put(acceptedCoin, new Coin(Double.parseDouble(acceptedCoin)));
-            this.pendingCoins.put(acceptedCoin, new Coin(Double.parseDouble(acceptedCoin)));
-            this.changeCoins.put(acceptedCoin, new Coin(Double.parseDouble(acceptedCoin)));
+            this.coinValues[i] = currency.getCoinValue(i);
+            coinPennies[i] = (int) this.coinValues[i];
         }
+
+        this.changeMaker = new ChangeMaker(coinPennies, MAX_TABLE_CHANGE);
     }
 
+    // Gets currency of the coins
+    // Returns - CurrencyProfile - coin denominations
+    public CurrencyProfile getCurrency(){return this.currency;}
+
+    // Gets amount of accepted coin denominations
+    // Returns - int - amount of denominations
+    public int getCoinCount(){return this.coinValues.length;}
+
+    // Gets coin name of denomination index
+    // Param - int index - denomination index
+    // Returns - String - coin value like "0.50"
+    public String getCoinName(int index){return this.currency.getCoinName(index);}
+
+    // Gets denomination index of coin
+    // Param - String coin - coin value like "0.50"
+    // Returns - int - denomination index, -1 if coin is not accepted
+    public int getCoinIndex(String coin){return this.currency.getCoinIndex(coin);}
+
+    // Gets denomination index of coin value
+    // Param - long value - coin value in pennies
+    // Returns - int - denomination index, -1 if there is no such coin
+    public int getCoinIndex(long value){return this.currency.getCoinIndex(value);}
+
+    // Gets coin value of denomination index
+    // Param - int index - denomination index
+    // Returns - long - coin value in pennies
+    public long getCoinValue(int index){return this.coinValues[index];}
+
     // Stocks coin. Used by Stock controller
     // Param - String value - coin value
     // Param - int amount - amount of stock
-    public void stockCoin(String value, int amount){this.coins.get(value).stock = amount;}
+    public void stockCoin(String value, int amount){this.coins.set(this.currency.getCoinIndex(value), amount);}
 
     // Adds stock to the current coin stock. Used by Stock controller
     // Param - String value - coin value
     // Param - int amount - amount of stock
-    public void addCoin(String value, int amount) {this.coins.get(value).stock += amount;}
+    public void addCoin(String value, int amount) {this.coins.addAndGet(this.currency.getCoinIndex(value), amount);}
 
     // Sets all stock of coin denominations to 0
     public void clearContents()
     {
-        for (Map.Entry<String, Coin> entry : this.coins.entrySet())
+        for (int i = 0; i < this.coins.length(); i++)
         {
-            entry.getValue().stock = 0;
+            this.coins.set(i, 0);
         }
     }
 
-    // Sets all change coin stock denominations to 0
-    private void clearChangeCoins()
+    // Adds user inserted coins into coin stock
+    // Param - int[] pendingCoins - session escrow, emptied
+    public void takePendingCoins(int[] pendingCoins)
     {
-        for (Map.Entry<String, Coin> entry : this.changeCoins.entrySet())
+        for (int i = 0; i < pendingCoins.length; i++)
         {
-            entry.getValue().stock = 0;
+            if (pendingCoins[i] > 0)
+            {
+                this.coins.addAndGet(i, pendingCoins[i]);
+            }
+
+            pendingCoins[i] = 0; // sets pending coin stock to 0
         }
     }
 
-    // Reverts changes that were done when trying to give correct change. Called if that is impossible
-    private void resetChangeCoins()
+    // Reserves coins for the correct change. Reserved coins can not be given to other purchases until the
+    // reservation is committed or released
+    // Param - long change - change in pennies
+    // Param - int[] changeCoins - filled with amount of reserved coins by denomination index
+    // Returns - boolean - true if coins have been reserved, false if impossible to give correct change
+    public boolean reserveChange(long change, int[] changeCoins)
     {
-        for (Map.Entry<String, Coin> entry : this.changeCoins.entrySet())
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++)
         {
-            this.coins.get(entry.getKey()).stock -= entry.getValue().stock * entry.getValue().value;
-            entry.getValue().stock = 0;
+            if (!this.changeMaker.makeChange(this.coins, change, changeCoins))
+            {
+                return false;
+            }
+
+            // Coins could have been taken by other purchase since planning. Plan again if so
+            if (this.tryReserve(changeCoins))
+            {
+                return true;
+            }
         }
+
+        Arrays.fill(changeCoins, 0);
+        return false;
     }
 
-    // Adds user inserted coins into coin stock
-    public void takePendingCoins()
+    // Checks whether current coin stock can pay out the change. Coins reserved by other purchases are not counted,
+    // so a purchase checked now may still fail if coins run out before it is committed
+    // Param - long change - change in pennies
+    // Returns - boolean - true if correct change can be given, always true when no change is due
+    public boolean canMakeChange(long change)
     {
-        for (Map.Entry<String, Coin> entry : this.pendingCoins.entrySet())
-        {
-            this.coins.get(entry.getKey()).stock += entry.getValue().stock;
-            entry.getValue().stock = 0; // sets pending coin stock to 0
-        }
+        return change <= 0 || this.changeMaker.canMakeChange(this.coins, change);
     }
 
-    // Attempts to give user the correct change in coins
-    // Param - BigDecimal change - change that need to be given
-    // Returns - ArrayList<String> - list of coin denominations that is given to the user
-    public ArrayList<String> getChange(BigDecimal change)
+    // Gives reserved change coins to the user
+    // Param - int[] changeCoins - reservation filled by reserveChange
+    public void commitChange(int[] changeCoins)
     {
-        ArrayList<String> changeList = new ArrayList<>();
-
-        // Loops through all accepted coin denominations. Starting with biggest coin
-        for (int i = 0; i < this.acceptedCoins.size(); i++)
+        for (int i = 0; i < changeCoins.length; i++)
         {
-            String coinName = this.acceptedCoins.get(i);
-
-            // Using Big decimal for more precise float arithmetic operations
-            BigDecimal coinValue = new BigDecimal(Double.parseDouble(coinName));
-
-            // Loop while remaining change to be give is bigger than coin value
-            while (change.compareTo(coinValue) == 1)
+            if (changeCoins[i] > 0)
             {
-                // if coin is not in stock break
-                if (!this.coins.get(coinName).isInStock())
-                {
-                    break;
-                }
-
-                change = change.subtract(coinValue); //  subtract coin value from remaining change to be given
-                this.coins.get(coinName).stock += -1; // reduce stock of coin
-                this.changeCoins.get(coinName).stock += 1; // add coin to  expected change dictionary
-                changeList.add(coinName); // add coin to the change list which will be give to user
-            }
-
-            // if remaining change is > 0.01 return change list
-            if (change.compareTo(new BigDecimal(0.01)) == -1)
-            {
-                this.clearChangeCoins(); // clears change coin
-                return changeList;
+                this.reservedCoins.addAndGet(i, -changeCoins[i]);
             }
         }
+    }
 
-        // If impossible to give correct change reset change coins and return null
-        this.resetChangeCoins();
-
-        return null;
+    // Puts reserved change coins back into coin stock
+    // Param - int[] changeCoins - reservation filled by reserveChange
+    public void releaseChange(int[] changeCoins)
+    {
+        this.releaseChange(changeCoins, changeCoins.length);
     }
 
     // Returns all user inserted coins
-    // Returns - ArrayList<String> - list of user inserted coins
-    public ArrayList<String> getRefund()
+    // Param - int[] pendingCoins - session escrow, emptied
+    // Param - int[] refundedCoins - filled with amount of returned coins by denomination index
+    // Returns - int - amount of returned coins
+    public int getRefund(int[] pendingCoins, int[] refundedCoins)
     {
-        ArrayList<String> refundedCoins = new ArrayList<>();
-        for (Map.Entry<String, Coin> entry : this.pendingCoins.entrySet())
+        int refundedCount = 0;
+        for (int i = 0; i < pendingCoins.length; i++)
         {
-            for (int i = 0; i < entry.getValue().stock; i++)
-            {
-                refundedCoins.add(entry.getKey());
-            }
-
-            entry.getValue().stock = 0; // sets pending coin stock to 0
+            refundedCoins[i] = pendingCoins[i];
+            refundedCount += pendingCoins[i];
+            pendingCoins[i] = 0; // sets pending coin stock to 0
         }
 
-        return refundedCoins;
+        return refundedCount;
     }
 
-    // Adds inserted coin to pending Coin dictionary
+    // Adds inserted coin to session escrow
+    // Param - int[] pendingCoins - session escrow
     // Param - Sting coin - coin value
     // Returns - Boolean - true if correct coin has been inserted false otherwise
-    public boolean addPendingCoin(String coin)
+    public boolean addPendingCoin(int[] pendingCoins, String coin)
     {
+        int index = this.currency.getCoinIndex(coin);
+
         // if coin is not accepted return false
-        if (!acceptedCoins.contains(coin))
+        if (index < 0)
         {
             return false;
         }
 
-        this.pendingCoins.get(coin).stock += 1;
+        pendingCoins[index] += 1;
         return true;
     }
 
     // Gets sum of all coins currently in the machine
-    // Returns - double - sum of all coins
-    public double getContentsSum()
+    // Returns - long - sum of all coins in pennies
+    public long getContentsSum()
     {
-        double totalCoinSum = 0;
-        for (Map.Entry<String, Coin> entry : this.coins.entrySet())
+        long totalCoinSum = 0;
+        for (int i = 0; i < this.coinValues.length; i++)
         {
-            totalCoinSum +=  getCoinSum(entry.getKey());
+            totalCoinSum += (this.coins.get(i) + this.reservedCoins.get(i)) * this.coinValues[i];
         }
 
         return totalCoinSum;
@@ -168,30 +216,99 @@ public class Cashier
 
     // Gets total sum of coin denomination in stock
     // Param - String coin - coin value
-    // Returns - double - coin sum
-    public double getCoinSum(String coin) {
-        return this.coins.get(coin).stock * this.coins.get(coin).value;
+    // Returns - long - coin sum in pennies
+    public long getCoinSum(String coin) {
+        int i = this.currency.getCoinIndex(coin);
+        return (this.coins.get(i) + this.reservedCoins.get(i)) * this.coinValues[i];
     }
 
-    // Gets sum of user inserted coins
-    // Returns - double - total sum of inserted coins
-    public double getPendingCoinsSum()
+    // Gets sum of coins by denomination index
+    // Param - int[] pendingCoins - amount of coins by denomination index
+    // Returns - long - total sum of the coins in pennies
+    public long getPendingCoinsSum(int[] pendingCoins)
     {
-        double totalPendingCoinSum = 0;
-        for (Map.Entry<String, Coin> entry : this.pendingCoins.entrySet())
+        long totalPendingCoinSum = 0;
+        for (int i = 0; i < pendingCoins.length; i++)
         {
-            totalPendingCoinSum += entry.getValue().stock * entry.getValue().value;
+            totalPendingCoinSum += pendingCoins[i] * this.coinValues[i];
         }
 
         return totalPendingCoinSum;
     }
 
+    // Gets coin stock including reserved change coins
+    // Returns - int[] - amount of coins by denomination index
+    public int[] getCoinStock()
+    {
+        int[] coinStock = new int[this.coinValues.length];
+        for (int i = 0; i < coinStock.length; i++)
+        {
+            coinStock[i] = this.coins.get(i) + this.reservedCoins.get(i);
+        }
+
+        return coinStock;
+    }
+
     // Returns copy of coin stock. So that it would not be possible to manipulate contents outside of cashier
+    // Reserved change coins are counted as they are still inside the machine
     // Returns - Map<String, Coin> - coin stock dictionary
     public Map<String, Coin> getContents()
     {
         Map<String, Coin> copy = new HashMap<>();
-        copy.putAll(this.coins);
+        for (int i = 0; i < this.coinValues.length; i++)
+        {
+            Coin coin = new Coin(this.coinValues[i]);
+            coin.stock = this.coins.get(i) + this.reservedCoins.get(i);
+            copy.put(this.currency.getCoinName(i), coin);
+        }
+
         return copy;
     }
+
+    // Takes planned coins out of coin stock into reserved coins. Fails if any denomination ran out meanwhile
+    // Param - int[] changeCoins - planned amount of coins by denomination index
+    // Returns - boolean - true if all planned coins have been reserved
+    private boolean tryReserve(int[] changeCoins)
+    {
+        for (int i = 0; i < changeCoins.length; i++)
+        {
+            if (changeCoins[i] == 0)
+            {
+                continue;
+            }
+
+            int available;
+            do
+            {
+                available = this.coins.get(i);
+
+                // Not enough coins anymore. Puts back coins reserved so far
+                if (available < changeCoins[i])
+                {
+                    this.releaseChange(changeCoins, i);
+                    return false;
+                }
+            }
+            while (!this.coins.compareAndSet(i, available, available - changeCoins[i]));
+
+            this.reservedCoins.addAndGet(i, changeCoins[i]);
+        }
+
+        return true;
+    }
+
+    // Puts reserved coins of the first denominations back into coin stock
+    // Param - int[] changeCoins - reserved amount of coins by denomination index
+    // Param - int count - amount of denominations to release
+    private void releaseChange(int[] changeCoins, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (changeCoins[i] > 0)
+            {
+                this.reservedCoins.addAndGet(i, -changeCoins[i]);
+                this.coins.addAndGet(i, changeCoins[i]);
+            }
+        }
+    }
 }
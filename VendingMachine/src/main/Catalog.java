@@ -0,0 +1,85 @@
+package main;
+
+// Store of items in stock, addressed by item ID. IDs are positions in the catalog, given in the order items are
+// added. Items are added, repriced and restocked only under the machine stock write lock. Reserving, releasing and
+// selling units and marking items changed happen concurrently under the read lock
+public interface Catalog
+{
+    // Gets amount of items
+    // Returns - int - amount of items
+    int size();
+
+    // Gets ID of item with the name
+    // Param - String name - item name
+    // Returns - int - item ID, -1 if there is no such item
+    int find(String name);
+
+    // Adds new item after the current ones
+    // Param - String name - item name, not in the catalog yet
+    // Param - long price - item price in pennies
+    // Param - int stock - amount of items in stock
+    // Returns - int - ID of the added item
+    int add(String name, long price, int stock);
+
+    // Removes all items
+    void clear();
+
+    // Param - int id - item ID
+    // Returns - String - item name
+    String getName(int id);
+
+    // Param - int id - item ID
+    // Returns - long - item price in pennies
+    long getPrice(int id);
+
+    // Param - int id - item ID
+    // Param - long price - item price in pennies
+    void setPrice(int id, long price);
+
+    // Param - int id - item ID
+    // Returns - int - item units in stock, not counting units reserved by customers
+    int getStock(int id);
+
+    // Param - int id - item ID
+    // Param - int stock - item units in stock, not counting units reserved by customers
+    void setStock(int id, int stock);
+
+    // Param - int id - item ID
+    // Returns - int - units taken out of stock by pending trades, still inside the machine
+    int getReserved(int id);
+
+    // Gets amount of items physically inside the machine, including units reserved by pending trades
+    // Param - int id - item ID
+    // Returns - int - amount of items to save
+    int getSavedStock(int id);
+
+    // Reserves one unit of the item for a pending trade
+    // Param - int id - item ID
+    // Returns - boolean - true if item was in stock and has been reserved
+    boolean reserve(int id);
+
+    // Puts previously reserved unit back into stock
+    // Param - int id - item ID
+    void release(int id);
+
+    // Hands previously reserved unit to the customer
+    // Param - int id - item ID
+    void sell(int id);
+
+    // Param - int id - item ID
+    // Returns - long - last journal record included in the saved copy of the item
+    long getSavedSequence(int id);
+
+    // Param - int id - item ID
+    // Param - long sequence - last journal record included in the saved copy of the item
+    void setSavedSequence(int id, long sequence);
+
+    // Marks item as changed since the last checkpoint
+    // Param - int id - item ID
+    // Returns - boolean - true if item was not marked already
+    boolean markDirty(int id);
+
+    // Clears changed mark when item is checkpointed
+    // Param - int id - item ID
+    void clearDirty(int id);
+}
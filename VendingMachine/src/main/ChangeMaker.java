@@ -0,0 +1,280 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.StampedLock;
+
+// Finds correct change with the fewest coins from limited coin stock using dynamic programming.
+// Solution tables are kept for every amount up to the limit. Stage i of the tables uses denominations 0..i only,
+// so when coin stock changes just the stages from the first changed denomination onward are rebuilt.
+// Coin stock above what the biggest amount could ever use does not change the tables at all.
+// The last stage doubles as an index of every amount the coin stock can pay out, so checking whether change is
+// possible before a purchase costs one table lookup while coin stock is unchanged.
+// Tables are allocated once and rebuilt in place under the write lock of a stamped lock. Lookups read them
+// optimistically without locking and look up again under the lock only if a rebuild ran meanwhile, so lookups
+// of unchanged coin stock never wait and rebuilds allocate nothing
+public class ChangeMaker
+{
+    private static final int IMPOSSIBLE = Integer.MAX_VALUE; // marks amounts that can not be made
+
+    private final int[] values; // coin values in pennies by denomination index
+    private final int maxAmount; // biggest amount kept in the tables
+    private final ThreadLocal<Scratch> scratch; // buffers of each looking up thread
+
+    // Tables guarded by the lock, read optimistically
+    private final StampedLock lock = new StampedLock();
+    private final int[] limits; // coin amounts the tables are built for, by denomination index
+    private final int[][] minCoins; // minCoins[i][amount] - fewest coins of denominations 0..i making the amount
+    private final int[][] taken; // taken[i][amount] - coins of denomination i used in that solution
+
+    // Buffers reused by lookups of one thread
+    private static final class Scratch
+    {
+        final int[] available; // coin stock read for the current lookup, by denomination index
+        final int[] limits; // coin amounts the current lookup needs tables for
+        final int[] coins; // change coins of lookups whose result is not needed, thrown away
+        final int[] windowIndex; // sliding window buffers of rebuilds
+        final int[] windowKey;
+
+        Scratch(int coinCount, int maxAmount)
+        {
+            this.available = new int[coinCount];
+            this.limits = new int[coinCount];
+            this.coins = new int[coinCount];
+            this.windowIndex = new int[maxAmount + 1];
+            this.windowKey = new int[maxAmount + 1];
+        }
+    }
+
+    // Change maker constructor
+    // Param - int[] values - coin values in pennies by denomination index
+    // Param - int maxAmount - biggest change in pennies answered from the tables
+    public ChangeMaker(int[] values, int maxAmount)
+    {
+        this.values = values.clone();
+        this.maxAmount = maxAmount;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(values.length, maxAmount));
+        this.limits = new int[values.length];
+        this.minCoins = new int[values.length][maxAmount + 1];
+        this.taken = new int[values.length][maxAmount + 1];
+
+        // first tables are for no coins at all, a fresh scratch has zero limits
+        this.build(0, this.scratch.get());
+    }
+
+    // Checks whether correct change can be given from available coins without planning which coins to give
+    // Param - AtomicIntegerArray coins - coins in stock by denomination index
+    // Param - long amount - change in pennies
+    // Returns - boolean - true if correct change can be given
+    public boolean canMakeChange(AtomicIntegerArray coins, long amount)
+    {
+        if (amount <= 0)
+        {
+            return amount == 0;
+        }
+
+        Scratch buffers = this.read(coins);
+
+        if (amount > this.maxAmount)
+        {
+            return this.makeChangeGreedy(amount, buffers.available, buffers.coins);
+        }
+
+        return this.lookUp(buffers, (int) amount, buffers.coins);
+    }
+
+    // Finds correct change from available coins
+    // Param - AtomicIntegerArray coins - coins in stock by denomination index
+    // Param - long amount - change in pennies
+    // Param - int[] changeCoins - filled with amount of coins to give by denomination index
+    // Returns - boolean - true if correct change can be given, false for negative change
+    public boolean makeChange(AtomicIntegerArray coins, long amount, int[] changeCoins)
+    {
+        Arrays.fill(changeCoins, 0);
+        if (amount < 0)
+        {
+            return false;
+        }
+
+        Scratch buffers = this.read(coins);
+
+        if (amount > this.maxAmount)
+        {
+            return this.makeChangeGreedy(amount, buffers.available, changeCoins);
+        }
+
+        return this.lookUp(buffers, (int) amount, changeCoins);
+    }
+
+    // Reads current coin stock into buffers of this thread
+    // Param - AtomicIntegerArray coins - coins in stock by denomination index
+    // Returns - Scratch - buffers holding the coin stock
+    private Scratch read(AtomicIntegerArray coins)
+    {
+        Scratch buffers = this.scratch.get();
+        for (int i = 0; i < buffers.available.length; i++)
+        {
+            buffers.available[i] = coins.get(i);
+
+            // more coins than the biggest amount needs make no difference
+            buffers.limits[i] = Math.min(buffers.available[i], this.maxAmount / this.values[i]);
+        }
+
+        return buffers;
+    }
+
+    // Looks change up in the tables built for the coin stock read into buffers. Tables built for that stock are
+    // read without locking, otherwise they are rebuilt under the write lock first
+    // Param - Scratch buffers - buffers holding the coin stock
+    // Param - int amount - change in pennies, at most the biggest amount of the tables
+    // Param - int[] changeCoins - filled with amount of coins to give by denomination index
+    // Returns - boolean - true if correct change can be given
+    private boolean lookUp(Scratch buffers, int amount, int[] changeCoins)
+    {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0 && Arrays.equals(this.limits, buffers.limits))
+        {
+            // tables read during a rebuild may be torn, the result counts only if no rebuild ran meanwhile
+            boolean made = this.walk(amount, changeCoins);
+            if (this.lock.validate(stamp))
+            {
+                return made;
+            }
+        }
+
+        stamp = this.lock.writeLock();
+        try
+        {
+            int dirtyStage = 0;
+            while (dirtyStage < this.values.length && this.limits[dirtyStage] == buffers.limits[dirtyStage])
+            {
+                dirtyStage++;
+            }
+
+            this.build(dirtyStage, buffers);
+            return this.walk(amount, changeCoins);
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    // Walks stages back from the last one collecting coins used in the solution
+    // Param - int amount - change in pennies, at most the biggest amount of the tables
+    // Param - int[] changeCoins - filled with amount of coins to give by denomination index
+    // Returns - boolean - true if correct change can be given
+    private boolean walk(int amount, int[] changeCoins)
+    {
+        Arrays.fill(changeCoins, 0);
+        int last = this.values.length - 1;
+        if (this.minCoins[last][amount] == IMPOSSIBLE)
+        {
+            return false;
+        }
+
+        int remaining = amount;
+        for (int i = last; i >= 0 && remaining > 0; i--)
+        {
+            changeCoins[i] = this.taken[i][remaining];
+            remaining -= changeCoins[i] * this.values[i];
+        }
+
+        return true;
+    }
+
+    // Rebuilds stages from the first changed denomination onward for the coin stock read into buffers. Caller holds
+    // the write lock
+    // Param - int dirtyStage - first stage built for different coin stock
+    // Param - Scratch buffers - buffers holding the coin stock
+    private void build(int dirtyStage, Scratch buffers)
+    {
+        for (int i = dirtyStage; i < this.values.length; i++)
+        {
+            this.buildStage(i, buffers.limits[i], i == 0 ? null : this.minCoins[i - 1], this.minCoins[i],
+                    this.taken[i], buffers);
+            this.limits[i] = buffers.limits[i];
+        }
+    }
+
+    // Builds fewest coin table of one stage from the previous stage.
+    // For every remainder of the coin value the best amount of coins to take is a minimum over a sliding window
+    // of at most limit previous solutions, kept in a monotonic queue
+    // Param - int stage - denomination index
+    // Param - int limit - coins of the denomination in stock
+    // Param - int[] previousCoins - fewest coins of the previous stage, null for the first stage
+    // Param - int[] current - filled with fewest coins of this stage
+    // Param - int[] currentTaken - filled with coins of this denomination used
+    // Param - Scratch buffers - window buffers
+    private void buildStage(int stage, int limit, int[] previousCoins, int[] current, int[] currentTaken,
+                            Scratch buffers)
+    {
+        int value = this.values[stage];
+        int[] windowIndex = buffers.windowIndex;
+        int[] windowKey = buffers.windowKey;
+
+        for (int remainder = 0; remainder < value && remainder <= this.maxAmount; remainder++)
+        {
+            int head = 0;
+            int tail = 0;
+
+            for (int j = 0, amount = remainder; amount <= this.maxAmount; j++, amount += value)
+            {
+                int previous = previousCoins == null ? (amount == 0 ? 0 : IMPOSSIBLE) : previousCoins[amount];
+
+                // Adds solution without coins of this stage to the window
+                if (previous != IMPOSSIBLE)
+                {
+                    int key = previous - j;
+                    while (tail > head && windowKey[tail - 1] >= key)
+                    {
+                        tail--;
+                    }
+
+                    windowIndex[tail] = j;
+                    windowKey[tail] = key;
+                    tail++;
+                }
+
+                // Drops solutions which would need more coins than there are in stock
+                while (tail > head && windowIndex[head] < j - limit)
+                {
+                    head++;
+                }
+
+                if (tail == head)
+                {
+                    current[amount] = IMPOSSIBLE;
+                    currentTaken[amount] = 0;
+                }
+                else
+                {
+                    current[amount] = windowKey[head] + j;
+                    currentTaken[amount] = j - windowIndex[head];
+                }
+            }
+        }
+    }
+
+    // Gives change starting with the biggest coin. Used for amounts bigger than the tables
+    // Param - long amount - change in pennies
+    // Param - int[] available - coins in stock by denomination index
+    // Param - int[] changeCoins - filled with amount of coins to give by denomination index
+    // Returns - boolean - true if correct change can be given
+    private boolean makeChangeGreedy(long amount, int[] available, int[] changeCoins)
+    {
+        for (int i = 0; i < this.values.length && amount > 0; i++)
+        {
+            changeCoins[i] = (int) Math.min(available[i], amount / this.values[i]);
+            amount -= changeCoins[i] * this.values[i];
+        }
+
+        if (amount > 0)
+        {
+            Arrays.fill(changeCoins, 0);
+            return false;
+        }
+
+        return true;
+    }
+}
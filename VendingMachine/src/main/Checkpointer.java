@@ -0,0 +1,164 @@
+package main;
+
+import java.io.File;
+import java.util.Arrays;
+
+// Saves stock into binary stock file in the background. Only items and coins changed since the last checkpoint are
+// written, in place, so a checkpoint costs about as much as the sales made since the previous one.
+// Stock is captured while the machine holds the stock write lock and written to disk after the lock is released.
+// Only one checkpoint runs at a time
+public class Checkpointer
+{
+    private final String filePath; // binary stock file location
+    private final long[] coinValues; // coin values in pennies by denomination index
+
+    private final Object dirtyLock = new Object(); // guards changed item list, sessions add to it concurrently
+    private int[] dirtyIds = new int[64]; // indexes of items changed since the last capture
+    private int dirtyCount = 0; // amount of changed items
+    private boolean fullWrite = true; // true if whole file has to be written, file is missing or stock was replaced
+
+    // Stock captured for the next write
+    private int[] capturedIds = new int[64];
+    private long[] capturedPrices = new long[64];
+    private int[] capturedStocks = new int[64];
+    private int capturedCount = 0;
+    private boolean capturedAll; // true if all items have been captured and whole file is written
+    private String[] capturedNames = new String[0]; // names of all items when whole file is written
+    private int[] capturedCoins; // coin stock by denomination index
+    private long capturedSequence; // last journal record included in captured stock
+    private int itemCount = -1; // amount of items in the written file
+
+    private int[] writtenCoins; // coin stock in the written file, null if nothing has been written yet
+    private final int[] changedCoins; // denomination indexes of coins changed since the last write
+
+    // Checkpointer constructor
+    // Param - String filePath - binary stock file location
+    // Param - long[] coinValues - coin values in pennies by denomination index
+    public Checkpointer(String filePath, long[] coinValues)
+    {
+        this.filePath = filePath;
+        this.coinValues = coinValues;
+        this.changedCoins = new int[coinValues.length];
+    }
+
+    // Remembers that item stock or price has changed
+    // Param - Catalog catalog - items in stock
+    // Param - int id - item index
+    public void itemChanged(Catalog catalog, int id)
+    {
+        // items already waiting for the next checkpoint are not added twice
+        if (!catalog.markDirty(id))
+        {
+            return;
+        }
+
+        synchronized (this.dirtyLock)
+        {
+            if (this.dirtyCount == this.dirtyIds.length)
+            {
+                this.dirtyIds = Arrays.copyOf(this.dirtyIds, this.dirtyCount * 2);
+            }
+
+            this.dirtyIds[this.dirtyCount++] = id;
+        }
+    }
+
+    // Remembers that whole stock has been replaced by restock, add stock or loaded stock file
+    public void stockReplaced()
+    {
+        synchronized (this.dirtyLock)
+        {
+            this.fullWrite = true;
+        }
+    }
+
+    // Copies changed stock for the next write. Caller holds the stock write lock, so stock does not change meanwhile
+    // Param - Catalog catalog - items in stock
+    // Param - int[] coinStock - coin stock by denomination index
+    // Param - long journalSequence - last journal record included in the stock
+    public void capture(Catalog catalog, int[] coinStock, long journalSequence)
+    {
+        synchronized (this.dirtyLock)
+        {
+            int itemCount = catalog.size();
+            this.capturedAll = this.fullWrite || this.writtenCoins == null || itemCount != this.itemCount
+                    || !new File(this.filePath).exists();
+
+            // all items are captured into the same columns as changed ones, by ID
+            this.capturedCount = this.capturedAll ? itemCount : this.dirtyCount;
+            if (this.capturedIds.length < this.capturedCount)
+            {
+                this.capturedIds = new int[this.capturedCount];
+                this.capturedPrices = new long[this.capturedCount];
+                this.capturedStocks = new int[this.capturedCount];
+            }
+
+            if (this.capturedAll)
+            {
+                this.capturedNames = new String[itemCount];
+            }
+
+            for (int i = 0; i < this.capturedCount; i++)
+            {
+                int id = this.capturedAll ? i : this.dirtyIds[i];
+                this.capturedIds[i] = id;
+                this.capturedPrices[i] = catalog.getPrice(id);
+                this.capturedStocks[i] = catalog.getSavedStock(id);
+                catalog.clearDirty(id);
+
+                if (this.capturedAll)
+                {
+                    this.capturedNames[i] = catalog.getName(id);
+                }
+            }
+
+            this.dirtyCount = 0;
+            this.fullWrite = false;
+            this.itemCount = itemCount;
+            this.capturedCoins = coinStock;
+            this.capturedSequence = journalSequence;
+        }
+    }
+
+    // Writes captured stock into binary stock file. Called without holding the stock lock
+    // Returns - boolean - true if stock file includes all captured stock
+    public boolean write()
+    {
+        try
+        {
+            if (this.capturedAll)
+            {
+                Snapshot.write(this.filePath, this.capturedNames, this.capturedPrices, this.capturedStocks,
+                        this.capturedCount, this.coinValues, this.capturedCoins, this.capturedSequence);
+                this.capturedNames = new String[0];
+                this.capturedAll = false;
+            }
+            else
+            {
+                int coinCount = 0;
+                for (int i = 0; i < this.capturedCoins.length; i++)
+                {
+                    if (this.capturedCoins[i] != this.writtenCoins[i])
+                    {
+                        this.changedCoins[coinCount++] = i;
+                    }
+                }
+
+                Snapshot.update(this.filePath, this.capturedIds, this.capturedPrices, this.capturedStocks,
+                        this.capturedCount, this.changedCoins, this.capturedCoins, coinCount, this.capturedSequence);
+            }
+
+            this.writtenCoins = this.capturedCoins;
+            return true;
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Unable to save stock checkpoint. Please check " + this.filePath);
+
+            // records could be half written, next checkpoint writes whole file again
+            this.writtenCoins = null;
+            this.stockReplaced();
+            return false;
+        }
+    }
+}
@@ -3,12 +3,12 @@ package main;
 // Class representing coin
 public class Coin
 {
-    public double value; // coin value
+    public long value; // coin value in pennies
     public int stock = 0; // amount of coins in stock
 
     // Coin constructor
-    // param double value - value of the coin
-    public Coin(double value)
+    // param long value - value of the coin in pennies
+    public Coin(long value)
     {
         this.value = value;
     }
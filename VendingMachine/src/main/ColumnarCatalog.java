@@ -0,0 +1,248 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Catalog keeping items in primitive columns indexed by item ID instead of one object per item, for warehouse
+// catalogs of millions of items. Prices, stock, journal sequences and changed marks are a handful of big arrays the
+// garbage collector does not have to trace, and scans over them read memory in order.
+// Stock and reserved units of an item share one long, so reserving is a single compare and set without locks.
+// Names are interned, items with the same name in many machines share one string, and are found through an open
+// addressing table of IDs instead of a map of boxed IDs
+public class ColumnarCatalog implements Catalog
+{
+    private static final long RESERVED_MASK = 0xFFFFFFFFL; // reserved units in the low half of a count
+
+    private int size = 0; // amount of items
+    private String[] names; // interned item names by ID
+    private long[] prices; // item prices in pennies by ID
+    private AtomicLongArray counts; // units in stock in the high half and reserved units in the low half, by ID
+    private long[] savedSequences; // last journal record included in the saved copy of each item, by ID
+    private AtomicLongArray dirty; // changed marks, one bit per ID
+    private int[] slots; // item ID + 1 by name hash, 0 if the slot is free. Never more than half full
+
+    // Columnar catalog constructor
+    public ColumnarCatalog(){this(1024);}
+
+    // Columnar catalog constructor
+    // Param - int capacity - amount of items stored before the columns grow
+    public ColumnarCatalog(int capacity)
+    {
+        capacity = Math.max(capacity, 16);
+        this.names = new String[capacity];
+        this.prices = new long[capacity];
+        this.counts = new AtomicLongArray(capacity);
+        this.savedSequences = new long[capacity];
+        this.dirty = new AtomicLongArray((capacity + 63) >>> 6);
+        this.slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+    }
+
+    public int size(){return this.size;}
+
+    public int find(String name)
+    {
+        int mask = this.slots.length - 1;
+        for (int slot = hash(name) & mask; this.slots[slot] != 0; slot = (slot + 1) & mask)
+        {
+            int id = this.slots[slot] - 1;
+            if (this.names[id].equals(name))
+            {
+                return id;
+            }
+        }
+
+        return -1;
+    }
+
+    public int add(String name, long price, int stock)
+    {
+        if (this.size == this.names.length)
+        {
+            this.grow(this.size * 2);
+        }
+
+        int id = this.size++;
+        this.names[id] = name.intern();
+        this.prices[id] = price;
+        this.counts.set(id, pack(stock, 0));
+        this.savedSequences[id] = 0;
+        this.insertSlot(id);
+        return id;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.slots, 0);
+        for (int i = 0; i < this.dirty.length(); i++)
+        {
+            this.dirty.set(i, 0);
+        }
+
+        this.size = 0;
+    }
+
+    public String getName(int id){return this.names[id];}
+
+    public long getPrice(int id){return this.prices[id];}
+
+    public void setPrice(int id, long price){this.prices[id] = price;}
+
+    // Counts are read without a memory fence so scans stay fast. Stock is saved and reloaded under the stock write
+    // lock, which makes every reservation visible. Snapshots are copied under the read lock while customers reserve,
+    // so they and other readers may see counts a moment late
+    public int getStock(int id){return stock(this.counts.getPlain(id));}
+
+    public void setStock(int id, int stock)
+    {
+        long count;
+        do
+        {
+            count = this.counts.get(id);
+        }
+        while (!this.counts.compareAndSet(id, count, pack(stock, reserved(count))));
+    }
+
+    public int getReserved(int id){return reserved(this.counts.getPlain(id));}
+
+    public int getSavedStock(int id)
+    {
+        long count = this.counts.getPlain(id);
+        return stock(count) + reserved(count);
+    }
+
+    public boolean reserve(int id)
+    {
+        long count;
+        do
+        {
+            count = this.counts.get(id);
+            if (stock(count) <= 0)
+            {
+                return false;
+            }
+        }
+        while (!this.counts.compareAndSet(id, count, pack(stock(count) - 1, reserved(count) + 1)));
+
+        return true;
+    }
+
+    public void release(int id)
+    {
+        long count;
+        do
+        {
+            count = this.counts.get(id);
+        }
+        while (!this.counts.compareAndSet(id, count, pack(stock(count) + 1, reserved(count) - 1)));
+    }
+
+    public void sell(int id)
+    {
+        long count;
+        do
+        {
+            count = this.counts.get(id);
+        }
+        while (!this.counts.compareAndSet(id, count, pack(stock(count), reserved(count) - 1)));
+    }
+
+    public long getSavedSequence(int id){return this.savedSequences[id];}
+
+    public void setSavedSequence(int id, long sequence){this.savedSequences[id] = sequence;}
+
+    public boolean markDirty(int id)
+    {
+        long bit = 1L << id;
+        long word;
+        do
+        {
+            word = this.dirty.get(id >>> 6);
+            if ((word & bit) != 0)
+            {
+                return false;
+            }
+        }
+        while (!this.dirty.compareAndSet(id >>> 6, word, word | bit));
+
+        return true;
+    }
+
+    public void clearDirty(int id)
+    {
+        long bit = 1L << id;
+        long word;
+        do
+        {
+            word = this.dirty.get(id >>> 6);
+        }
+        while ((word & bit) != 0 && !this.dirty.compareAndSet(id >>> 6, word, word & ~bit));
+    }
+
+    // Moves columns into bigger arrays. Called under the stock write lock, so no customer reads the old ones
+    // Param - int capacity - new amount of items stored before the columns grow
+    private void grow(int capacity)
+    {
+        this.names = Arrays.copyOf(this.names, capacity);
+        this.prices = Arrays.copyOf(this.prices, capacity);
+        this.savedSequences = Arrays.copyOf(this.savedSequences, capacity);
+
+        long[] counts = new long[capacity];
+        for (int i = 0; i < this.size; i++)
+        {
+            counts[i] = this.counts.get(i);
+        }
+
+        long[] dirty = new long[(capacity + 63) >>> 6];
+        for (int i = 0; i < this.dirty.length(); i++)
+        {
+            dirty[i] = this.dirty.get(i);
+        }
+
+        this.counts = new AtomicLongArray(counts);
+        this.dirty = new AtomicLongArray(dirty);
+
+        // slots stay at most half full
+        this.slots = new int[this.slots.length * 2];
+        for (int id = 0; id < this.size; id++)
+        {
+            this.insertSlot(id);
+        }
+    }
+
+    // Puts item ID into the first free slot after its name hash
+    // Param - int id - item ID
+    private void insertSlot(int id)
+    {
+        int mask = this.slots.length - 1;
+        int slot = hash(this.names[id]) & mask;
+        while (this.slots[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        this.slots[slot] = id + 1;
+    }
+
+    // Spreads name hash over the low bits used to pick a slot
+    // Param - String name - item name
+    // Returns - int - spread hash
+    private static int hash(String name)
+    {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    // Param - int stock - units in stock
+    // Param - int reserved - reserved units
+    // Returns - long - both counts in one long
+    private static long pack(int stock, int reserved){return ((long) stock << 32) | (reserved & RESERVED_MASK);}
+
+    // Param - long count - packed counts
+    // Returns - int - units in stock
+    private static int stock(long count){return (int) (count >> 32);}
+
+    // Param - long count - packed counts
+    // Returns - int - reserved units
+    private static int reserved(long count){return (int) count;}
+}
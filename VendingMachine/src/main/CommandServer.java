@@ -0,0 +1,469 @@
+package main;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// TCP server exposing machine commands to remote kiosks. Every connection is a customer with its own session and
+// is served by its own thread, so kiosks do not wait for each other except on the machine stock lock.
+//
+// Protocol - one command per line, one response per command. Responses start with OK or ERROR, responses with
+// several lines start with "OK <line count>" followed by the lines. Lines longer than 256 characters are answered
+// with "ERROR Line too long" and close the connection. Connections idle longer than two minutes are closed. Closed
+// connections are refunded.
+//   view            - items, one per line - ID, name, price with promotions applying now, stock separated by tabs
+//   status          - items followed by coins - value, stock separated by tabs
+//   find <text>     - items with names starting with, containing or close to the text, like view. At most 20
+//   select <id>     - reserves item, previously reserved items are put back. Responds amount due, followed by
+//                     "exact" when the machine is low on coins for change
+//   add <id>        - adds item to the cart. Responds amount due like select
+//   coin <value>    - inserts coin like 0.50. Responds remaining amount, negative if change is due. Coins the
+//                     machine could not give change for are rejected
+//   buy             - buys reserved items. Responds change coins
+//   refund          - puts reserved items back. Responds inserted coins
+//   metrics         - operation times and counters, one per line
+//   sales           - sales of the last minute, hour and day
+//   quit            - refunds and closes the connection
+// Admin commands, refused unless the server is started for admins
+//   restock         - updates items and coins to match stock file, item IDs stay the same
+//   addstock        - adds stock from add stock file
+//   save            - saves stock into stock file
+//   exit            - refunds all connections, gives leased stock back to the stockroom, saves stock and powers off
+//                     the machine
+public class CommandServer
+{
+    private static final int foundItemLimit = 20; // most items listed by find
+    private static final long closeWaitMillis = 5000; // longest wait for connections to refund when stopping
+    private static final int maxLineLength = 256; // longest command line, longer lines close the connection
+
+    private final Machine machine; // machine served to all connections
+    private final String stockFilePath; // stock file used by restock and save
+    private final String addStockFilePath; // stock file used by addstock
+    private final boolean admin; // true if kiosks may run admin commands
+    private final ServerSocket serverSocket;
+    private final HashSet<Socket> sockets = new HashSet<>(); // open connections, guarded by itself
+    private volatile int idleTimeoutMillis = 2 * 60 * 1000; // longest wait for the next command of a connection
+
+    // one thread per connection, threads are reused by later connections
+    private final ExecutorService connections = Executors.newCachedThreadPool(task ->
+    {
+        Thread thread = new Thread(task, "kiosk-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Command server constructor. Binds the port, connections are accepted after start
+    // Param - Machine machine - machine to serve
+    // Param - int port - TCP port, 0 picks a free port
+    // Param - String stockFilePath - stock file used by restock and save
+    // Param - String addStockFilePath - stock file used by addstock
+    // Param - boolean admin - true lets kiosks restock, add stock, save and power off the machine
+    public CommandServer(Machine machine, int port, String stockFilePath, String addStockFilePath, boolean admin)
+            throws IOException
+    {
+        this.machine = machine;
+        this.stockFilePath = stockFilePath;
+        this.addStockFilePath = addStockFilePath;
+        this.admin = admin;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    // Gets port the server listens on
+    // Returns - int - TCP port
+    public int getPort(){return this.serverSocket.getLocalPort();}
+
+    // Sets how long a connection may wait before its next command. Applies to connections accepted afterwards
+    // Param - int idleTimeoutMillis - longest wait in milliseconds, 0 waits forever
+    public void setIdleTimeout(int idleTimeoutMillis){this.idleTimeoutMillis = idleTimeoutMillis;}
+
+    // Starts accepting connections on a background thread
+    public void start()
+    {
+        Thread acceptor = new Thread(this::acceptConnections, "kiosk-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Stops accepting connections and closes open ones. Waits until their sessions are refunded
+    public void stop()
+    {
+        this.closeConnections(null);
+        this.connections.shutdownNow();
+    }
+
+    // Stops accepting connections, closes open ones except the given one and waits until their sessions are refunded
+    // Param - Socket kept - connection left open, null to close all
+    private void closeConnections(Socket kept)
+    {
+        try
+        {
+            this.serverSocket.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to close command server");
+        }
+
+        synchronized (this.sockets)
+        {
+            for (Socket socket : this.sockets)
+            {
+                if (socket != kept)
+                {
+                    close(socket); // connection thread stops reading and refunds its session
+                }
+            }
+
+            long deadline = System.currentTimeMillis() + closeWaitMillis;
+            while (this.sockets.size() > (kept == null ? 0 : 1) && System.currentTimeMillis() < deadline)
+            {
+                try
+                {
+                    this.sockets.wait(closeWaitMillis);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Accepts connections until the server is stopped
+    private void acceptConnections()
+    {
+        while (!this.serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = this.serverSocket.accept();
+                this.connections.execute(() -> this.serve(socket));
+            }
+            catch (SocketException e)
+            {
+                break; // server stopped
+            }
+            catch (Exception e)
+            {
+                System.out.println("ERROR: Unable to accept kiosk connection");
+            }
+        }
+    }
+
+    // Serves one connection until the client quits, disconnects, stays idle too long or sends a line too long. Coins
+    // left in the session are refunded and the session is kept for later connections
+    // Param - Socket socket - client connection
+    private void serve(Socket socket)
+    {
+        synchronized (this.sockets)
+        {
+            if (this.serverSocket.isClosed())
+            {
+                close(socket); // accepted just before the server stopped
+                return;
+            }
+
+            this.sockets.add(socket);
+        }
+
+        Session session = this.machine.openSession();
+
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                     StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                     StandardCharsets.UTF_8))))
+        {
+            socket.setSoTimeout(this.idleTimeoutMillis); // read times out with an exception, session is refunded
+            StringBuilder buffer = new StringBuilder();
+            String line;
+            while ((line = readLine(reader, buffer)) != null)
+            {
+                if (line.length() > maxLineLength)
+                {
+                    writer.print("ERROR Line too long\n");
+                    writer.flush();
+                    break;
+                }
+
+                String[] command = line.trim().split("\\s+");
+                if (command[0].equals("quit"))
+                {
+                    break;
+                }
+
+                if (command[0].equals("exit") && this.admin)
+                {
+                    writer.print("OK\n");
+                    writer.flush();
+                    this.machine.refund(session);
+                    this.closeConnections(socket);
+                    this.machine.returnLeases();
+                    this.machine.checkpoint();
+                    this.machine.getOutput().println("Exiting");
+                    this.machine.getOutput().flush();
+                    System.exit(0);
+                }
+
+                writer.print(this.execute(session, command));
+                writer.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // client disconnected or was idle too long, session is refunded below
+        }
+        finally
+        {
+            this.machine.closeSession(session);
+            synchronized (this.sockets)
+            {
+                this.sockets.remove(socket);
+                this.sockets.notifyAll();
+            }
+        }
+    }
+
+    // Reads one command line. Reading stops after one character more than the longest line, so a client never
+    // makes the connection buffer more
+    // Param - Reader reader - connection input
+    // Param - StringBuilder buffer - reused for the characters of the line
+    // Returns - String - line without its end, longer than maxLineLength if cut, null at the end of the input
+    private static String readLine(Reader reader, StringBuilder buffer) throws IOException
+    {
+        buffer.setLength(0);
+        int c;
+        while ((c = reader.read()) != '\n' && buffer.length() <= maxLineLength)
+        {
+            if (c == -1)
+            {
+                return buffer.length() == 0 ? null : buffer.toString();
+            }
+
+            if (c != '\r')
+            {
+                buffer.append((char) c);
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    // Executes one command
+    // Param - Session session - session of the connection
+    // Param - String[] command - command name and arguments
+    // Returns - String - response lines
+    private String execute(Session session, String[] command)
+    {
+        try
+        {
+            if (!this.admin && isAdminCommand(command[0]))
+            {
+                return "ERROR Not allowed\n";
+            }
+
+            switch (command[0])
+            {
+                case "view":
+                    return this.view(false);
+                case "status":
+                    return this.view(true);
+                case "find":
+                    return this.find(command);
+                case "select":
+                case "add":
+                    int id = Integer.parseInt(argument(command));
+                    boolean reserved = command[0].equals("select") ? this.machine.selectItem(session, id)
+                                                                   : this.machine.addToCart(session, id);
+                    if (!reserved)
+                    {
+                        return "ERROR Item not found or out of stock\n";
+                    }
+
+                    return "OK " + Money.format(this.machine.getDueAmount(session))
+                            + (this.machine.needsExactChange(session) ? " exact\n" : "\n");
+                case "coin":
+                    String coin = argument(command);
+                    if (!this.machine.insertCoin(session, coin))
+                    {
+                        return this.machine.isAcceptedCoin(coin) ? "ERROR Unable to give change for this coin\n"
+                                                                 : "ERROR Invalid coin\n";
+                    }
+
+                    return "OK " + Money.format(this.machine.getRemainingAmount(session)) + "\n";
+                case "buy":
+                    if (!session.hasItem())
+                    {
+                        return "ERROR No item selected\n";
+                    }
+
+                    if (this.machine.getRemainingAmount(session) > 0)
+                    {
+                        return "ERROR Remaining " + Money.format(this.machine.getRemainingAmount(session)) + "\n";
+                    }
+
+                    int[] changeCoins = this.machine.commit(session);
+                    if (changeCoins == null)
+                    {
+                        return "ERROR Unable to provide correct change\n";
+                    }
+
+                    return "OK " + this.coins(changeCoins) + "\n";
+                case "refund":
+                    return "OK " + this.coins(this.machine.refund(session)) + "\n";
+                case "restock":
+                    this.machine.reloadStock(this.stockFilePath);
+                    return "OK\n";
+                case "addstock":
+                    this.machine.addStock(this.addStockFilePath);
+                    return "OK\n";
+                case "metrics":
+                    return lines(this.machine.getMetrics().report());
+                case "sales":
+                    return lines(this.machine.getSales().report(this.machine));
+                case "save":
+                    this.machine.saveStock(this.stockFilePath);
+                    return "OK\n";
+                default:
+                    return "ERROR Invalid command\n";
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            return "ERROR Invalid ID\n";
+        }
+        catch (IllegalArgumentException e)
+        {
+            return "ERROR " + e.getMessage() + "\n";
+        }
+    }
+
+    // Finds items by name
+    // Param - String[] command - command name followed by the words of the name
+    // Returns - String - found items in the same format as view
+    private String find(String[] command)
+    {
+        if (command.length < 2)
+        {
+            throw new IllegalArgumentException("Expected item name");
+        }
+
+        String query = String.join(" ", Arrays.copyOfRange(command, 1, command.length));
+        int[] ids = this.machine.findItems(query, foundItemLimit);
+        InventorySnapshot inventory = this.machine.getInventory();
+        Pricing pricing = this.machine.getPricing(); // prices customers are charged now
+        long now = System.nanoTime();
+
+        StringBuilder lines = new StringBuilder();
+        int count = 0;
+        for (int id : ids)
+        {
+            // items added after the search are not in the snapshot yet
+            if (id < inventory.getItemCount())
+            {
+                lines.append(id).append('\t').append(inventory.getName(id)).append('\t')
+                     .append(Money.format(pricing.price(id, inventory.getPrice(id), now))).append('\t')
+                     .append(inventory.getStock(id))
+                     .append('\n');
+                count++;
+            }
+        }
+
+        return "OK " + count + "\n" + lines;
+    }
+
+    // Lists items and optionally coins
+    // Param - boolean coins - true to list coins after items
+    // Returns - String - response lines
+    private String view(boolean coins)
+    {
+        InventorySnapshot inventory = this.machine.getInventory(); // items and coins at the same stock version
+        Pricing pricing = this.machine.getPricing(); // prices customers are charged now
+        long now = System.nanoTime();
+        int coinCount = coins ? inventory.getCoinCount() : 0;
+
+        StringBuilder response = new StringBuilder();
+        response.append("OK ").append(inventory.getItemCount() + coinCount).append('\n');
+        for (int i = 0; i < inventory.getItemCount(); i++)
+        {
+            response.append(i).append('\t').append(inventory.getName(i)).append('\t')
+                    .append(Money.format(pricing.price(i, inventory.getPrice(i), now))).append('\t')
+                    .append(inventory.getStock(i))
+                    .append('\n');
+        }
+
+        for (int i = 0; i < coinCount; i++)
+        {
+            response.append(inventory.getCoinName(i)).append('\t').append(inventory.getCoinStock(i)).append('\n');
+        }
+
+        return response.toString();
+    }
+
+    // Lists coins separated by spaces
+    // Param - int[] coins - amount of coins by denomination index
+    // Returns - String - coin values
+    private String coins(int[] coins)
+    {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < coins.length; i++)
+        {
+            for (int j = 0; j < coins[i]; j++)
+            {
+                list.append(list.length() == 0 ? "" : " ").append(this.machine.getCoinName(i));
+            }
+        }
+
+        return list.toString();
+    }
+
+    // Formats response with several lines
+    // Param - ArrayList<String> lines - response lines
+    // Returns - String - response
+    private static String lines(ArrayList<String> lines)
+    {
+        return "OK " + lines.size() + "\n" + String.join("\n", lines) + "\n";
+    }
+
+    // Closes connection, ignoring errors as it is closed either way
+    // Param - Socket socket - client connection
+    private static void close(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // connection is closed either way
+        }
+    }
+
+    // Param - String name - command name
+    // Returns - boolean - true if only admins may run the command
+    private static boolean isAdminCommand(String name)
+    {
+        return name.equals("restock") || name.equals("addstock") || name.equals("save") || name.equals("exit");
+    }
+
+    // Gets the only command argument
+    // Param - String[] command - command name and arguments
+    // Returns - String - argument
+    private static String argument(String[] command)
+    {
+        if (command.length != 2)
+        {
+            throw new IllegalArgumentException("Expected one argument");
+        }
+
+        return command[1];
+    }
+}
@@ -0,0 +1,17 @@
+package main;
+
+import java.io.PrintStream;
+
+// Prints straight into a stream on the calling thread
+public class ConsoleSink implements OutputSink
+{
+    private final PrintStream stream; // destination stream
+
+    // Console sink constructor
+    // Param - PrintStream stream - destination stream
+    public ConsoleSink(PrintStream stream){this.stream = stream;}
+
+    public void print(String text){this.stream.print(text);}
+
+    public void flush(){this.stream.flush();}
+}
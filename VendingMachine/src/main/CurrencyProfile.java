@@ -0,0 +1,254 @@
+package main;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Currency the machine works in - its coin denominations and how many decimals its amounts have. Amounts are kept
+// in minor units, like pennies or cents. Coin names are compiled into a table indexed by coin value, so a coin is
+// validated and indexed by reading its digits once, without comparing or hashing strings.
+// Profiles are read from a currencies file like
+//   <currencies>
+//       <currency code="EUR" symbol="€" minorUnits="2">
+//           <coin value="2.00"/>
+//           ...
+//       </currency>
+//   </currencies>
+public final class CurrencyProfile
+{
+    // Pound sterling, used when no other currency is chosen
+    public static final CurrencyProfile GBP = new CurrencyProfile("GBP", "£", 2,
+            new String[]{"2.00", "1.00", "0.50", "0.20", "0.10", "0.05", "0.02", "0.01"});
+
+    private final String code; // currency code like "GBP"
+    private final String symbol; // printed after amounts
+    private final int minorUnits; // decimals of amounts
+    private final long scale; // minor units in one major unit
+    private final String pattern; // format of amounts with minorUnits decimals
+    private final String[] coinNames; // coin names by denomination index, biggest coin first
+    private final long[] coinValues; // coin values in minor units by denomination index
+    private final int[] coinIndex; // denomination index by coin value in minor units, -1 if no such coin
+
+    // Currency profile constructor
+    // Param - String code - currency code like "GBP"
+    // Param - String symbol - printed after amounts
+    // Param - int minorUnits - decimals of amounts, 0 to 3
+    // Param - String[] coins - coin values like "0.50" in any order
+    public CurrencyProfile(String code, String symbol, int minorUnits, String[] coins)
+    {
+        if (minorUnits < 0 || minorUnits > 3 || coins.length == 0)
+        {
+            throw new IllegalArgumentException("Invalid currency " + code);
+        }
+
+        this.code = code;
+        this.symbol = symbol;
+        this.minorUnits = minorUnits;
+        this.scale = minorUnits == 0 ? 1 : minorUnits == 1 ? 10 : minorUnits == 2 ? 100 : 1000;
+        this.pattern = "%s%d.%0" + Math.max(minorUnits, 1) + "d";
+
+        // biggest coin first, change is planned from the biggest coin down
+        long[] values = new long[coins.length];
+        for (int i = 0; i < coins.length; i++)
+        {
+            values[i] = this.parse(coins[i]);
+        }
+
+        Arrays.sort(values);
+        this.coinValues = new long[values.length];
+        this.coinNames = new String[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            this.coinValues[i] = values[values.length - 1 - i];
+            this.coinNames[i] = this.format(this.coinValues[i]);
+        }
+
+        this.coinIndex = new int[(int) this.coinValues[0] + 1];
+        Arrays.fill(this.coinIndex, -1);
+        for (int i = 0; i < this.coinValues.length; i++)
+        {
+            if (this.coinValues[i] <= 0 || this.coinIndex[(int) this.coinValues[i]] >= 0)
+            {
+                throw new IllegalArgumentException("Invalid coin " + this.coinNames[i] + " of " + code);
+            }
+
+            this.coinIndex[(int) this.coinValues[i]] = i;
+        }
+    }
+
+    // Reads currency profile from currencies file
+    // Param - String filePath - currencies file location
+    // Param - String code - currency code like "EUR"
+    // Returns - CurrencyProfile - currency or null if it is not in the file or the file is broken
+    public static CurrencyProfile load(String filePath, String code)
+    {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filePath)))
+        {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input, "UTF-8");
+            try
+            {
+                String symbol = null;
+                int minorUnits = 0;
+                ArrayList<String> coins = new ArrayList<>();
+                while (reader.hasNext())
+                {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("currency")
+                            && code.equals(reader.getAttributeValue(null, "code")))
+                    {
+                        symbol = reader.getAttributeValue(null, "symbol");
+                        minorUnits = Integer.parseInt(reader.getAttributeValue(null, "minorUnits"));
+                    }
+                    else if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("coin")
+                            && symbol != null)
+                    {
+                        coins.add(reader.getAttributeValue(null, "value"));
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("currency")
+                            && symbol != null)
+                    {
+                        return new CurrencyProfile(code, symbol, minorUnits, coins.toArray(new String[0]));
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Currencies contaminated. Please check " + filePath);
+        }
+
+        return null;
+    }
+
+    // Gets currency code
+    // Returns - String - code like "GBP"
+    public String getCode(){return this.code;}
+
+    // Gets currency symbol
+    // Returns - String - symbol printed after amounts
+    public String getSymbol(){return this.symbol;}
+
+    // Gets amount of coin denominations
+    // Returns - int - amount of denominations
+    public int getCoinCount(){return this.coinNames.length;}
+
+    // Param - int index - denomination index
+    // Returns - String - coin name like "0.50"
+    public String getCoinName(int index){return this.coinNames[index];}
+
+    // Param - int index - denomination index
+    // Returns - long - coin value in minor units
+    public long getCoinValue(int index){return this.coinValues[index];}
+
+    // Gets denomination index of coin value
+    // Param - long value - coin value in minor units
+    // Returns - int - denomination index, -1 if there is no such coin
+    public int getCoinIndex(long value)
+    {
+        return value > 0 && value < this.coinIndex.length ? this.coinIndex[(int) value] : -1;
+    }
+
+    // Gets denomination index of coin. Only coins written exactly like their names are accepted, "0.5" is not "0.50"
+    // Param - String coin - coin name like "0.50"
+    // Returns - int - denomination index, -1 if coin is not accepted
+    public int getCoinIndex(String coin)
+    {
+        int length = coin.length();
+        int point = this.minorUnits == 0 ? length : length - this.minorUnits - 1;
+        if (point < 1 || (point < length && coin.charAt(point) != '.') || (point > 1 && coin.charAt(0) == '0'))
+        {
+            return -1;
+        }
+
+        long value = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = coin.charAt(i);
+            if (i == point)
+            {
+                continue;
+            }
+
+            if (c < '0' || c > '9')
+            {
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+            if (value >= this.coinIndex.length)
+            {
+                return -1; // bigger than the biggest coin
+            }
+        }
+
+        return this.coinIndex[(int) value];
+    }
+
+    // Parses amount written like "2.59", "2.5" or "2" into minor units
+    // Param - String amount - amount with at most minorUnits decimals
+    // Returns - long - amount in minor units
+    public long parse(String amount)
+    {
+        long units = 0;
+        int decimals = -1; // digits read after the decimal point, -1 before the point
+
+        for (int i = 0; i < amount.length(); i++)
+        {
+            char c = amount.charAt(i);
+
+            if (c == '.' && decimals < 0 && this.minorUnits > 0)
+            {
+                decimals = 0;
+                continue;
+            }
+
+            if (c < '0' || c > '9' || decimals == this.minorUnits)
+            {
+                throw new NumberFormatException("Invalid amount: " + amount);
+            }
+
+            units = units * 10 + (c - '0');
+            if (decimals >= 0)
+            {
+                decimals++;
+            }
+        }
+
+        if (amount.isEmpty())
+        {
+            throw new NumberFormatException("Invalid amount: " + amount);
+        }
+
+        // scales to minorUnits decimals
+        for (int i = Math.max(decimals, 0); i < this.minorUnits; i++)
+        {
+            units *= 10;
+        }
+
+        return units;
+    }
+
+    // Formats minor units as amount with minorUnits decimals
+    // Param - long units - amount in minor units
+    // Returns - String - amount like "2.59"
+    public String format(long units)
+    {
+        String sign = units < 0 ? "-" : "";
+        units = Math.abs(units);
+        if (this.minorUnits == 0)
+        {
+            return sign + units;
+        }
+
+        return String.format(this.pattern, sign, units / this.scale, units % this.scale);
+    }
+}
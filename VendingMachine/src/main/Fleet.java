@@ -0,0 +1,193 @@
+package main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
+// Hosts many machines in one process. Machines share one checkpoint scheduler and fleet reports are computed with
+// fork join, machines are split into groups that are summed on all cores and merged.
+// Usage - Fleet <fleet directory> [low stock limit]
+//         every subdirectory with stock.xml or stock.bin is loaded as a machine named after the directory
+public class Fleet
+{
+    private static final int MACHINES_PER_TASK = 8; // machines summed by one task without splitting further
+
+    private final ArrayList<String> names = new ArrayList<>(); // machine names, guarded by this
+    private final ArrayList<Machine> machines = new ArrayList<>(); // machines in the order they were added
+
+    private final ForkJoinPool reportPool = ForkJoinPool.commonPool(); // computes fleet reports
+    private final ScheduledExecutorService scheduler; // runs checkpoints of all machines
+    private final long checkpointPeriodMillis; // time between checkpoints of one machine
+
+    // Sums one group of machines, splitting it in two while it is bigger than MACHINES_PER_TASK
+    private static class ReportTask extends RecursiveTask<FleetReport>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] names;
+        private final Machine[] machines;
+        private final int from; // first machine index, included
+        private final int to; // last machine index, excluded
+        private final int lowStockLimit;
+
+        ReportTask(String[] names, Machine[] machines, int from, int to, int lowStockLimit)
+        {
+            this.names = names;
+            this.machines = machines;
+            this.from = from;
+            this.to = to;
+            this.lowStockLimit = lowStockLimit;
+        }
+
+        protected FleetReport compute()
+        {
+            if (this.to - this.from <= MACHINES_PER_TASK)
+            {
+                FleetReport report = new FleetReport();
+                for (int i = this.from; i < this.to; i++)
+                {
+                    report.add(this.names[i], this.machines[i], this.lowStockLimit);
+                }
+
+                return report;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            ReportTask left = new ReportTask(this.names, this.machines, this.from, middle, this.lowStockLimit);
+            ReportTask right = new ReportTask(this.names, this.machines, middle, this.to, this.lowStockLimit);
+            left.fork();
+
+            FleetReport report = right.compute();
+            FleetReport leftReport = left.join();
+            leftReport.merge(report);
+            return leftReport;
+        }
+    }
+
+    // Fleet constructor
+    // Param - int checkpointThreads - threads running checkpoints of all machines
+    // Param - long checkpointPeriodMillis - time between checkpoints of one machine
+    public Fleet(int checkpointThreads, long checkpointPeriodMillis)
+    {
+        this.checkpointPeriodMillis = checkpointPeriodMillis;
+        this.scheduler = Executors.newScheduledThreadPool(checkpointThreads, task ->
+        {
+            Thread thread = new Thread(task, "fleet-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Loads machine from its directory and starts checkpointing it. Checkpoints of machines are spread over the
+    // checkpoint period so they do not all write at once
+    // Param - String name - machine name
+    // Param - String directory - directory with stock.xml or stock.bin, journal and checkpoints are kept there
+    // Returns - Machine - loaded machine
+    public Machine addMachine(String name, String directory)
+    {
+        File snapshot = new File(directory, "stock.bin");
+
+        Machine machine = new Machine();
+        if (snapshot.exists())
+        {
+            machine.loadSnapshot(snapshot.getPath());
+        }
+        else
+        {
+            machine.restock(new File(directory, "stock.xml").getPath());
+        }
+
+        machine.openJournal(new File(directory, "stock.journal").getPath());
+        machine.enableCheckpoints(snapshot.getPath());
+        machine.getMetrics().register(name);
+
+        int index;
+        synchronized (this)
+        {
+            index = this.machines.size();
+            this.names.add(name);
+            this.machines.add(machine);
+        }
+
+        long delay = this.checkpointPeriodMillis * (index % 16 + 1) / 16;
+        this.scheduler.scheduleWithFixedDelay(machine::checkpoint, delay, this.checkpointPeriodMillis,
+                TimeUnit.MILLISECONDS);
+        return machine;
+    }
+
+    // Gets machine by name
+    // Param - String name - machine name
+    // Returns - Machine - machine or null if there is no such machine
+    public synchronized Machine getMachine(String name)
+    {
+        int index = this.names.indexOf(name);
+        return index < 0 ? null : this.machines.get(index);
+    }
+
+    // Gets amount of machines
+    // Returns - int - amount of machines
+    public synchronized int size(){return this.machines.size();}
+
+    // Sums stock and cash of all machines in parallel
+    // Param - int lowStockLimit - items with this many units or less are reported as running out
+    // Returns - FleetReport - fleet totals
+    public FleetReport report(int lowStockLimit)
+    {
+        String[] names;
+        Machine[] machines;
+        synchronized (this)
+        {
+            names = this.names.toArray(new String[0]);
+            machines = this.machines.toArray(new Machine[0]);
+        }
+
+        return this.reportPool.invoke(new ReportTask(names, machines, 0, machines.length, lowStockLimit));
+    }
+
+    // Checkpoints every machine, used before powering off
+    public void checkpointAll()
+    {
+        Machine[] machines;
+        synchronized (this)
+        {
+            machines = this.machines.toArray(new Machine[0]);
+        }
+
+        for (Machine machine : machines)
+        {
+            machine.checkpoint();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.out.println("Usage: Fleet <fleet directory> [low stock limit]");
+            return;
+        }
+
+        File[] directories = new File(args[0]).listFiles(File::isDirectory);
+        if (directories == null)
+        {
+            System.out.println("ERROR: Fleet directory not found. Please check " + args[0]);
+            return;
+        }
+
+        Fleet fleet = new Fleet(Runtime.getRuntime().availableProcessors(), 60 * 1000);
+        for (File directory : directories)
+        {
+            if (new File(directory, "stock.bin").exists() || new File(directory, "stock.xml").exists())
+            {
+                fleet.addMachine(directory.getName(), directory.getPath());
+            }
+        }
+
+        for (String line : fleet.report(args.length == 2 ? Integer.parseInt(args[1]) : 5).report())
+        {
+            System.out.println(line);
+        }
+
+        fleet.checkpointAll();
+    }
+}
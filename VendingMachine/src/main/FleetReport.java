@@ -0,0 +1,81 @@
+package main;
+
+import java.util.*;
+
+// Stock and cash totals of many machines. Reports of separate groups of machines are merged into one
+public class FleetReport
+{
+    public int machines = 0; // amount of machines
+    public long itemUnits = 0; // item units in stock in all machines
+    public long cash = 0; // sum of coins in all machines in pennies
+    public final Map<String, long[]> items = new HashMap<>(); // units in stock and amount of machines by item name
+    public final ArrayList<String> lowStock = new ArrayList<>(); // items running out, in machine order
+
+    // Adds one machine to the totals
+    // Param - String name - machine name
+    // Param - Machine machine - machine
+    // Param - int lowStockLimit - items with this many units or less are reported as running out
+    public void add(String name, Machine machine, int lowStockLimit)
+    {
+        this.machines++;
+
+        InventorySnapshot inventory = machine.getInventory(); // cash and items at the same stock version
+        this.cash += inventory.getCashSum();
+
+        for (int i = 0; i < inventory.getItemCount(); i++)
+        {
+            String item = inventory.getName(i);
+            int stock = inventory.getStock(i);
+            this.itemUnits += stock;
+
+            long[] totals = this.items.computeIfAbsent(item, key -> new long[2]);
+            totals[0] += stock;
+            totals[1] += 1;
+
+            if (stock <= lowStockLimit)
+            {
+                this.lowStock.add(name + " - " + item + " " + stock + " units");
+            }
+        }
+    }
+
+    // Adds totals of another report. Machines of the other report come after machines of this one
+    // Param - FleetReport other - report to merge
+    public void merge(FleetReport other)
+    {
+        this.machines += other.machines;
+        this.itemUnits += other.itemUnits;
+        this.cash += other.cash;
+
+        for (Map.Entry<String, long[]> entry : other.items.entrySet())
+        {
+            long[] totals = this.items.computeIfAbsent(entry.getKey(), key -> new long[2]);
+            totals[0] += entry.getValue()[0];
+            totals[1] += entry.getValue()[1];
+        }
+
+        this.lowStock.addAll(other.lowStock);
+    }
+
+    // Formats totals as text
+    // Returns - ArrayList<String> - report lines
+    public ArrayList<String> report()
+    {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("machines " + this.machines + " item units " + this.itemUnits + " cash " + Money.format(this.cash));
+
+        for (String name : new TreeSet<>(this.items.keySet()))
+        {
+            long[] totals = this.items.get(name);
+            lines.add("  " + name + " units " + totals[0] + " in " + totals[1] + " machines");
+        }
+
+        lines.add("running out " + this.lowStock.size());
+        for (String item : this.lowStock)
+        {
+            lines.add("  " + item);
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,61 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Catalog keeping every item as its own object. Each item is locked on its own while it is reserved or sold.
+// Default catalog of a machine, suited to the few hundred items a machine holds
+public class HeapCatalog implements Catalog
+{
+    private final ArrayList<Item> items = new ArrayList<>(); // items by ID
+    private final HashMap<String, Integer> index = new HashMap<>(); // item IDs by name
+
+    public int size(){return this.items.size();}
+
+    public int find(String name)
+    {
+        Integer id = this.index.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public int add(String name, long price, int stock)
+    {
+        this.items.add(new Item(name, price, stock));
+        this.index.put(name, this.items.size() - 1);
+        return this.items.size() - 1;
+    }
+
+    public void clear()
+    {
+        this.items.clear();
+        this.index.clear();
+    }
+
+    public String getName(int id){return this.items.get(id).name;}
+
+    public long getPrice(int id){return this.items.get(id).price;}
+
+    public void setPrice(int id, long price){this.items.get(id).price = price;}
+
+    public int getStock(int id){return this.items.get(id).stock;}
+
+    public void setStock(int id, int stock){this.items.get(id).stock = stock;}
+
+    public int getReserved(int id){return this.items.get(id).reserved;}
+
+    public int getSavedStock(int id){return this.items.get(id).getSavedStock();}
+
+    public boolean reserve(int id){return this.items.get(id).reserve();}
+
+    public void release(int id){this.items.get(id).release();}
+
+    public void sell(int id){this.items.get(id).sell();}
+
+    public long getSavedSequence(int id){return this.items.get(id).savedSequence;}
+
+    public void setSavedSequence(int id, long sequence){this.items.get(id).savedSequence = sequence;}
+
+    public boolean markDirty(int id){return this.items.get(id).markDirty();}
+
+    public void clearDirty(int id){this.items.get(id).clearDirty();}
+}
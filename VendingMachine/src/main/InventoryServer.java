@@ -0,0 +1,219 @@
+package main;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// TCP server exposing a stockroom to machines of other processes. Every connection is a machine served by its own
+// thread.
+//
+// Protocol - one request per line followed by one line per item, fields separated by tabs. Responses are
+// "OK <item count>" followed by units leased by item, one per line, or ERROR and the reason.
+//   leased <node> <count>     - followed by item names. Responds units leased to the node
+//   exchange <node> <count>   - followed by item, sold, returned and wanted units. Responds units newly leased
+// Usage - InventoryServer <port> [stock file]
+//         stockroom starts with items and stock of the stock file, stock.xml by default
+public class InventoryServer
+{
+    private final InventoryService service; // stockroom served to all connections
+    private final ServerSocket serverSocket;
+
+    // one thread per connection, threads are reused by later connections
+    private final ExecutorService connections = Executors.newCachedThreadPool(task ->
+    {
+        Thread thread = new Thread(task, "stockroom-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Inventory server constructor. Binds the port, connections are accepted after start
+    // Param - InventoryService service - stockroom to serve
+    // Param - int port - TCP port, 0 picks a free port
+    public InventoryServer(InventoryService service, int port) throws IOException
+    {
+        this.service = service;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: InventoryServer <port> [stock file]");
+            return;
+        }
+
+        LocalInventoryService service = LocalInventoryService.load(args.length > 1 ? args[1] : "stock.xml");
+        if (service == null)
+        {
+            return;
+        }
+
+        InventoryServer server = new InventoryServer(service, Integer.parseInt(args[0]));
+        System.out.println("Serving stockroom on port " + server.getPort());
+        server.acceptConnections();
+    }
+
+    // Gets port the server listens on
+    // Returns - int - TCP port
+    public int getPort(){return this.serverSocket.getLocalPort();}
+
+    // Starts accepting connections on a background thread
+    public void start()
+    {
+        Thread acceptor = new Thread(this::acceptConnections, "stockroom-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Stops accepting connections and closes open ones
+    public void stop()
+    {
+        try
+        {
+            this.serverSocket.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to close stockroom server");
+        }
+
+        this.connections.shutdownNow();
+    }
+
+    // Accepts connections until the server is stopped
+    private void acceptConnections()
+    {
+        while (!this.serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = this.serverSocket.accept();
+                this.connections.execute(() -> this.serve(socket));
+            }
+            catch (SocketException e)
+            {
+                break; // server stopped
+            }
+            catch (Exception e)
+            {
+                System.out.println("ERROR: Unable to accept machine connection");
+            }
+        }
+    }
+
+    // Serves one connection until the machine disconnects
+    // Param - Socket socket - machine connection
+    private void serve(Socket socket)
+    {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                     StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                     StandardCharsets.UTF_8))))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                writer.print(this.execute(line.split("\t"), reader));
+                writer.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // machine disconnected, its leases stay until it connects again
+        }
+    }
+
+    // Executes one request
+    // Param - String[] request - request name, node name and item count
+    // Param - BufferedReader reader - connection the item lines are read from
+    // Returns - String - response lines
+    private String execute(String[] request, BufferedReader reader) throws IOException
+    {
+        if (request.length != 3)
+        {
+            return "ERROR Expected request, node and item count\n";
+        }
+
+        String[] items;
+        int[] sold;
+        int[] returned;
+        int[] wanted;
+        try
+        {
+            items = new String[Integer.parseInt(request[2])];
+            sold = new int[items.length];
+            returned = new int[items.length];
+            wanted = new int[items.length];
+        }
+        catch (RuntimeException e)
+        {
+            return "ERROR Invalid item count\n";
+        }
+
+        // item lines are read even if the request is wrong, so the next request starts on its own line
+        String error = null;
+        for (int i = 0; i < items.length; i++)
+        {
+            String itemLine = reader.readLine();
+            if (itemLine == null)
+            {
+                throw new EOFException("Machine disconnected");
+            }
+
+            String[] fields = itemLine.split("\t");
+            items[i] = fields[0];
+            try
+            {
+                if (request[0].equals("exchange"))
+                {
+                    sold[i] = Integer.parseInt(fields[1]);
+                    returned[i] = Integer.parseInt(fields[2]);
+                    wanted[i] = Integer.parseInt(fields[3]);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                error = "ERROR Invalid units of " + items[i] + "\n";
+            }
+        }
+
+        if (error != null)
+        {
+            return error;
+        }
+
+        int[] units;
+        try
+        {
+            switch (request[0])
+            {
+                case "leased":
+                    units = this.service.getLeased(request[1], items);
+                    break;
+                case "exchange":
+                    units = this.service.exchange(request[1], items, sold, returned, wanted);
+                    break;
+                default:
+                    return "ERROR Unknown request\n";
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            return "ERROR " + e.getMessage() + "\n";
+        }
+
+        StringBuilder response = new StringBuilder("OK ").append(units.length).append('\n');
+        for (int unit : units)
+        {
+            response.append(unit).append('\n');
+        }
+
+        return response.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package main;
+
+import java.io.IOException;
+
+// Central stockroom shared by machines. Machines lease units of items in batches and sell them from their own stock,
+// reporting sold units and giving back unused ones on the next exchange, so a sale never waits for the stockroom.
+// Items are named like in stock files, machines are named by their node name. LocalInventoryService keeps the
+// stockroom in this process, RemoteInventoryService reaches one served by InventoryServer
+public interface InventoryService
+{
+    // Gets units leased to the node and not reported sold or returned yet
+    // Param - String node - node name of the machine
+    // Param - String[] items - item names
+    // Returns - int[] - leased units by item
+    int[] getLeased(String node, String[] items) throws IOException;
+
+    // Settles sold and returned units and leases more, for all items in one call
+    // Param - String node - node name of the machine
+    // Param - String[] items - item names
+    // Param - int[] sold - units sold since the last exchange by item
+    // Param - int[] returned - unused units given back by item
+    // Param - int[] wanted - units the machine would like to lease by item
+    // Returns - int[] - units leased by item, no more than wanted and no more than the stockroom has
+    int[] exchange(String node, String[] items, int[] sold, int[] returned, int[] wanted) throws IOException;
+}
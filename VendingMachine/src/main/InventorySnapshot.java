@@ -0,0 +1,98 @@
+package main;
+
+// Immutable copy of item and coin stock taken at one stock version. The machine publishes a snapshot whenever a
+// reader asks for stock that has changed since the last one, so views, dashboards and reports read consistent
+// stock without locks and all readers between two stock changes share the same snapshot
+public final class InventorySnapshot
+{
+    private final long version; // stock version the snapshot was taken at
+    private final String[] names; // item names by ID
+    private final long[] prices; // item prices in pennies by ID
+    private final int[] stock; // item units in stock by ID, not counting units reserved by customers
+    private final String[] coinNames; // coin names by denomination index
+    private final int[] coinStock; // amount of coins by denomination index, including reserved change coins
+    private final long[] coinSums; // sum of coins in pennies by denomination index
+    private final long itemUnits; // sum of item units in stock
+    private final long cashSum; // sum of all coins in pennies
+
+    // Snapshot constructor. Caller holds the stock lock so items are not added or replaced while the snapshot is taken
+    // Param - long version - stock version
+    // Param - Catalog catalog - items in stock
+    // Param - Cashier cashier - cashier with coin stock
+    InventorySnapshot(long version, Catalog catalog, Cashier cashier)
+    {
+        int itemCount = catalog.size();
+        this.version = version;
+        this.names = new String[itemCount];
+        this.prices = new long[itemCount];
+        this.stock = new int[itemCount];
+
+        long units = 0;
+        for (int id = 0; id < itemCount; id++)
+        {
+            this.names[id] = catalog.getName(id);
+            this.prices[id] = catalog.getPrice(id);
+            this.stock[id] = catalog.getStock(id);
+            units += this.stock[id];
+        }
+
+        this.coinStock = cashier.getCoinStock();
+        this.coinNames = new String[this.coinStock.length];
+        this.coinSums = new long[this.coinStock.length];
+
+        long cash = 0;
+        for (int i = 0; i < this.coinStock.length; i++)
+        {
+            this.coinNames[i] = cashier.getCoinName(i);
+            this.coinSums[i] = this.coinStock[i] * cashier.getCoinValue(i);
+            cash += this.coinSums[i];
+        }
+
+        this.itemUnits = units;
+        this.cashSum = cash;
+    }
+
+    // Gets stock version the snapshot was taken at
+    // Returns - long - stock version
+    public long getVersion(){return this.version;}
+
+    // Gets amount of items
+    // Returns - int - amount of items
+    public int getItemCount(){return this.names.length;}
+
+    // Param - int id - item ID
+    // Returns - String - item name
+    public String getName(int id){return this.names[id];}
+
+    // Param - int id - item ID
+    // Returns - long - item price in pennies
+    public long getPrice(int id){return this.prices[id];}
+
+    // Param - int id - item ID
+    // Returns - int - item units in stock, not counting units reserved by customers
+    public int getStock(int id){return this.stock[id];}
+
+    // Gets amount of coin denominations
+    // Returns - int - amount of denominations
+    public int getCoinCount(){return this.coinStock.length;}
+
+    // Param - int index - denomination index
+    // Returns - String - coin value like "0.50"
+    public String getCoinName(int index){return this.coinNames[index];}
+
+    // Param - int index - denomination index
+    // Returns - int - amount of coins, including reserved change coins
+    public int getCoinStock(int index){return this.coinStock[index];}
+
+    // Param - int index - denomination index
+    // Returns - long - sum of the coins in pennies
+    public long getCoinSum(int index){return this.coinSums[index];}
+
+    // Gets sum of item units in stock
+    // Returns - long - amount of units
+    public long getItemUnits(){return this.itemUnits;}
+
+    // Gets sum of all coins
+    // Returns - long - sum in pennies
+    public long getCashSum(){return this.cashSum;}
+}
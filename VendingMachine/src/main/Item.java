@@ -7,13 +7,17 @@ public class Item
 {
     public String name; // Item name
     public int stock; // Amount of items in stock
-    public double price; // Price of an item
+    public long price; // Price of an item in pennies
+
+    int reserved; // units taken out of stock by pending trades, still inside the machine
+    long savedSequence; // last journal record included in the saved copy of this item, used when replaying journal
+    private boolean dirty; // true if stock changed since the item was last checkpointed
 
     // Item constructor
     // Param - String name - name of the item
-    // Param - double price - price of the item
+    // Param - long price - price of the item in pennies
     // Param - int stock - amount of items in stock
-    public Item(String name, double price, int stock)
+    public Item(String name, long price, int stock)
     {
         this.name = name;
         this.stock = stock;
@@ -26,4 +30,48 @@ public class Item
     {
         return this.stock > 0;
     }
+
+    // Reserves one unit of the item for a pending trade. Locks only this item
+    // return - boolean - true if item was in stock and has been reserved
+    public synchronized boolean reserve()
+    {
+        if (!this.isAvailable())
+        {
+            return false;
+        }
+
+        this.stock += -1;
+        this.reserved += 1;
+        return true;
+    }
+
+    // Puts previously reserved unit back into stock
+    public synchronized void release()
+    {
+        this.stock += 1;
+        this.reserved += -1;
+    }
+
+    // Hands previously reserved unit to the customer
+    public synchronized void sell(){this.reserved += -1;}
+
+    // Gets amount of items physically inside the machine, including units reserved by pending trades
+    // return - int - amount of items to save
+    public synchronized int getSavedStock(){return this.stock + this.reserved;}
+
+    // Marks item as changed since the last checkpoint
+    // return - boolean - true if item was not marked already
+    public synchronized boolean markDirty()
+    {
+        if (this.dirty)
+        {
+            return false;
+        }
+
+        this.dirty = true;
+        return true;
+    }
+
+    // Clears changed mark when item is checkpointed
+    public synchronized void clearDirty(){this.dirty = false;}
 }
@@ -0,0 +1,767 @@
+package main;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+// Append only binary journal of everything that changes the stock since the last saved stock file.
+// Records are collected in memory and a single writer thread writes and syncs them in batches, so purchases made at
+// the same time share one disk sync. On start the journal is replayed on top of the saved stock.
+// Only the writer thread touches the journal file, rotating and clearing it are requests the writer thread carries
+// out between batches.
+//
+// Record layout - int payload length, int payload crc, payload. Payload starts with byte type and long sequence
+public class Journal
+{
+    // Record types
+    public static final byte PURCHASE = 1;
+    public static final byte REFUND = 2;
+    public static final byte RESTOCK = 3;
+    public static final byte ADDSTOCK = 4;
+    public static final byte CART = 5;
+    public static final byte LEASE = 6;
+    public static final byte RELOAD = 7;
+
+    private static final int HEADER_SIZE = 8; // payload length and crc
+    private static final int BUFFER_SIZE = 64 * 1024; // initial size of record buffers
+    private static final String OLD_SUFFIX = ".old"; // journal file rotated away until stock including it is saved
+
+    // File requests carried out by the writer thread
+    private static final int NO_REQUEST = 0;
+    private static final int ROTATE = 1;
+    private static final int RESET = 2;
+
+    private final String filePath; // journal file location
+    private FileChannel channel; // journal file, used and replaced only by the writer thread
+    private final CRC32 crc = new CRC32(); // used by appending threads while holding the journal lock
+
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE); // records waiting for next batch
+    private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE); // batch being written by writer thread
+
+    private long lastSequence; // sequence of the last appended record
+    private long durableSequence; // sequence of the last record synced to disk
+    private volatile boolean failed = false; // true after journal could not be written, records are dropped then
+    private int fileRequest = NO_REQUEST; // file request waiting for the writer thread
+    private long cutSequence; // sequence of the last record moved away by the last file request, -1 if it failed
+    private int rotatePosition; // end of the records in pending buffer going into the old file on rotation
+
+    // Journal constructor. Journals are opened with open
+    // Param - String filePath - journal file location
+    // Param - FileChannel channel - journal file positioned at its end
+    // Param - long lastSequence - sequence of the last record already in the file or in the stock file
+    private Journal(String filePath, FileChannel channel, long lastSequence)
+    {
+        this.filePath = filePath;
+        this.channel = channel;
+        this.lastSequence = lastSequence;
+        this.durableSequence = lastSequence;
+
+        Thread writer = new Thread(this::writeBatches, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Replays journal records newer than saved stock into stock controller and opens the journal for appending.
+    // Records of the journal file rotated away by a checkpoint that did not finish are replayed first.
+    // Broken records at the end of the file left by a crash are cut off
+    // Param - String filePath - journal file location
+    // Param - StockController stockController - stock loaded from the last saved stock file
+    // Returns - Journal - journal ready for appending
+    public static Journal open(String filePath, StockController stockController) throws IOException
+    {
+        long[] lastSequence = {stockController.getJournalSequence()};
+
+        replayFile(new File(filePath + OLD_SUFFIX), stockController, lastSequence);
+        long validLength = replayFile(new File(filePath), stockController, lastSequence);
+
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+
+        return new Journal(filePath, channel, lastSequence[0]);
+    }
+
+    // Appends purchase record
+    // Param - String name - bought item name
+    // Param - int[] paidCoins - amount of coins inserted by denomination index
+    // Param - int[] changeCoins - amount of coins given as change by denomination index
+    // Returns - long - record sequence
+    public synchronized long logPurchase(String name, int[] paidCoins, int[] changeCoins)
+    {
+        int start = this.begin(PURCHASE, 4 + 2 * name.length() + 8 + 8 * paidCoins.length);
+        this.putString(name);
+        this.putCoins(paidCoins);
+        this.putCoins(changeCoins);
+        return this.end(start);
+    }
+
+    // Appends purchase record of several items paid at once
+    // Param - Catalog catalog - items in stock
+    // Param - int[] itemIds - IDs of bought items
+    // Param - int itemCount - amount of bought items
+    // Param - int[] paidCoins - amount of coins inserted by denomination index
+    // Param - int[] changeCoins - amount of coins given as change by denomination index
+    // Returns - long - record sequence
+    public synchronized long logCart(Catalog catalog, int[] itemIds, int itemCount, int[] paidCoins,
+                                     int[] changeCoins)
+    {
+        int size = 4 + 8 + 8 * paidCoins.length;
+        for (int i = 0; i < itemCount; i++)
+        {
+            size += 4 + 2 * catalog.getName(itemIds[i]).length();
+        }
+
+        int start = this.begin(CART, size);
+        this.pending.putInt(itemCount);
+        for (int i = 0; i < itemCount; i++)
+        {
+            this.putString(catalog.getName(itemIds[i]));
+        }
+
+        this.putCoins(paidCoins);
+        this.putCoins(changeCoins);
+        return this.end(start);
+    }
+
+    // Appends refund record. Refunds do not change stock and are kept for audit
+    // Param - String name - name of item that was selected, empty if nothing was selected
+    // Param - int[] refundedCoins - amount of coins returned by denomination index
+    // Returns - long - record sequence
+    public synchronized long logRefund(String name, int[] refundedCoins)
+    {
+        int start = this.begin(REFUND, 4 + 2 * name.length() + 4 + 4 * refundedCoins.length);
+        this.putString(name);
+        this.putCoins(refundedCoins);
+        return this.end(start);
+    }
+
+    // Appends full item and coin stock after restock or add stock
+    // Param - byte type - RESTOCK or ADDSTOCK
+    // Param - Catalog catalog - items in stock
+    // Param - int[] coins - coin stock by denomination index
+    // Returns - long - record sequence
+    public synchronized long logStock(byte type, Catalog catalog, int[] coins)
+    {
+        int size = 4 + 4 + 4 * coins.length;
+        for (int id = 0; id < catalog.size(); id++)
+        {
+            size += 4 + 2 * catalog.getName(id).length() + 8 + 4;
+        }
+
+        int start = this.begin(type, size);
+        this.pending.putInt(catalog.size());
+        for (int id = 0; id < catalog.size(); id++)
+        {
+            this.putString(catalog.getName(id));
+            this.pending.putLong(catalog.getPrice(id));
+            this.pending.putInt(catalog.getSavedStock(id));
+        }
+
+        this.putCoins(coins);
+        return this.end(start);
+    }
+
+    // Appends items and coins changed by a stock file reload
+    // Param - Catalog catalog - items in stock
+    // Param - ArrayList<Integer> changedIds - IDs of changed items
+    // Param - int[] coins - coin stock by denomination index
+    // Param - ArrayList<Integer> changedCoins - denomination indexes of changed coins
+    // Returns - long - record sequence
+    public synchronized long logReload(Catalog catalog, ArrayList<Integer> changedIds, int[] coins,
+                                       ArrayList<Integer> changedCoins)
+    {
+        int size = 4 + 4 + 8 * changedCoins.size();
+        for (int id : changedIds)
+        {
+            size += 4 + 2 * catalog.getName(id).length() + 8 + 4;
+        }
+
+        int start = this.begin(RELOAD, size);
+        this.pending.putInt(changedIds.size());
+        for (int id : changedIds)
+        {
+            this.putString(catalog.getName(id));
+            this.pending.putLong(catalog.getPrice(id));
+            this.pending.putInt(catalog.getSavedStock(id));
+        }
+
+        this.pending.putInt(changedCoins.size());
+        for (int index : changedCoins)
+        {
+            this.pending.putInt(index);
+            this.pending.putInt(coins[index]);
+        }
+
+        return this.end(start);
+    }
+
+    // Appends stock changes of leased items
+    // Param - Catalog catalog - items in stock
+    // Param - StockController.StockChanges changes - units added to stock by item
+    // Returns - long - record sequence
+    public synchronized long logLeases(Catalog catalog, StockController.StockChanges changes)
+    {
+        int size = 4;
+        for (int id : changes.ids)
+        {
+            size += 4 + 2 * catalog.getName(id).length() + 4;
+        }
+
+        int start = this.begin(LEASE, size);
+        this.pending.putInt(changes.ids.size());
+        for (int i = 0; i < changes.ids.size(); i++)
+        {
+            this.putString(catalog.getName(changes.ids.get(i)));
+            this.pending.putInt(changes.deltas.get(i));
+        }
+
+        return this.end(start);
+    }
+
+    // Waits until record is synced to disk
+    // Param - long sequence - record sequence
+    // Returns - boolean - true if record is durable, false if journal could not be written
+    public synchronized boolean awaitDurable(long sequence)
+    {
+        boolean interrupted = false;
+        while (this.durableSequence < sequence && !this.failed)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return !this.failed;
+    }
+
+    // Checks whether journal could not be written. Records appended afterwards are dropped
+    // Returns - boolean - true if journal has failed
+    public boolean isFailed(){return this.failed;}
+
+    // Gets sequence of the last appended record. Saved stock file covers records up to it
+    // Returns - long - record sequence
+    public synchronized long getLastSequence(){return this.lastSequence;}
+
+    // Empties journal after stock has been saved. Records still waiting for the writer thread are kept, refunds
+    // appended since the save may go with the cleared file as they do not change stock
+    public synchronized void reset()
+    {
+        this.request(RESET);
+    }
+
+    // Cuts journal after the last appended record. Writer thread moves records up to the cut into old journal file and
+    // starts a new journal file for later records, without the caller waiting for it. Old file is deleted with
+    // deleteOld once stock including its records has been saved and awaitRotated has returned
+    // Returns - long - sequence of the last record going into the old file, -1 if old file of previous checkpoint is
+    //                  still there, another file request is waiting or the journal failed
+    public synchronized long rotate()
+    {
+        if (this.failed || this.fileRequest != NO_REQUEST || Files.exists(Paths.get(this.filePath + OLD_SUFFIX)))
+        {
+            return -1;
+        }
+
+        this.fileRequest = ROTATE;
+        this.rotatePosition = this.pending.position();
+        this.cutSequence = this.lastSequence;
+        this.notifyAll();
+        return this.cutSequence;
+    }
+
+    // Waits until the writer thread has moved records up to the cut of rotate into old journal file
+    // Returns - boolean - true if old file holds them, false if the journal failed
+    public synchronized boolean awaitRotated()
+    {
+        boolean interrupted = false;
+        while (this.fileRequest == ROTATE && !this.failed)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return !this.failed;
+    }
+
+    // Deletes old journal file after stock including its records has been saved
+    public synchronized void deleteOld()
+    {
+        try
+        {
+            Files.deleteIfExists(Paths.get(this.filePath + OLD_SUFFIX));
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to delete old stock journal");
+        }
+    }
+
+    // Hands file request to the writer thread and waits until it is carried out. Caller holds the journal lock
+    // Param - int request - RESET
+    // Returns - long - sequence of the last record moved away, -1 if the journal failed
+    private long request(int request)
+    {
+        boolean interrupted = false;
+        while (this.fileRequest != NO_REQUEST && !this.failed)
+        {
+            try
+            {
+                this.wait(); // another thread's request goes first
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        this.fileRequest = request;
+        this.notifyAll();
+        while (this.fileRequest == request && !this.failed)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return this.failed ? -1 : this.cutSequence;
+    }
+
+    // Writes record type and sequence placeholder. Caller holds the journal lock
+    // Param - byte type - record type
+    // Param - int size - size of record fields after type and sequence
+    // Returns - int - record start position in pending buffer
+    private int begin(byte type, int size)
+    {
+        int recordSize = HEADER_SIZE + 1 + 8 + size;
+
+        // grows the buffer for records bigger than free space
+        if (this.pending.remaining() < recordSize)
+        {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(this.pending.capacity() * 2,
+                    this.pending.position() + recordSize));
+            this.pending.flip();
+            bigger.put(this.pending);
+            this.pending = bigger;
+        }
+
+        int start = this.pending.position();
+        this.pending.position(start + HEADER_SIZE);
+        this.pending.put(type);
+        this.pending.putLong(this.lastSequence + 1);
+        return start;
+    }
+
+    // Fills in record header and wakes writer thread. Record is dropped if the journal failed, so records do not pile
+    // up for a writer thread that has stopped. Caller holds the journal lock
+    // Param - int start - record start position in pending buffer
+    // Returns - long - record sequence
+    private long end(int start)
+    {
+        if (this.failed)
+        {
+            this.pending.position(start);
+            return ++this.lastSequence;
+        }
+
+        int length = this.pending.position() - start - HEADER_SIZE;
+
+        this.crc.reset();
+        this.crc.update(this.pending.array(), start + HEADER_SIZE, length);
+        this.pending.putInt(start, length);
+        this.pending.putInt(start + 4, (int) this.crc.getValue());
+
+        this.lastSequence += 1;
+        this.notifyAll();
+        return this.lastSequence;
+    }
+
+    // Writes string as its length and characters. Caller holds the journal lock
+    // Param - String value - written string
+    private void putString(String value)
+    {
+        this.pending.putInt(value.length());
+        for (int i = 0; i < value.length(); i++)
+        {
+            this.pending.putChar(value.charAt(i));
+        }
+    }
+
+    // Writes amount of coins by denomination index. Caller holds the journal lock
+    // Param - int[] coins - amount of coins by denomination index
+    private void putCoins(int[] coins)
+    {
+        this.pending.putInt(coins.length);
+        for (int coin : coins)
+        {
+            this.pending.putInt(coin);
+        }
+    }
+
+    // Writer thread. Swaps pending records with the written batch, writes the batch and syncs it to disk once.
+    // Journal is cleared between batches, when the file holds exactly the records up to the durable one. Rotation
+    // splits the batch at the cut, records before it are synced into the old file and the rest into the new one
+    private void writeBatches()
+    {
+        while (true)
+        {
+            ByteBuffer batch;
+            long batchSequence;
+            int request;
+            int split;
+
+            synchronized (this)
+            {
+                while (this.pending.position() == 0 && this.fileRequest == NO_REQUEST)
+                {
+                    try
+                    {
+                        this.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+
+                request = this.fileRequest;
+                if (request == RESET)
+                {
+                    batch = null; // records appended meanwhile wait for the next batch
+                    split = 0;
+                    this.cutSequence = this.durableSequence;
+                }
+                else
+                {
+                    batch = this.pending;
+                    this.pending = this.writing;
+                    this.writing = batch;
+                    split = request == ROTATE ? this.rotatePosition : batch.position();
+                }
+
+                batchSequence = this.lastSequence;
+            }
+
+            if (batch == null)
+            {
+                if (!this.finish(this.carryOut(request)))
+                {
+                    return;
+                }
+
+                continue;
+            }
+
+            try
+            {
+                int end = batch.position();
+                batch.flip();
+                batch.limit(split);
+                this.writeAll(batch);
+                if (request == ROTATE)
+                {
+                    if (!this.finish(this.carryOut(request)))
+                    {
+                        return;
+                    }
+
+                    batch.limit(end);
+                    this.writeAll(batch);
+                }
+            }
+            catch (IOException e)
+            {
+                System.out.println("ERROR: Unable to write stock journal");
+                synchronized (this)
+                {
+                    this.failed = true;
+                    this.pending.clear(); // nothing will write them
+                    this.notifyAll();
+                }
+                return;
+            }
+            finally
+            {
+                batch.clear();
+            }
+
+            synchronized (this)
+            {
+                this.durableSequence = batchSequence;
+                this.notifyAll();
+            }
+        }
+    }
+
+    // Writes records of the batch up to its limit and syncs them to disk. Called by the writer thread
+    // Param - ByteBuffer batch - records to write
+    private void writeAll(ByteBuffer batch) throws IOException
+    {
+        if (!batch.hasRemaining())
+        {
+            return;
+        }
+
+        while (batch.hasRemaining())
+        {
+            this.channel.write(batch);
+        }
+
+        this.channel.force(false);
+    }
+
+    // Marks file request as carried out and wakes threads waiting for it. Called by the writer thread
+    // Param - boolean done - true if done, false if the journal can not be written any more
+    // Returns - boolean - done
+    private boolean finish(boolean done)
+    {
+        synchronized (this)
+        {
+            this.fileRequest = NO_REQUEST;
+            if (!done)
+            {
+                this.failed = true;
+                this.pending.clear(); // nothing will write them
+            }
+
+            this.notifyAll();
+        }
+
+        return done;
+    }
+
+    // Rotates or clears journal file. Called by the writer thread when the file holds exactly the records up to the
+    // cut or the durable one
+    // Param - int request - ROTATE or RESET
+    // Returns - boolean - true if done, false if the journal can not be written any more
+    private boolean carryOut(int request)
+    {
+        Path current = Paths.get(this.filePath);
+        Path old = Paths.get(this.filePath + OLD_SUFFIX);
+        if (request == RESET)
+        {
+            try
+            {
+                this.channel.truncate(0);
+                this.channel.position(0);
+                this.channel.force(true);
+                Files.deleteIfExists(old);
+            }
+            catch (IOException e)
+            {
+                System.out.println("ERROR: Unable to clear stock journal"); // records stay and are skipped on replay
+            }
+
+            return true;
+        }
+
+        try
+        {
+            this.channel.close();
+            Files.move(current, old, StandardCopyOption.ATOMIC_MOVE);
+            this.channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            return true;
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to rotate stock journal");
+            return false;
+        }
+    }
+
+    // Replays records of one journal file newer than saved stock
+    // Param - File file - journal file, missing file has no records
+    // Param - StockController stockController - stock to update
+    // Param - long[] lastSequence - sequence of the last record seen so far, updated
+    // Returns - long - length of the file up to the first broken record
+    private static long replayFile(File file, StockController stockController, long[] lastSequence)
+            throws IOException
+    {
+        long validLength = 0;
+        if (!file.exists())
+        {
+            return validLength;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            CRC32 crc = new CRC32();
+            while (true)
+            {
+                int length;
+                int checksum;
+                byte[] payload;
+                try
+                {
+                    length = input.readInt();
+                    checksum = input.readInt();
+                    if (length < 9 || length > file.length())
+                    {
+                        break;
+                    }
+
+                    payload = new byte[length];
+                    input.readFully(payload);
+                }
+                catch (EOFException e)
+                {
+                    break; // end of journal or record cut by a crash
+                }
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum)
+                {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte type = record.get();
+                long sequence = record.getLong();
+
+                // records already in the saved stock file are skipped
+                if (sequence > stockController.getJournalSequence())
+                {
+                    replay(type, sequence, record, stockController);
+                }
+
+                lastSequence[0] = Math.max(lastSequence[0], sequence);
+                validLength += HEADER_SIZE + length;
+            }
+        }
+
+        return validLength;
+    }
+
+    // Applies one journal record to stock
+    // Param - byte type - record type
+    // Param - long sequence - record sequence
+    // Param - ByteBuffer record - record fields after type and sequence
+    // Param - StockController stockController - stock to update
+    private static void replay(byte type, long sequence, ByteBuffer record, StockController stockController)
+    {
+        switch (type)
+        {
+            case PURCHASE:
+                String name = getString(record);
+                int[] paidCoins = getCoins(record);
+                int[] changeCoins = getCoins(record);
+                stockController.applyPurchase(sequence, name, paidCoins, changeCoins);
+                break;
+            case CART:
+                String[] names = new String[record.getInt()];
+                for (int i = 0; i < names.length; i++)
+                {
+                    names[i] = getString(record);
+                }
+
+                int[] cartPaidCoins = getCoins(record);
+                stockController.applyCart(sequence, names, cartPaidCoins, getCoins(record));
+                break;
+            case RESTOCK:
+            case ADDSTOCK:
+                ArrayList<Item> items = new ArrayList<>();
+                int itemCount = record.getInt();
+                for (int i = 0; i < itemCount; i++)
+                {
+                    items.add(new Item(getString(record), record.getLong(), record.getInt()));
+                }
+
+                stockController.applyStock(sequence, items, getCoins(record));
+                break;
+            case LEASE:
+                String[] leasedNames = new String[record.getInt()];
+                int[] deltas = new int[leasedNames.length];
+                for (int i = 0; i < leasedNames.length; i++)
+                {
+                    leasedNames[i] = getString(record);
+                    deltas[i] = record.getInt();
+                }
+
+                stockController.applyLeases(sequence, leasedNames, deltas);
+                break;
+            case RELOAD:
+                ArrayList<Item> reloaded = new ArrayList<>();
+                int reloadedCount = record.getInt();
+                for (int i = 0; i < reloadedCount; i++)
+                {
+                    reloaded.add(new Item(getString(record), record.getLong(), record.getInt()));
+                }
+
+                int[] coinIndexes = new int[record.getInt()];
+                int[] coinStock = new int[coinIndexes.length];
+                for (int i = 0; i < coinIndexes.length; i++)
+                {
+                    coinIndexes[i] = record.getInt();
+                    coinStock[i] = record.getInt();
+                }
+
+                stockController.applyReload(sequence, reloaded, coinIndexes, coinStock);
+                break;
+            default:
+                break; // refunds do not change stock
+        }
+    }
+
+    // Reads string written by putString
+    // Param - ByteBuffer record - record positioned at the string
+    // Returns - String - read string
+    private static String getString(ByteBuffer record)
+    {
+        char[] chars = new char[record.getInt()];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = record.getChar();
+        }
+
+        return new String(chars);
+    }
+
+    // Reads coins written by putCoins
+    // Param - ByteBuffer record - record positioned at the coins
+    // Returns - int[] - amount of coins by denomination index
+    private static int[] getCoins(ByteBuffer record)
+    {
+        int[] coins = new int[record.getInt()];
+        for (int i = 0; i < coins.length; i++)
+        {
+            coins[i] = record.getInt();
+        }
+
+        return coins;
+    }
+}
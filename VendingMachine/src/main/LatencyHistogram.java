@@ -0,0 +1,136 @@
+package main;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogram of operation times. Buckets grow exponentially with 8 buckets per power of two, so any percentile is
+// within 12.5% of the true time. Buckets are striped counters, recording never blocks and threads recording at
+// the same time rarely touch the same memory
+public class LatencyHistogram implements LatencyHistogramMBean
+{
+    private static final int SUB_BUCKET_BITS = 3; // 8 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name; // operation name
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // Latency histogram constructor
+    // Param - String name - operation name
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    // Gets operation name
+    // Returns - String - operation name
+    public String getName(){return this.name;}
+
+    // Records one operation
+    // Param - long startNanos - System.nanoTime when the operation started
+    public void recordSince(long startNanos){this.record(System.nanoTime() - startNanos);}
+
+    // Records one operation
+    // Param - long nanos - operation time in nanoseconds
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+        {
+            nanos = 0;
+        }
+
+        this.buckets[bucket(nanos)].increment();
+        this.count.increment();
+        this.sum.add(nanos);
+        this.max.accumulate(nanos);
+    }
+
+    public long getCount(){return this.count.sum();}
+
+    public double getMeanMicros()
+    {
+        long count = this.count.sum();
+        return count == 0 ? 0 : this.sum.sum() / 1000.0 / count;
+    }
+
+    public double getP50Micros(){return this.percentile(0.5) / 1000.0;}
+
+    public double getP90Micros(){return this.percentile(0.9) / 1000.0;}
+
+    public double getP99Micros(){return this.percentile(0.99) / 1000.0;}
+
+    public double getP999Micros(){return this.percentile(0.999) / 1000.0;}
+
+    public double getMaxMicros(){return this.max.get() / 1000.0;}
+
+    // Gets time below which given share of operations finished
+    // Param - double share - share of operations from 0 to 1
+    // Returns - long - upper bound of the bucket in nanoseconds
+    public long percentile(double share)
+    {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(share * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+            {
+                // slowest operation is a tighter bound than the end of its bucket
+                return Math.min(upperBound(i), this.max.get());
+            }
+        }
+
+        return this.max.get();
+    }
+
+    // Gets bucket of a time
+    // Param - long nanos - time in nanoseconds, not negative
+    // Returns - int - bucket index
+    private static int bucket(long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+        {
+            return (int) nanos;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Gets biggest time falling into a bucket
+    // Param - int bucket - bucket index
+    // Returns - long - time in nanoseconds
+    private static long upperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,13 @@
+package main;
+
+// Management interface of latency histogram, times are in microseconds
+public interface LatencyHistogramMBean
+{
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP90Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+}
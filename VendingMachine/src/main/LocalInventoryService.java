@@ -0,0 +1,102 @@
+package main;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+
+// Stockroom kept in memory of this process. Machines in the same process use it directly, machines elsewhere reach
+// it through InventoryServer. Every call is synchronized, exchanges come in batches so they are rare
+public class LocalInventoryService implements InventoryService
+{
+    private final HashMap<String, Integer> stock = new HashMap<>(); // units not leased to any machine, by item
+    private final HashMap<String, HashMap<String, Integer>> leases = new HashMap<>(); // leased units by node and item
+
+    // Adds units to the stockroom
+    // Param - String item - item name
+    // Param - int units - amount of units
+    public synchronized void addStock(String item, int units){this.stock.merge(item, units, Integer::sum);}
+
+    // Gets units not leased to any machine
+    // Param - String item - item name
+    // Returns - int - amount of units
+    public synchronized int getStock(String item){return this.stock.getOrDefault(item, 0);}
+
+    public synchronized int[] getLeased(String node, String[] items)
+    {
+        HashMap<String, Integer> leased = this.leases.getOrDefault(node, new HashMap<>());
+        int[] units = new int[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            units[i] = leased.getOrDefault(items[i], 0);
+        }
+
+        return units;
+    }
+
+    public synchronized int[] exchange(String node, String[] items, int[] sold, int[] returned, int[] wanted)
+    {
+        // nothing is settled if any count is wrong
+        for (int i = 0; i < items.length; i++)
+        {
+            if (sold[i] < 0 || returned[i] < 0 || wanted[i] < 0)
+            {
+                throw new IllegalArgumentException("Negative units of " + items[i]);
+            }
+        }
+
+        HashMap<String, Integer> leased = this.leases.computeIfAbsent(node, name -> new HashMap<>());
+        int[] granted = new int[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            // a machine can not sell or return more than it has leased
+            int units = leased.getOrDefault(items[i], 0);
+            int given = Math.min(returned[i], units);
+            units -= given + Math.min(sold[i], units - given);
+
+            int free = this.stock.getOrDefault(items[i], 0) + given;
+            granted[i] = Math.min(wanted[i], free);
+            this.stock.put(items[i], free - granted[i]);
+            leased.put(items[i], units + granted[i]);
+        }
+
+        return granted;
+    }
+
+    // Reads stockroom from stock file. Only items and their stock are read, prices and coins belong to machines
+    // Param - String filePath - stock file location
+    // Returns - LocalInventoryService - stockroom or null if the file is broken
+    public static LocalInventoryService load(String filePath)
+    {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filePath)))
+        {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+            try
+            {
+                LocalInventoryService service = new LocalInventoryService();
+                while (reader.hasNext())
+                {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("item"))
+                    {
+                        service.addStock(reader.getAttributeValue(null, "name"),
+                                Integer.parseInt(reader.getAttributeValue(null, "stock")));
+                    }
+                }
+
+                return service;
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Stock contaminated. Please check " + filePath);
+            return null;
+        }
+    }
+}
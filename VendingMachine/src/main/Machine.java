@@ -1,194 +1,1242 @@
 package main;
 
-import java.math.BigDecimal;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.lang.String;
 
 // Class representing physical wending machine
 public class Machine
 {
-    private ArrayList<Item> items = new ArrayList<>(); // All items in stock
+    private static final String SEPARATOR =
+            "//////////////////////////////////////////////////////////////////////////////////////\n";
+
+    // Rendered item or status list and the stock version it shows
+    private static class RenderedView
+    {
+        final long version;
+        final Pricing pricing; // pricing the shown prices come from
+        final int minute; // minute of the day deciding promotions of the shown prices
+        final String text;
+
+        RenderedView(long version, Pricing pricing, int minute, String text)
+        {
+            this.version = version;
+            this.pricing = pricing;
+            this.minute = minute;
+            this.text = text;
+        }
+
+        // Checks whether the view still shows the stock and prices
+        // param - long version - current stock version
+        // param - Pricing pricing - current pricing
+        // param - int minute - minute of the day deciding promotions now
+        // returns boolean - true if the view can be shown again
+        boolean isCurrent(long version, Pricing pricing, int minute)
+        {
+            return this.version == version && this.pricing == pricing && this.minute == minute;
+        }
+    }
+
+    private final Catalog catalog; // All items in stock
     private Cashier cashier = new Cashier(); // Represents cashier and does all money handling operations
-    private StockController stockController = new StockController(items, cashier); // Controls 'physical' stock.
+    private final StockController stockController; // Controls 'physical' stock.
+    private PricingRules pricingRules = new PricingRules(); // promotions and bundles, guarded by the stock lock
+    private volatile Pricing pricing; // pricing rules compiled against the current items
+    private final SearchIndex searchIndex = new SearchIndex(); // item names, updated under the stock write lock
+
+    // Customer sessions share this lock, restocking takes it exclusively. Items are locked one by one on reservation
+    private final ReentrantReadWriteLock stockLock = new ReentrantReadWriteLock();
+
+    private volatile String savedStockPath; // stock file last written by saveStock
+    private volatile long savedStockModified; // modification time of that file right after it was written
+    private final SessionPool sessionPool = new SessionPool(this.cashier.getCoinCount(), 256); // closed sessions
+    private Session consoleSession = this.openSession(); // session used by the console commands
+    private Journal journal; // stock changes since the last saved stock, null if journaling is off
+    private Checkpointer checkpointer; // saves changed stock into binary stock file, null if checkpoints are off
+    private ScheduledExecutorService checkpointScheduler; // runs periodic checkpoints
+    private ScheduledExecutorService leaseScheduler; // runs periodic lease exchanges with the stockroom
+    private final Object leaseLock = new Object(); // one lease exchange at a time
+    private final Metrics metrics = new Metrics(this); // operation times, counters and stock gauges
+
+    private OutputSink out = new ConsoleSink(System.out); // where console commands print
+    private final AtomicLong stockVersion = new AtomicLong(); // changed after every change of items or coins
+    private final LongAdder itemUnits = new LongAdder(); // item units in stock not reserved, kept for stock gauges
+    private volatile RenderedView catalogView; // last rendered item list
+    private final AtomicReference<InventorySnapshot> inventory; // last published copy of stock
+    private volatile RenderedView statusView; // last rendered item and coin list
+
+    // Hands sales to listeners on its own thread, so customers only copy their sale into its ring
+    private final SalesDispatcher salesDispatcher = new SalesDispatcher(this.cashier.getCoinCount(), 1024);
+    private final SalesAggregator sales = new SalesAggregator(this.cashier.getCoinCount()); // rolling sales totals
+
+    // Machine constructor
+    public Machine(){this(new HeapCatalog());}
+
+    // Machine constructor
+    // param - Catalog catalog - empty item store, ColumnarCatalog keeps big catalogs off the object heap
+    public Machine(Catalog catalog)
+    {
+        this.catalog = catalog;
+        this.stockController = new StockController(catalog, this.cashier);
+        this.pricing = this.pricingRules.compile(catalog);
+        this.searchIndex.update(catalog);
+        // first snapshot is older than any stock version
+        this.inventory = new AtomicReference<>(new InventorySnapshot(-1, catalog, this.cashier));
+        this.addSalesListener(this.sales);
+    }
+
+    // Gets sales totals of the last minute, hour and day, including every sale published so far
+    // returns SalesAggregator - rolling sales totals
+    public SalesAggregator getSales()
+    {
+        this.salesDispatcher.flush();
+        return this.sales;
+    }
+
+    // Adds listener receiving every purchase and refund on the sales dispatcher thread
+    // param - SalesListener listener - sales listener
+    public void addSalesListener(SalesListener listener){this.salesDispatcher.addListener(listener);}
+
+    // Waits until every purchase and refund so far has been handed to the sales listeners
+    public void flushSales(){this.salesDispatcher.flush();}
+
+    // Gets where console commands print
+    // returns OutputSink - output sink
+    public OutputSink getOutput(){return this.out;}
 
-    private Item pendingItem; // item that user selects for buying
+    // Sets where console commands print
+    // param - OutputSink out - output sink
+    public void setOutput(OutputSink out){this.out = out;}
 
-    // empty constructor
-    public Machine(){}
+    // Replaces promotions and bundles. Carts already filled keep their prices
+    // param - PricingRules rules - promotions and bundles
+    public void setPricingRules(PricingRules rules)
+    {
+        this.stockLock.writeLock().lock();
+        try
+        {
+            this.pricingRules = rules;
+            this.pricing = rules.compile(this.catalog);
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
+    }
+
+    // Gets pricing rules compiled against the current items. Prices items the way customers are charged
+    // returns Pricing - current pricing
+    public Pricing getPricing(){return this.pricing;}
+
+    // Gets operation times, counters and stock gauges
+    // returns Metrics - machine metrics
+    public Metrics getMetrics(){return this.metrics;}
+
+    // Gets copy of item and coin stock at the current stock version. Readers get the published snapshot without
+    // locking while stock is unchanged. After a change the first reader takes a new snapshot under the read lock,
+    // so customers keep buying meanwhile, and publishes it to the others. Purchases in flight may be partly in the
+    // snapshot, they change the stock version when done so the next reader takes a new one
+    // returns InventorySnapshot - immutable item and coin stock
+    public InventorySnapshot getInventory()
+    {
+        InventorySnapshot inventory = this.inventory.get();
+        if(inventory.getVersion() == this.stockVersion.get()){return inventory;}
+
+        synchronized(this.inventory)
+        {
+            long version = this.stockVersion.get(); // read first, changes made while copying need a new snapshot
+            inventory = this.inventory.get();
+            if(inventory.getVersion() == version){return inventory;}
+
+            this.stockLock.readLock().lock();
+            try
+            {
+                inventory = new InventorySnapshot(version, this.catalog, this.cashier);
+            }
+            finally
+            {
+                this.stockLock.readLock().unlock();
+            }
+
+            this.inventory.set(inventory);
+            return inventory;
+        }
+    }
+
+    // Gets amount of item units in stock, not counting units reserved by customers. Read from a counter without
+    // taking a snapshot
+    // returns long - amount of units
+    public long getItemUnitsInStock(){return this.itemUnits.sum();}
+
+    // Gets sum of all coins in the machine. Read from coin counters without taking a snapshot
+    // returns long - sum in pennies
+    public long getCashSum(){return this.cashier.getContentsSum();}
 
     // Prints all items currently in stock
-    public void printAllItems()
+    public void printAllItems(){this.out.print(this.renderCatalog(this.getInventory()));}
+
+    // Gets amount of items, including items currently out of stock
+    // returns int - amount of items
+    public int getItemCount(){return this.catalog.size();}
+
+    // Finds items by name, ignoring case. Names starting with the query come first, then names containing it, then
+    // names close to it in case of a typo
+    // param - String query - whole or part of an item name
+    // param - int limit - most items found
+    // returns int[] - IDs of found items, IDs stay the same after restock
+    public int[] findItems(String query, int limit)
     {
-        System.out.println("//////////////////////////////////////////////////////////////////////////////////////");
-        System.out.println("Current items:");
+        long start = System.nanoTime();
+        this.stockLock.readLock().lock();
+        try
+        {
+            return this.searchIndex.find(query, limit);
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+            this.metrics.findItems.recordSince(start);
+        }
+    }
+
+    // Prints items found by name
+    // param - String query - whole or part of an item name
+    // param - int limit - most items printed
+    public void printFoundItems(String query, int limit)
+    {
+        int[] ids = this.findItems(query, limit);
+        if(ids.length == 0)
+        {
+            this.out.println("No items found");
+            return;
+        }
+
+        this.stockLock.readLock().lock();
+        try
+        {
+            long now = System.nanoTime();
+            for(int id : ids)
+            {
+                this.out.printf("ID: %d\t%s\tprice: %s\tcurrently in stock: %d units\n", id, this.catalog.getName(id),
+                        Money.display(this.pricing.price(id, this.catalog.getPrice(id), now)),
+                        this.catalog.getStock(id));
+            }
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+        }
+    }
+
+    // Gets printed list of all items with the prices customers pay now. Rendered again only after stock, pricing
+    // rules or promotions in effect have changed
+    // param - InventorySnapshot inventory - stock to render
+    // returns String - item list
+    private String renderCatalog(InventorySnapshot inventory)
+    {
+        Pricing pricing = this.pricing;
+        long now = System.nanoTime();
+        int minute = pricing.getMinute(now);
+        RenderedView view = this.catalogView;
+        if(view != null && view.isCurrent(inventory.getVersion(), pricing, minute)){return view.text;}
+
+        StringBuilder text = new StringBuilder();
+        text.append(SEPARATOR).append("Current items:\n");
 
-        // Loops and prints all items in stock
-        for(int i = 0; i < items.size(); i++)
+        // Loops and renders all items in stock
+        for(int i = 0; i < inventory.getItemCount(); i++)
         {
-            Item item = items.get(i);
-            System.out.printf("ID: %d\t%s\tprice: %.2f£\tcurrently in stock: %d units\n", i, item.name,
-                                                                                            item.price,
-                                                                                            item.stock);
+            text.append(String.format("ID: %d\t%s\tprice: %s\tcurrently in stock: %d units\n", i,
+                    inventory.getName(i), Money.display(pricing.price(i, inventory.getPrice(i), now)),
+                    inventory.getStock(i)));
         }
-        System.out.println("//////////////////////////////////////////////////////////////////////////////////////");
+
+        text.append(SEPARATOR);
+
+        this.catalogView = new RenderedView(inventory.getVersion(), pricing, minute, text.toString());
+        return this.catalogView.text;
     }
 
     // Prints all items and coins in stock
-    public void printStatus()
+    public void printStatus(){this.out.print(this.renderStatus(this.getInventory()));}
+
+    // Gets printed list of all items and coins. Rendered again only after stock or shown prices have changed
+    // param - InventorySnapshot inventory - stock to render
+    // returns String - item and coin list
+    private String renderStatus(InventorySnapshot inventory)
     {
-        this.printAllItems(); // prints current items in stock
-        System.out.println("Cashier contents:");
+        Pricing pricing = this.pricing;
+        int minute = pricing.getMinute(System.nanoTime());
+        RenderedView view = this.statusView;
+        if(view != null && view.isCurrent(inventory.getVersion(), pricing, minute)){return view.text;}
+
+        StringBuilder text = new StringBuilder(this.renderCatalog(inventory)); // current items in stock
+        text.append("Cashier contents:\n");
 
-        Map<String, Coin> cashierContents = this.cashier.getContents(); // gets copy if cashier contents
-        SortedSet<String> keys = new TreeSet<>(cashierContents.keySet()); // sorts keys
+        // Loops and renders all coin denominations and their stock, smallest coin first
+        for(int i = inventory.getCoinCount() - 1; i >= 0; i--)
+        {
+            text.append(String.format("Coin: %s stock: %d\ttotal sum: %s\n", inventory.getCoinName(i),
+                    inventory.getCoinStock(i), Money.display(inventory.getCoinSum(i))));
+        }
+
+        text.append(String.format("Total sum: %s\n", Money.display(inventory.getCashSum())));
+        text.append(SEPARATOR);
 
-        // Loops and prints all coin denominations and their stock
-        for(String key : keys)
+        this.statusView = new RenderedView(inventory.getVersion(), pricing, minute, text.toString());
+        return this.statusView.text;
+    }
+
+    // Returns copy of items in stock. So that it would not be possible to manipulate stock outside of machine
+    // returns ArrayList<Item> - items by ID
+    public ArrayList<Item> getItems()
+    {
+        InventorySnapshot inventory = this.getInventory();
+        ArrayList<Item> copy = new ArrayList<>(inventory.getItemCount());
+        for(int i = 0; i < inventory.getItemCount(); i++)
         {
-            System.out.printf("Coin: %s stock: %d\ttotal sum: %.2f£\n", key, cashierContents.get(key).stock,
-                    cashier.getCoinSum(key));
+            copy.add(new Item(inventory.getName(i), inventory.getPrice(i), inventory.getStock(i)));
         }
 
-        System.out.printf("Total sum: %.2f£\n", cashier.getContentsSum());
-        System.out.println("//////////////////////////////////////////////////////////////////////////////////////");
+        return copy;
+    }
+
+    // Gets coin stock including reserved change coins
+    // returns int[] - amount of coins by denomination index
+    public int[] getCoinStock(){return this.cashier.getCoinStock();}
+
+    // Gets coin name of denomination index
+    // param - int index - denomination index
+    // returns String - coin value like "0.50"
+    public String getCoinName(int index){return this.cashier.getCoinName(index);}
+
+    // Gets amount of accepted coin denominations
+    // returns int - amount of denominations
+    public int getCoinCount(){return this.cashier.getCoinCount();}
+
+    // Gets currency the machine works in
+    // returns CurrencyProfile - coin denominations
+    public CurrencyProfile getCurrency(){return this.cashier.getCurrency();}
+
+    // Opens customer session with its own coin escrow. Sessions closed earlier are reused
+    // returns Session - open session
+    public Session openSession(){return this.sessionPool.take();}
+
+    // Closes customer session. Refunds it and keeps it for the next customer, session must not be used afterwards
+    // param - Session session - customer session
+    public void closeSession(Session session)
+    {
+        this.refund(session);
+        this.sessionPool.give(session);
     }
 
-    // Buys item
-    // param - int id - id of an item that user is buying
-    public void buyItem(int id)
+    // Reserves an item for the session. Previously reserved items are put back into stock. Item is priced with the
+    // promotions applying right now and keeps the price until it is bought or released
+    // param - Session session - customer session
+    // param - int id - ID of a selected item
+    // returns boolean - true if item has been found and reserved
+    public boolean selectItem(Session session, int id)
     {
-        this.items.get(id).stock += -1; // reduces the stock of the item
-        this.cashier.takePendingCoins(); // Puts inserted coins into cashier coin stock
-        System.out.println("Please take your " + this.items.get(id).name + " and your change");
+        long start = System.nanoTime();
+        this.stockLock.readLock().lock();
+        try
+        {
+            if(id < 0 || id >= this.catalog.size() || !this.catalog.reserve(id)){return false;}
+
+            this.itemUnits.decrement();
+            this.releaseItems(session);
+            session.addToCart(id, this.pricing.price(id, this.catalog.getPrice(id), start));
+            this.stockVersion.incrementAndGet();
+            return true;
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+            this.metrics.selectItem.recordSince(start);
+        }
+    }
+
+    // Reserves one more item for the session. All reserved items are bought together with one payment, an item
+    // completing a bundle with items already in the cart is priced at the rest of the bundle price
+    // param - Session session - customer session
+    // param - int id - ID of a selected item
+    // returns boolean - true if item has been found and reserved
+    public boolean addToCart(Session session, int id)
+    {
+        long start = System.nanoTime();
+        this.stockLock.readLock().lock();
+        try
+        {
+            if(id < 0 || id >= this.catalog.size() || !this.catalog.reserve(id)){return false;}
+
+            this.itemUnits.decrement();
+            Pricing pricing = this.pricing;
+            session.addToCart(id, pricing.price(id, this.catalog.getPrice(id), start));
+            pricing.priceCart(session);
+            this.stockVersion.incrementAndGet();
+            return true;
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+            this.metrics.selectItem.recordSince(start);
+        }
+    }
+
+    // Gets price of all items reserved by the session
+    // param - Session session - customer session
+    // returns long - total price in pennies
+    public long getDueAmount(Session session)
+    {
+        long due = 0;
+        for(int i = 0; i < session.cartSize; i++)
+        {
+            due += session.cartPrices[i];
+        }
+
+        return due;
+    }
+
+    // Inserts coin into session escrow
+    // param - Session session - customer session
+    // param - String coin - coin to be inserted
+    // returns boolean - true if coin has been accepted
+    // Coins the machine could not give change for are rejected right away instead of failing the purchase later
+    public boolean insertCoin(Session session, String coin)
+    {
+        int index = this.cashier.getCoinIndex(coin);
+        if(index < 0)
+        {
+            this.metrics.invalidCoins.increment();
+            return false;
+        }
+
+        // change due if this coin is accepted
+        long change = this.getInsertedAmount(session) + this.cashier.getCoinValue(index) - this.getDueAmount(session);
+        if(session.cartSize > 0 && !this.cashier.canMakeChange(change))
+        {
+            this.metrics.rejectedCoins.increment();
+            return false;
+        }
+
+        return this.cashier.addPendingCoin(session.pendingCoins, coin);
+    }
+
+    // Checks whether coin is accepted by the machine
+    // param - String coin - coin value like "0.50"
+    // returns boolean - true if coin denomination is accepted
+    public boolean isAcceptedCoin(String coin){return this.cashier.getCoinIndex(coin) >= 0;}
+
+    // Checks whether reserved items have to be paid with exact amount. Warns customers right after selection
+    // when paying with the biggest coins would leave change the coin stock can not give
+    // param - Session session - customer session with reserved items
+    // returns boolean - true if exact amount is needed
+    public boolean needsExactChange(Session session)
+    {
+        long coinValue = this.cashier.getCoinValue(0); // biggest coin
+        long change = (coinValue - this.getDueAmount(session) % coinValue) % coinValue;
+        if(this.cashier.canMakeChange(change)){return false;}
+
+        this.metrics.exactChangeWarnings.increment();
+        return true;
+    }
+
+    // Gets sum of coins inserted in the session
+    // param - Session session - customer session
+    // returns long - sum of inserted coins in pennies
+    public long getInsertedAmount(Session session){return this.cashier.getPendingCoinsSum(session.pendingCoins);}
+
+    // Gets amount that still has to be inserted to buy reserved items
+    // param - Session session - customer session with reserved items
+    // returns long - remaining amount in pennies, 0 or less if enough coins have been inserted
+    public long getRemainingAmount(Session session)
+    {
+        long start = System.nanoTime();
+        long remaining = this.getDueAmount(session) - this.getInsertedAmount(session);
+        this.metrics.remainingAmount.recordSince(start);
+        return remaining;
+    }
+
+    // Buys all reserved items at once. Takes inserted coins and gives change computed for the whole cart
+    // param - Session session - customer session with reserved items
+    // returns int[] - amount of change coins by denomination index, owned by the session and overwritten by its next
+    //                 purchase. Null if nothing is reserved, not enough coins have been inserted or it is impossible
+    //                 to give correct change, session is left untouched then and can be paid further or refunded
+    public int[] commit(Session session)
+    {
+        if(session.cartSize == 0){return null;}
+
+        long start = System.nanoTime();
+        long sequence = 0; // journal record of the purchase
+        int itemCount = session.cartSize;
+        SaleEvent event; // purchase published to sales listeners
+
+        this.stockLock.readLock().lock();
+        try
+        {
+            long change = this.getInsertedAmount(session) - this.getDueAmount(session); // gets expected change
+            if(change < 0){return null;} // underpaid, nothing is taken
+
+            // Sales stop once purchases can not be journaled
+            if(this.journal != null && this.journal.isFailed())
+            {
+                this.out.println("ERROR: Stock journal can not be written. Purchases are stopped");
+                return null;
+            }
+
+            // Reserves change coins so that concurrent purchases can not give them away
+            long changeStart = System.nanoTime();
+            boolean reserved = this.cashier.reserveChange(change, session.changeCoins);
+            this.metrics.change.recordSince(changeStart);
+
+            if(!reserved)
+            {
+                this.metrics.changeFailures.increment();
+                return null;
+            }
+
+            // Journals the purchase while holding the stock lock so records are in the same order as stock changes
+            if(this.journal != null)
+            {
+                sequence = session.cartSize == 1
+                        ? this.journal.logPurchase(this.catalog.getName(session.cartIds[0]), session.pendingCoins,
+                                                   session.changeCoins)
+                        : this.journal.logCart(this.catalog, session.cartIds, session.cartSize, session.pendingCoins,
+                                               session.changeCoins);
+            }
+
+            event = session.saleEvent;
+            event.fill(SaleEvent.SALE, this.catalog, session.cartIds, session.cartPrices, session.cartSize);
+            System.arraycopy(session.pendingCoins, 0, event.coinsIn, 0, event.coinsIn.length);
+            System.arraycopy(session.changeCoins, 0, event.coinsOut, 0, event.coinsOut.length);
+
+            this.cashier.takePendingCoins(session.pendingCoins); // Puts inserted coins into cashier coin stock
+            this.cashier.commitChange(session.changeCoins); // Gives reserved change to the user
+
+            // reserved items are sold, nothing to put back
+            for(int i = 0; i < session.cartSize; i++)
+            {
+                this.catalog.sell(session.cartIds[i]);
+                if(this.checkpointer != null)
+                {
+                    this.checkpointer.itemChanged(this.catalog, session.cartIds[i]);
+                }
+            }
+
+            session.clearCart();
+            this.stockVersion.incrementAndGet(); // coins have changed
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+        }
+
+        // Waits for the purchase to reach disk together with other purchases made meanwhile
+        if(this.journal != null && !this.journal.awaitDurable(sequence))
+        {
+            this.out.println("ERROR: Purchase could not be journaled. Purchases are stopped");
+        }
+
+        this.metrics.purchases.increment();
+        this.metrics.itemsSold.add(itemCount);
+        this.publishSale(event);
+        this.metrics.commit.recordSince(start);
+        return session.changeCoins;
+    }
+
+    // Cancels session trade. Puts reserved items back into stock and returns inserted coins
+    // param - Session session - customer session
+    // returns int[] - amount of refunded coins by denomination index, owned by the session and overwritten by its
+    //                 next refund
+    public int[] refund(Session session)
+    {
+        String name;
+        boolean released = session.cartSize > 0;
+        SaleEvent event = session.saleEvent; // refund published to sales listeners
+
+        this.stockLock.readLock().lock();
+        try
+        {
+            name = session.cartSize == 0 ? "" : this.catalog.getName(session.cartIds[0]);
+            event.fill(SaleEvent.REFUND, this.catalog, session.cartIds, session.cartPrices, session.cartSize);
+            this.releaseItems(session);
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+        }
+
+        // Refunds do not change stock, record is written with the next batch without waiting for it
+        boolean refunded = this.cashier.getRefund(session.pendingCoins, session.refundedCoins) > 0;
+        if(refunded && this.journal != null)
+        {
+            this.journal.logRefund(name, session.refundedCoins);
+        }
+
+        if(released || refunded)
+        {
+            this.metrics.refunds.increment();
+            System.arraycopy(session.refundedCoins, 0, event.coinsIn, 0, event.coinsIn.length);
+            System.arraycopy(session.refundedCoins, 0, event.coinsOut, 0, event.coinsOut.length);
+            this.publishSale(event);
+        }
+
+        return session.refundedCoins;
+    }
+
+    // Buys items selected in console session and prints change
+    // returns boolean - true if items have been bought
+    // returns boolean - false if impossible to give correct change
+    public boolean buyItem()
+    {
+        StringBuilder names = new StringBuilder();
+        this.stockLock.readLock().lock();
+        try
+        {
+            for(int i = 0; i < this.consoleSession.cartSize; i++)
+            {
+                names.append(i == 0 ? "" : ", ").append(this.catalog.getName(this.consoleSession.cartIds[i]));
+            }
+        }
+        finally
+        {
+            this.stockLock.readLock().unlock();
+        }
+
+        this.out.printf("Your expected change:\t%s\n", Money.display(-this.getRemainingAmount(this.consoleSession)));
+
+        int[] changeCoins = this.commit(this.consoleSession); // gets amount of coins by denomination
+
+        // if it is null that means impossible to give correct change.
+        if(changeCoins == null){return false;}
+
+        if(this.cashier.getPendingCoinsSum(changeCoins) > 0)
+        {
+            this.out.println("Your coins:");
+            this.printCoins(changeCoins);
+        }
+
+        this.out.println("Please take your " + names + " and your change");
+        return true;
     }
 
-    // refunds inserted coins
+    // refunds coins inserted in console session
     public void refund()
     {
-        ArrayList<String> refundedCoins = this.cashier.getRefund(); // gets list of coins that has been inserted
+        int[] refundedCoins = this.refund(this.consoleSession); // gets coins that has been inserted
 
-        if(refundedCoins.size() == 0){return;} // if no coins have been entered return
+        if(this.cashier.getPendingCoinsSum(refundedCoins) == 0){return;} // if no coins have been entered return
 
-        System.out.println("Coins refunded:");
+        this.out.println("Coins refunded:");
+        this.printCoins(refundedCoins); // prints entered coins
+    }
 
-        // prints list of entered coins
-        for(String coin : refundedCoins)
+    // prints every coin
+    // param - int[] coins - amount of coins by denomination index
+    private void printCoins(int[] coins)
+    {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < coins.length; i++)
         {
-            System.out.print(coin + ' ');
+            for(int j = 0; j < coins[i]; j++)
+            {
+                text.append(this.cashier.getCoinName(i)).append(' ');
+            }
         }
 
-        System.out.println();
+        this.out.println(text.toString());
     }
 
-    // Inserts coin into cashier
+    // Inserts coin into console session
     // param - String coin - coin to be inserted
     public void insertCoin(String coin)
     {
         // if invalid coin has been entered let user know
-        if(!cashier.addPendingCoin(coin))
+        if(this.insertCoin(this.consoleSession, coin)){return;}
+
+        if(!this.isAcceptedCoin(coin))
         {
-            System.out.println("Invalid coin entered");
+            this.out.println("Invalid coin entered");
+            return;
         }
+
+        this.out.println("Unable to give change for this coin, please insert smaller coins");
     }
 
     // fresh restock of items and coins
     // param - string filePath - stock location
-    public void restock(String filePath){this.stockController.restock(filePath);}
+    public void restock(String filePath)
+    {
+        long start = System.nanoTime();
+        long sequence;
+        this.stockLock.writeLock().lock();
+        try
+        {
+            this.stockController.restock(filePath);
+            sequence = this.logStock(Journal.RESTOCK);
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
+
+        this.awaitJournal(sequence);
+        this.metrics.restock.recordSince(start);
+    }
+
+    // Updates items and coins to match stock file without emptying the machine. File is read before stock is
+    // locked and only changed items are updated, so customers keep their reservations and item IDs stay the same.
+    // Items missing from the file are left without stock
+    // param - string filePath - stock location
+    public void reloadStock(String filePath)
+    {
+        // stock file written by this machine already matches its stock
+        File file = new File(filePath);
+        if(file.getAbsolutePath().equals(this.savedStockPath) && file.lastModified() == this.savedStockModified)
+        {
+            return;
+        }
+
+        long start = System.nanoTime();
+        ArrayList<Item> fileItems = new ArrayList<>();
+        int[] fileCoins = new int[this.cashier.getCoinCount()];
+        if(!this.stockController.readStockFile(filePath, fileItems, fileCoins)){return;}
+
+        ArrayList<Integer> changedIds = new ArrayList<>();
+        ArrayList<Integer> changedCoins = new ArrayList<>();
+        long sequence = 0;
+        this.stockLock.writeLock().lock();
+        try
+        {
+            int itemCount = this.catalog.size();
+            if(this.stockController.reconcile(fileItems, fileCoins, changedIds, changedCoins) > 0)
+            {
+                sequence = this.logReload(changedIds, changedCoins, this.catalog.size() > itemCount);
+            }
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
+
+        this.awaitJournal(sequence);
+        this.metrics.restock.recordSince(start);
+    }
 
     // adds stock to the current items and coins
     // param - string filePath - location from where you add stock
-    public void addStock(String filePath){this.stockController.addStock(filePath);}
+    // returns boolean - true if the whole file has been added
+    public boolean addStock(String filePath)
+    {
+        long start = System.nanoTime();
+        boolean added;
+        long sequence = 0;
+        this.stockLock.writeLock().lock();
+        try
+        {
+            added = this.stockController.addStock(filePath);
+            if(added)
+            {
+                sequence = this.logStock(Journal.ADDSTOCK);
+            }
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
 
-    // saves current item and coin stock
+        this.awaitJournal(sequence);
+        this.metrics.addStock.recordSince(start);
+        return added;
+    }
+
+    // loads items and coins from binary stock file
+    // param - string filePath - binary stock location
+    public void loadSnapshot(String filePath)
+    {
+        long sequence;
+        this.stockLock.writeLock().lock();
+        try
+        {
+            this.stockController.loadSnapshot(filePath);
+            sequence = this.logStock(Journal.RESTOCK);
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
+
+        this.awaitJournal(sequence);
+    }
+
+    // saves current item and coin stock into xml file. Journal is emptied as saved stock includes all its records,
+    // unless checkpoints are on. Binary stock file is the one loaded on start then and the journal is kept for it
     // param - string filePath - location where stock should be saved
-    public void saveStock(String filePath){this.stockController.saveStock(filePath);}
+    public void saveStock(String filePath)
+    {
+        long start = System.nanoTime();
+        this.stockLock.writeLock().lock();
+        try
+        {
+            if(this.journal != null)
+            {
+                this.stockController.setJournalSequence(this.journal.getLastSequence());
+            }
+
+            if(!this.stockController.saveStock(filePath)){return;}
+
+            File file = new File(filePath);
+            this.savedStockPath = file.getAbsolutePath();
+            this.savedStockModified = file.lastModified();
+
+            if(this.journal != null && this.checkpointer == null)
+            {
+                this.journal.reset();
+            }
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+            this.metrics.saveStock.recordSince(start);
+        }
+    }
+
+    // Replays stock changes journaled since the stock was last saved and journals all further changes.
+    // Called after the saved stock has been loaded
+    // param - string filePath - journal location
+    public void openJournal(String filePath)
+    {
+        this.stockLock.writeLock().lock();
+        try
+        {
+            this.journal = Journal.open(filePath, this.stockController);
+            this.stockChanged(); // replayed journal records have changed stock
+            this.pricing = this.pricingRules.compile(this.catalog);
+            this.searchIndex.update(this.catalog);
+        }
+        catch(IOException e)
+        {
+            this.out.println("ERROR: Unable to open stock journal. Please check " + filePath);
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
+    }
+
+    // Tracks changed stock for checkpoints without scheduling them. Checkpoints are run by the caller
+    // param - string filePath - binary stock location
+    public void enableCheckpoints(String filePath)
+    {
+        long[] coinValues = new long[this.cashier.getCoinCount()];
+        for(int i = 0; i < coinValues.length; i++)
+        {
+            coinValues[i] = this.cashier.getCoinValue(i);
+        }
 
-    // selects and item that user wants to buy
+        this.checkpointer = new Checkpointer(filePath, coinValues);
+    }
+
+    // Starts saving changed stock into binary stock file in the background. Called after the journal has been opened
+    // param - string filePath - binary stock location
+    // param - long periodMillis - time between checkpoints in milliseconds
+    public void startCheckpoints(String filePath, long periodMillis)
+    {
+        this.enableCheckpoints(filePath);
+        this.checkpointScheduler = Executors.newSingleThreadScheduledExecutor(task ->
+        {
+            Thread thread = new Thread(task, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointScheduler.scheduleWithFixedDelay(this::checkpoint, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Saves items and coins changed since the last checkpoint into binary stock file. Stock is copied and the journal
+    // cut under the write lock, the file is written and the journal rotated after it is released, so customers wait
+    // only for the copy. Journal records included in the checkpoint are deleted once it is on disk
+    public void checkpoint()
+    {
+        if(this.checkpointer == null){return;}
+
+        synchronized(this.checkpointer)
+        {
+            long start = System.nanoTime();
+            long cut = -1;
+            this.stockLock.writeLock().lock();
+            try
+            {
+                long sequence = this.journal == null ? this.stockController.getJournalSequence()
+                                                     : this.journal.getLastSequence();
+                this.checkpointer.capture(this.catalog, this.cashier.getCoinStock(), sequence);
+
+                // records up to the checkpoint are moved into old journal file by the writer thread, which is kept
+                // until written. Later records go into the new file
+                if(this.journal != null)
+                {
+                    cut = this.journal.rotate();
+                }
+            }
+            finally
+            {
+                this.stockLock.writeLock().unlock();
+            }
+
+            boolean written = this.checkpointer.write();
+            if(cut >= 0 && !this.journal.awaitRotated()){written = false;}
+
+            // old file left by a checkpoint that was not written is covered by this one as well
+            if(written && this.journal != null)
+            {
+                this.journal.deleteOld();
+            }
+
+            this.metrics.checkpoint.recordSince(start);
+        }
+    }
+
+    // Shares item stock with other machines through a stockroom. Units are leased in batches and sold from local
+    // stock, sold units are reported and unused ones given back on periodic exchanges, so customers never wait for
+    // the stockroom. Stock files still set items, prices and coins. Called after the journal has been opened
+    // param - InventoryService service - stockroom
+    // param - String nodeName - name of this machine at the stockroom, the same after every start
+    // param - int leaseBatch - units of an item leased at once
+    // param - long periodMillis - time between exchanges in milliseconds
+    public void shareStock(InventoryService service, String nodeName, int leaseBatch, long periodMillis)
+    {
+        this.stockLock.writeLock().lock();
+        try
+        {
+            this.stockController.shareStock(service, nodeName, leaseBatch);
+        }
+        finally
+        {
+            this.stockLock.writeLock().unlock();
+        }
+
+        this.exchangeLeases();
+        this.leaseScheduler = Executors.newSingleThreadScheduledExecutor(task ->
+        {
+            Thread thread = new Thread(task, "lease-exchange");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.leaseScheduler.scheduleWithFixedDelay(this::exchangeLeases, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Reports units sold since the last exchange, gives back unused units and leases more
+    // returns boolean - true if the stockroom has settled the exchange
+    public boolean exchangeLeases(){return this.exchangeLeases(false);}
+
+    // Stops exchanges and gives back all units not reserved by customers. Called before the machine powers off
+    // returns boolean - true if the stockroom has taken the units back
+    public boolean returnLeases()
+    {
+        if(this.leaseScheduler != null)
+        {
+            this.leaseScheduler.shutdown();
+        }
+
+        return this.exchangeLeases(true);
+    }
+
+    // Exchanges leases with the stockroom. Stock is locked only to work out and apply the exchange, the stockroom is
+    // called in between while customers keep buying
+    // param - boolean returnAll - true to give back every unit not reserved by a customer and lease nothing
+    // returns boolean - true if the stockroom has settled the exchange
+    private boolean exchangeLeases(boolean returnAll)
+    {
+        synchronized(this.leaseLock)
+        {
+            InventoryService service = this.stockController.getInventoryService();
+            if(service == null){return false;}
+
+            String nodeName = this.stockController.getNodeName();
+            try
+            {
+                // leases are read after start and after a failed exchange
+                if(this.stockController.needsLeases())
+                {
+                    String[] names;
+                    this.stockLock.readLock().lock();
+                    try
+                    {
+                        names = this.stockController.getItemNames();
+                    }
+                    finally
+                    {
+                        this.stockLock.readLock().unlock();
+                    }
+
+                    int[] leased = service.getLeased(nodeName, names);
+                    long sequence;
+                    this.stockLock.writeLock().lock();
+                    try
+                    {
+                        sequence = this.logLeases(this.stockController.useLeases(names, leased));
+                    }
+                    finally
+                    {
+                        this.stockLock.writeLock().unlock();
+                    }
+
+                    this.awaitJournal(sequence);
+                }
+
+                StockController.LeaseExchange exchange;
+                long takenSequence = 0;
+                this.stockLock.writeLock().lock();
+                try
+                {
+                    exchange = this.stockController.prepareLeaseExchange(returnAll);
+                    if(exchange != null)
+                    {
+                        takenSequence = this.logLeases(exchange.taken); // returned units have left stock
+                    }
+                }
+                finally
+                {
+                    this.stockLock.writeLock().unlock();
+                }
+
+                if(exchange == null){return true;}
+
+                // units given back are durable before the stockroom hears of them
+                this.awaitJournal(takenSequence);
+
+                int[] granted = null;
+                long grantedSequence = 0;
+                try
+                {
+                    granted = service.exchange(nodeName, exchange.items, exchange.sold, exchange.returned,
+                            exchange.wanted);
+                }
+                finally
+                {
+                    this.stockLock.writeLock().lock();
+                    try
+                    {
+                        grantedSequence = this.logLeases(this.stockController.finishLeaseExchange(exchange, granted));
+                    }
+                    finally
+                    {
+                        this.stockLock.writeLock().unlock();
+                    }
+
+                    this.awaitJournal(grantedSequence);
+                }
+
+                return true;
+            }
+            catch(IOException e)
+            {
+                this.out.println("ERROR: Unable to reach stockroom, items are sold from stock already leased");
+                return false;
+            }
+        }
+    }
+
+    // Journals stock changed by leases. Only changed items are journaled, leases add no items and change no prices,
+    // so pricing and search index are kept. Caller holds the write lock and waits for the record after releasing it
+    // param - StockController.StockChanges changes - units added to stock by item
+    // returns long - journal record sequence, 0 if nothing was journaled
+    private long logLeases(StockController.StockChanges changes)
+    {
+        if(changes.ids.isEmpty()){return 0;}
+
+        for(int i = 0; i < changes.ids.size(); i++)
+        {
+            this.itemUnits.add(changes.deltas.get(i)); // nothing reserves or releases items under the write lock
+            if(this.checkpointer != null)
+            {
+                this.checkpointer.itemChanged(this.catalog, changes.ids.get(i));
+            }
+        }
+
+        this.stockVersion.incrementAndGet();
+        if(this.journal == null){return 0;}
+
+        return this.journal.logLeases(this.catalog, changes);
+    }
+
+    // Waits for stock changes journaled under the write lock to reach disk, called after the lock is released so
+    // customers do not wait for the disk. Purchases stop by themselves if the journal has failed
+    // param - long sequence - journal record sequence, 0 if nothing was journaled
+    private void awaitJournal(long sequence)
+    {
+        if(sequence > 0)
+        {
+            this.journal.awaitDurable(sequence);
+        }
+    }
+
+    // Journals items and coins changed by a stock file reload. Pricing and search index depend only on item names,
+    // so they are updated only if items were added. Caller holds the write lock and waits for the record after
+    // releasing it
+    // param - ArrayList<Integer> changedIds - IDs of changed items
+    // param - ArrayList<Integer> changedCoins - denomination indexes of changed coins
+    // param - boolean itemsAdded - true if the reload added items to the catalog
+    // returns long - journal record sequence, 0 if there is no journal
+    private long logReload(ArrayList<Integer> changedIds, ArrayList<Integer> changedCoins, boolean itemsAdded)
+    {
+        this.stockChanged();
+        if(itemsAdded)
+        {
+            this.pricing = this.pricingRules.compile(this.catalog); // rules of new items apply now
+            this.searchIndex.update(this.catalog);
+        }
+
+        if(this.checkpointer != null)
+        {
+            for(int id : changedIds)
+            {
+                this.checkpointer.itemChanged(this.catalog, id);
+            }
+        }
+
+        if(this.journal == null){return 0;}
+
+        return this.journal.logReload(this.catalog, changedIds, this.cashier.getCoinStock(), changedCoins);
+    }
+
+    // Journals whole stock after it has been replaced. Pricing is compiled again and new items are indexed for
+    // search. Caller holds the write lock and waits for the record after releasing it
+    // param - byte type - journal record type
+    // returns long - journal record sequence, 0 if there is no journal
+    private long logStock(byte type)
+    {
+        this.stockChanged();
+        this.pricing = this.pricingRules.compile(this.catalog); // rules of new items apply now
+        this.searchIndex.update(this.catalog);
+
+        if(this.checkpointer != null)
+        {
+            this.checkpointer.stockReplaced();
+        }
+
+        if(this.journal == null){return 0;}
+
+        return this.journal.logStock(type, this.catalog, this.cashier.getCoinStock());
+    }
+
+    // selects and item that user wants to buy in console session
+    // param - int id - ID of a selected item
+    // returns boolean - true if item has been found and is in stock
+    public boolean selectItem(int id){return this.selectItem(id, false);}
+
+    // adds an item to the console session cart, items in cart are bought together
     // param - int id - ID of a selected item
     // returns boolean - true if item has been found and is in stock
-    public boolean selectItem(int id)
+    public boolean addToCart(int id){return this.selectItem(id, true);}
+
+    // selects an item in console session
+    // param - int id - ID of a selected item
+    // param - boolean add - true to add item to the cart, false to replace the cart with it
+    // returns boolean - true if item has been found and is in stock
+    private boolean selectItem(int id, boolean add)
     {
-        // Checks whether item with given id exists
-        if(items.size() > id && id >= 0)
+        this.stockLock.readLock().lock();
+        try
         {
+            // Checks whether item with given id exists
+            if(this.catalog.size() <= id || id < 0)
+            {
+                this.out.printf("Item with ID - %d not found\n", id);
+                return false;
+            }
+
             this.printItem(id);
 
-            // Checks whether item is in stock
-            if (!items.get(id).isAvailable())
+            // Reserves item for pending trade if it is in stock
+            if (add ? !this.addToCart(this.consoleSession, id) : !this.selectItem(this.consoleSession, id))
             {
-                System.out.println("Out of stock, please choose different item");
+                this.out.println("Out of stock, please choose different item");
                 return false;
             }
 
-            // Selects that item for pending trade
-            Item tempItem = this.items.get(id);
-            this.pendingItem = new Item(tempItem.name, tempItem.price, tempItem.stock);
+            if(this.needsExactChange(this.consoleSession))
+            {
+                this.out.println("Exact change only, machine is low on coins for change");
+            }
+
             return true;
         }
-
-        System.out.printf("Item with ID - %d not found\n", id);
-        return false;
+        finally
+        {
+            this.stockLock.readLock().unlock();
+        }
     }
 
 
-    // Checks cashier whether correct amount of coins has been entered for pending trade item
+    // Checks cashier whether correct amount of coins has been entered for console session item
     // returns boolean - true if enough coins has been entered to buy the item
     public boolean checkRemainingAmount()
     {
-        double pendingCoinSum = this.cashier.getPendingCoinsSum(); // gets sum of already inserted coins
-        double remainingAmount =  this.pendingItem.price  - pendingCoinSum;
+        long pendingCoinSum = this.getInsertedAmount(this.consoleSession); // gets sum of already inserted coins
+        long remainingAmount = this.getRemainingAmount(this.consoleSession);
 
         if(remainingAmount > 0)
         {
-            System.out.printf("Total coins inserted %.2f£\t remaining %.2f£\n", pendingCoinSum, remainingAmount);
+            this.out.printf("Total coins inserted %s\t remaining %s\n", Money.display(pendingCoinSum),
+                    Money.display(remainingAmount));
             return false;
         }
 
-        System.out.printf("Correct amount of coins inserted.\n");
+        this.out.printf("Correct amount of coins inserted.\n");
         return true;
     }
 
-    // Gets needed change after buy an item
-    // return boolean - true if enough coins are in stock to give correct change
-    // return boolean - false if impossible to give correct change
-    public boolean getChange()
-    {
-        // using  BigDecimals here to make subtract operations are more precise
-        BigDecimal pendingCoinsSum = new BigDecimal(this.cashier.getPendingCoinsSum()); // gets the inserted coin su,
-        BigDecimal change = pendingCoinsSum.subtract(new BigDecimal(this.pendingItem.price)); // gets expected change
-        change.setScale(2, BigDecimal.ROUND_DOWN);
+    // Sends purchase or refund to all sales listeners through the sales dispatcher. Called without holding the stock
+    // lock
+    // param - SaleEvent event - purchase or refund, reused by the session afterwards
+    private void publishSale(SaleEvent event){this.salesDispatcher.publish(event);}
 
-        System.out.printf("Your expected change:\t%.2f£\n", change);
+    // Counts item units in stock again and makes readers take a new snapshot. Caller holds the write lock
+    private void stockChanged()
+    {
+        long units = 0;
+        for(int id = 0; id < this.catalog.size(); id++)
+        {
+            units += this.catalog.getStock(id);
+        }
 
-        // if no change is needed to give back, return
-        if(change.compareTo(new BigDecimal(0)) == 0){return true;}
+        this.itemUnits.reset(); // nothing reserves or releases items under the write lock
+        this.itemUnits.add(units);
+        this.stockVersion.incrementAndGet();
+    }
 
-        ArrayList<String> changeList = cashier.getChange(change); // gets coin denomination list
+    // Puts items reserved by the session back into stock. Caller has to hold the stock lock
+    // param - Session session - customer session
+    private void releaseItems(Session session)
+    {
+        if(session.cartSize == 0){return;}
 
-        // if list is null that means impossible to give correct change.
-        if(changeList != null)
+        for(int i = 0; i < session.cartSize; i++)
         {
-            System.out.println("Your coins:");
-
-            for(String coin : changeList)
-            {
-                System.out.print(coin + " ");
-            }
-
-            System.out.println();
-            return true;
+            this.catalog.release(session.cartIds[i]);
         }
 
-        return false;
+        this.itemUnits.add(session.cartSize);
+        session.clearCart();
+        this.stockVersion.incrementAndGet();
     }
 
     // prints selected item
     // param - int id - ID of a selected item
     private void printItem(int id)
     {
-        Item item = items.get(id);
-        System.out.printf("Selected Item - ID: %d\t%s\tprice: %.2f£\tcurrently in stock: %d units\n", id, item.name,
-                item.price,
-                item.stock);
+        long price = this.pricing.price(id, this.catalog.getPrice(id), System.nanoTime()); // price with promotions
+        this.out.printf("Selected Item - ID: %d\t%s\tprice: %s\tcurrently in stock: %d units\n", id,
+                this.catalog.getName(id), Money.display(price), this.catalog.getStock(id));
     }
 }
@@ -1,6 +1,11 @@
 package main;
 
+        import java.io.File;
+        import java.io.IOException;
+        import java.net.InetAddress;
+        import java.net.UnknownHostException;
         import java.lang.String;
+        import java.util.Arrays;
         import java.util.Scanner;
 
 public class Main
@@ -9,28 +14,222 @@ public class Main
 
     // Default paths for stock or add stock
     private static final String defaultStockFilePath = "stock.xml";
+    private static final String defaultSnapshotFilePath = "stock.bin"; // binary copy of stock loaded on start
     private static final String defaultAddStockFilePath = "addStock.xml";
+    private static final String defaultJournalFilePath = "stock.journal"; // changes since stock was last saved
+    private static final String defaultSalesLogPath = "sales"; // directory of daily sales log files
+    private static final long checkpointPeriodMillis = 60 * 1000; // time between background stock saves
+    private static final String defaultCurrencyFilePath = "currencies.xml"; // coin denominations of currencies
+    private static final String defaultPricingFilePath = "pricing.xml"; // promotions and bundles, optional
+    private static final int listedItemLimit = 100; // bigger catalogs are searched by name instead of listed
+    private static final int foundItemLimit = 20; // most items printed by find
+    private static final int leaseBatch = 20; // units of an item leased from a shared stockroom at once
+    private static final long leasePeriodMillis = 10 * 1000; // time between lease exchanges with the stockroom
 
-    private static Machine machine = new Machine(); //instance of the wending machine
+    private static OutputSink out = new AsyncOutputSink(System.out, 4096); // console output written in background
+    private static Machine machine; //instance of the wending machine, created once currency is chosen
+    private static CommandServer server; // serves kiosks, null unless started with --port
     private static Scanner input = new Scanner(System.in); // user input scanner
 
+    // Param - String[] args - "--port <port>" also serves commands to kiosks over TCP,
+    //                         "--admin" lets kiosks restock, add stock, save and exit,
+    //                         "--watch" applies changes of stock files while running,
+    //                         "--currency <code>" works in currency from currencies.xml instead of GBP,
+    //                         "--columnar" keeps items in columns for catalogs of millions of items,
+    //                         "--stockroom <host:port>" leases item stock from InventoryServer shared by machines,
+    //                         "--node <name>" names this machine at the stockroom, host name by default
     public static void main(String[] args)
     {
-        System.out.println(machineName);
+        String currency = option(args, "--currency");
+        if(currency != null && !useCurrency(currency)){return;}
 
-        // Check current stock
-        machine.restock(defaultStockFilePath);
-        machine.printAllItems();
+        machine = Arrays.asList(args).contains("--columnar") ? new Machine(new ColumnarCatalog()) : new Machine();
+        machine.setOutput(out);
+        out.println(machineName);
+
+        // Check current stock and sales made since it was saved. Binary stock is faster to load if there is one
+        if(new File(defaultSnapshotFilePath).exists())
+        {
+            machine.loadSnapshot(defaultSnapshotFilePath);
+        }
+        else
+        {
+            machine.restock(defaultStockFilePath);
+        }
+
+        machine.openJournal(defaultJournalFilePath);
+        usePricing();
+        String stockroom = option(args, "--stockroom");
+        if(stockroom != null && !shareStock(stockroom, option(args, "--node"))){return;}
+        machine.startCheckpoints(defaultSnapshotFilePath, checkpointPeriodMillis);
+        machine.getMetrics().register(machineName);
+        openSalesLog();
+        printItems();
         printHelp();
 
-        // Loops waiting for user input and executes commands
+        String port = option(args, "--port");
+        boolean admin = Arrays.asList(args).contains("--admin");
+        boolean serving = port != null && startServer(Integer.parseInt(port), admin);
+        if(Arrays.asList(args).contains("--watch"))
+        {
+            startWatcher();
+        }
+
+        // Loops waiting for user input and executes commands. Without console input only kiosks are served
         while(true)
         {
-            System.out.println("Please enter a command or type help for the list of available commands");
+            if(!input.hasNext())
+            {
+                if(!serving)
+                {
+                    out.flush();
+                    System.exit(0);
+                }
+
+                waitForever();
+            }
+
+            out.println("Please enter a command or type help for the list of available commands");
             executeCommand();
         }
     }
 
+    // Gets value of command line option
+    // param - String[] args - command line arguments
+    // param - String name - option name like "--port"
+    // returns String - argument after the option name or null if option is not given
+    private static String option(String[] args, String name)
+    {
+        int index = Arrays.asList(args).indexOf(name);
+        return index >= 0 && index + 1 < args.length ? args[index + 1] : null;
+    }
+
+    // Chooses currency of the machine
+    // param - String code - currency code like "EUR"
+    // returns boolean - true if currency has been found
+    static boolean useCurrency(String code)
+    {
+        CurrencyProfile profile = CurrencyProfile.load(defaultCurrencyFilePath, code);
+        if(profile == null)
+        {
+            System.out.println("ERROR: Currency " + code + " not found. Please check " + defaultCurrencyFilePath);
+            return false;
+        }
+
+        Money.setCurrency(profile);
+        return true;
+    }
+
+    // Prices items with promotions and bundles of the pricing file if there is one
+    private static void usePricing()
+    {
+        if(!new File(defaultPricingFilePath).exists()){return;}
+
+        PricingRules rules = PricingRules.load(defaultPricingFilePath);
+        if(rules != null)
+        {
+            machine.setPricingRules(rules);
+        }
+    }
+
+    // Writes every purchase and refund into daily sales log files
+    private static void openSalesLog()
+    {
+        try
+        {
+            SalesLog salesLog = new SalesLog(defaultSalesLogPath);
+            machine.addSalesListener(salesLog);
+
+            // sales still queued are written out when the machine is powered off
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            {
+                machine.flushSales();
+                salesLog.flush();
+            }));
+        }
+        catch(IOException e)
+        {
+            out.println("ERROR: Unable to open sales log. Please check " + defaultSalesLogPath);
+        }
+    }
+
+    // Leases item stock from stockroom shared with other machines
+    // param - String address - stockroom address like "stockroom:7070"
+    // param - String node - name of this machine at the stockroom, null for the host name
+    // returns boolean - true if the address is valid
+    private static boolean shareStock(String address, String node)
+    {
+        int colon = address.lastIndexOf(':');
+        try
+        {
+            int port = Integer.parseInt(address.substring(colon + 1));
+            if(node == null)
+            {
+                node = InetAddress.getLocalHost().getHostName();
+            }
+
+            machine.shareStock(new RemoteInventoryService(address.substring(0, colon), port), node, leaseBatch,
+                    leasePeriodMillis);
+            out.println("Leasing stock from " + address + " as " + node);
+            return true;
+        }
+        catch(NumberFormatException | StringIndexOutOfBoundsException | UnknownHostException e)
+        {
+            out.println("ERROR: Invalid stockroom " + address + ", expected host:port and --node <name>");
+            return false;
+        }
+    }
+
+    // Starts serving commands to kiosks
+    // param - int port - TCP port
+    // param - boolean admin - true lets kiosks run admin commands
+    // returns boolean - true if server has been started
+    private static boolean startServer(int port, boolean admin)
+    {
+        try
+        {
+            server = new CommandServer(machine, port, defaultStockFilePath, defaultAddStockFilePath, admin);
+            server.start();
+            out.println("Serving kiosks on port " + server.getPort());
+            return true;
+        }
+        catch(IOException e)
+        {
+            out.println("ERROR: Unable to serve kiosks on port " + port);
+            return false;
+        }
+    }
+
+    // Applies stock file changes to the machine as soon as files are written
+    private static void startWatcher()
+    {
+        try
+        {
+            new StockWatcher(machine, defaultStockFilePath, defaultAddStockFilePath).start();
+            out.println("Watching " + defaultStockFilePath + " and " + defaultAddStockFilePath);
+        }
+        catch(IOException e)
+        {
+            out.println("ERROR: Unable to watch stock files");
+        }
+    }
+
+    // Keeps the machine running for kiosks until it is powered off by the exit command
+    private static void waitForever()
+    {
+        while(true)
+        {
+            try
+            {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            catch(InterruptedException e)
+            {
+                // keeps waiting
+            }
+        }
+    }
+
     // Executes user commands
     private static void executeCommand()
     {
@@ -46,25 +245,56 @@ public class Main
             case "select":
                 selectItem();
                 break;
+            case "find":
+                findItems();
+                break;
+            case "cart":
+                fillCart();
+                break;
             case "status":
                 machine.printStatus();
                 break;
             case "restock":
-                machine.restock(defaultStockFilePath);
-                System.out.println("Restock completed");
+                machine.reloadStock(defaultStockFilePath);
+                out.println("Restock completed");
                 machine.printStatus();
                 break;
             case "addstock":
                 machine.addStock(defaultAddStockFilePath);
-                System.out.println("Stock updated");
+                out.println("Stock updated");
                 machine.printStatus();
                 break;
-            case "exit":
+            case "sales":
+                for(String line : machine.getSales().report(machine))
+                {
+                    out.println(line);
+                }
+                break;
+            case "metrics":
+                for(String line : machine.getMetrics().report())
+                {
+                    out.println(line);
+                }
+                break;
+            case "save":
                 machine.saveStock(defaultStockFilePath);
-                System.out.println("Exiting");
+                break;
+            case "exit":
+                // refunds customers of the console and kiosks, gives unsold units back to the stockroom and writes
+                // stock changed since the last background save into binary stock file loaded on start
+                machine.refund();
+                if(server != null)
+                {
+                    server.stop();
+                }
+
+                machine.returnLeases();
+                machine.checkpoint();
+                out.println("Exiting");
+                out.flush();
                 System.exit(0);
             default:
-                System.out.println("Invalid command entered");
+                out.println("Invalid command entered");
                 break;
         }
     }
@@ -72,29 +302,106 @@ public class Main
     // Handles item selection and buying
     private static void selectItem()
     {
-        machine.printAllItems();
-        System.out.println("Enter ID of the chosen item");
+        printItems();
+        out.println("Enter ID or name of the chosen item");
+
+        // Selects item or exits if item is out of stock or not found
+        int id = chooseItem(input.next());
+        if(id < 0 || !machine.selectItem(id)){return;}
+
+        payItems();
+    }
+
+    // Prints items found by the rest of the command line, or by the next line if nothing follows the command
+    private static void findItems()
+    {
+        String query = input.nextLine().trim();
+        if(query.isEmpty())
+        {
+            out.println("Enter whole or part of the item name");
+            query = input.nextLine().trim();
+        }
+
+        machine.printFoundItems(query, foundItemLimit);
+    }
+
+    // Prints all items, or how to find them if there are too many to list
+    private static void printItems()
+    {
+        if(machine.getItemCount() <= listedItemLimit)
+        {
+            machine.printAllItems();
+            return;
+        }
 
-        int id;
+        out.println(machine.getItemCount() + " items in stock, type find and part of the item name to look them up");
+    }
 
-        // gets item ID
+    // Gets item chosen by ID or by name. Name has to match one item only, otherwise items found are printed
+    // param - String text - item ID or whole or part of the item name
+    // returns int - item ID or -1 if no single item has been chosen
+    private static int chooseItem(String text)
+    {
         try
         {
-            id = input.nextInt();
+            return Integer.parseInt(text);
         }
-        catch(Exception e)
+        catch(NumberFormatException e)
+        {
+            int[] ids = machine.findItems(text, 2);
+            if(ids.length == 1){return ids[0];}
+
+            // Prints items the customer can choose from by ID
+            machine.printFoundItems(text, foundItemLimit);
+            out.println("Error: Choose the item by ID");
+            return -1;
+        }
+    }
+
+    // Handles selection of several items bought together
+    private static void fillCart()
+    {
+        printItems();
+        out.println("Enter IDs or names of the chosen items, then type pay or refund");
+
+        boolean empty = true;
+        while(true)
         {
-            // Prints error if invalid id (not int) has been entered.
-            System.out.println("Error: Invalid ID");
-            input.next();
+            String command = input.next();
+
+            if(command.equals("refund"))
+            {
+                machine.refund();
+                return;
+            }
+
+            if(command.equals("pay"))
+            {
+                break;
+            }
+
+            // Adds item to the cart. Items out of stock or not found are skipped
+            int id = chooseItem(command);
+            if(id >= 0)
+            {
+                empty &= !machine.addToCart(id);
+            }
+        }
+
+        if(empty)
+        {
+            out.println("Cart is empty");
             return;
         }
 
-        // Selects item or exits if item is out of stock or not found
-        if(!machine.selectItem(id)){return;}
+        payItems();
+    }
 
-        System.out.println("Please enter the correct amount of coins or type refund.\n" +
-                "Only 1p 2p 5p 10p 20p 50p 1 2 coin format is accepted");
+    // Takes coins for selected items and buys them
+    private static void payItems()
+    {
+        out.println("Please enter the correct amount of coins or type refund.\n" +
+                "Only " + coinList() + " coin format is accepted");
 
         // Loops until correct coins amount have been entered or refund has been entered
         while(true)
@@ -113,34 +420,49 @@ public class Main
             // Checks whether correct amount has been entered
             if(machine.checkRemainingAmount())
             {
-                // If impossible to give correct change refunds money and returns
-                if(!machine.getChange())
+                // Buys item. If impossible to give correct change refunds money and returns
+                if(!machine.buyItem())
                 {
-                    System.out.println("Unable to provide correct change." +
+                    out.println("Unable to provide correct change." +
                             "Please try again and insert exact amount of coins.");
                     machine.refund();
-                    return;
                 }
 
-                // Buys item
-                machine.buyItem(id);
                 return;
             }
         }
     }
 
+    // Lists accepted coins, smallest coin first
+    // returns String - coin names separated by spaces
+    private static String coinList()
+    {
+        StringBuilder coins = new StringBuilder();
+        for(int i = machine.getCoinCount() - 1; i >= 0; i--)
+        {
+            coins.append(machine.getCoinName(i)).append(i == 0 ? "" : " ");
+        }
+
+        return coins.toString();
+    }
+
     // Prints help
     private static void printHelp() {
-        System.out.println("//////////////////////////////////////////////////////////////////////////////////////");
-        System.out.println("List of available commands:");
-        System.out.println("help         - prints the list of available commands");
-        System.out.println("view         - prints all items in this " + machineName);
-        System.out.println("select       - selects an item you want to buy");
-        System.out.println("status       - prints all items and cashier contents");
-        System.out.println("restock      - restock the current coins and items and update prices");
-        System.out.println("addstock      - add stock to the current coins and items and update prices");
-        System.out.println("exit         - power off the machine and save current coins and items");
-        System.out.println("//////////////////////////////////////////////////////////////////////////////////////");
+        out.println("//////////////////////////////////////////////////////////////////////////////////////");
+        out.println("List of available commands:");
+        out.println("help         - prints the list of available commands");
+        out.println("view         - prints all items in this " + machineName);
+        out.println("select       - selects an item you want to buy");
+        out.println("find         - finds items by whole or part of the name, like find cola");
+        out.println("cart         - selects several items you want to buy with one payment");
+        out.println("status       - prints all items and cashier contents");
+        out.println("restock      - restock the current coins and items and update prices");
+        out.println("addstock      - add stock to the current coins and items and update prices");
+        out.println("sales        - prints sales of the last minute, hour and day");
+        out.println("metrics      - prints operation times, sales and refund counters");
+        out.println("save         - save current coins and items into " + defaultStockFilePath);
+        out.println("exit         - power off the machine and save current coins and items");
+        out.println("//////////////////////////////////////////////////////////////////////////////////////");
     }
 
 }
\ No newline at end of file
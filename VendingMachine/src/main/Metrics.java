@@ -0,0 +1,113 @@
+package main;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Operation times, counters and stock gauges of a machine. Counters are striped so concurrent customers do not
+// contend on them. Everything is readable through JMX under domain "main" and as text with report
+public class Metrics implements MetricsMBean
+{
+    // Operation times
+    public final LatencyHistogram selectItem = new LatencyHistogram("selectItem");
+    public final LatencyHistogram findItems = new LatencyHistogram("findItems");
+    public final LatencyHistogram remainingAmount = new LatencyHistogram("remainingAmount");
+    public final LatencyHistogram change = new LatencyHistogram("change");
+    public final LatencyHistogram commit = new LatencyHistogram("commit");
+    public final LatencyHistogram restock = new LatencyHistogram("restock");
+    public final LatencyHistogram addStock = new LatencyHistogram("addStock");
+    public final LatencyHistogram saveStock = new LatencyHistogram("saveStock");
+    public final LatencyHistogram checkpoint = new LatencyHistogram("checkpoint");
+
+    // Counters
+    public final LongAdder purchases = new LongAdder();
+    public final LongAdder itemsSold = new LongAdder();
+    public final LongAdder changeFailures = new LongAdder();
+    public final LongAdder refunds = new LongAdder();
+    public final LongAdder invalidCoins = new LongAdder();
+    public final LongAdder rejectedCoins = new LongAdder(); // coins the machine could not give change for
+    public final LongAdder exactChangeWarnings = new LongAdder();
+
+    private final Machine machine; // machine read by gauges
+
+    // Metrics constructor
+    // Param - Machine machine - machine read by gauges
+    Metrics(Machine machine){this.machine = machine;}
+
+    public long getPurchases(){return this.purchases.sum();}
+
+    public long getItemsSold(){return this.itemsSold.sum();}
+
+    public long getChangeFailures(){return this.changeFailures.sum();}
+
+    public long getRefunds(){return this.refunds.sum();}
+
+    public long getInvalidCoins(){return this.invalidCoins.sum();}
+
+    public long getRejectedCoins(){return this.rejectedCoins.sum();}
+
+    public long getExactChangeWarnings(){return this.exactChangeWarnings.sum();}
+
+    public long getItemUnitsInStock(){return this.machine.getItemUnitsInStock();}
+
+    public long getCashInPennies(){return this.machine.getCashSum();}
+
+    // Gets all operation times
+    // Returns - LatencyHistogram[] - histograms
+    public LatencyHistogram[] getHistograms()
+    {
+        return new LatencyHistogram[]{this.selectItem, this.findItems, this.remainingAmount, this.change, this.commit,
+                                      this.restock, this.addStock, this.saveStock, this.checkpoint};
+    }
+
+    // Registers metrics and histograms with the platform MBean server
+    // Param - String machineName - name distinguishing this machine from others in the same process
+    public void register(String machineName)
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName("main:type=Metrics,machine=" + ObjectName.quote(machineName)));
+
+            for (LatencyHistogram histogram : this.getHistograms())
+            {
+                server.registerMBean(histogram, new ObjectName("main:type=Latency,machine="
+                        + ObjectName.quote(machineName) + ",name=" + histogram.getName()));
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Unable to register metrics of " + machineName);
+        }
+    }
+
+    // Formats metrics as text, one metric per line
+    // Returns - ArrayList<String> - report lines
+    public ArrayList<String> report()
+    {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("purchases " + this.getPurchases());
+        lines.add("itemsSold " + this.getItemsSold());
+        lines.add("changeFailures " + this.getChangeFailures());
+        lines.add("refunds " + this.getRefunds());
+        lines.add("invalidCoins " + this.getInvalidCoins());
+        lines.add("rejectedCoins " + this.getRejectedCoins());
+        lines.add("exactChangeWarnings " + this.getExactChangeWarnings());
+        lines.add("itemUnitsInStock " + this.getItemUnitsInStock());
+        lines.add("cash " + Money.format(this.getCashInPennies()));
+
+        for (LatencyHistogram histogram : this.getHistograms())
+        {
+            lines.add(String.format(Locale.ROOT,
+                    "%s count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                    histogram.getName(), histogram.getCount(), histogram.getMeanMicros(), histogram.getP50Micros(),
+                    histogram.getP90Micros(), histogram.getP99Micros(), histogram.getP999Micros(),
+                    histogram.getMaxMicros()));
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,15 @@
+package main;
+
+// Management interface of machine counters and gauges
+public interface MetricsMBean
+{
+    long getPurchases();
+    long getItemsSold();
+    long getChangeFailures();
+    long getRefunds();
+    long getInvalidCoins();
+    long getRejectedCoins();
+    long getExactChangeWarnings();
+    long getItemUnitsInStock();
+    long getCashInPennies();
+}
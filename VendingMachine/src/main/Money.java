@@ -0,0 +1,33 @@
+package main;
+
+// Helper for money amounts. All amounts inside the machine are whole minor units, like pennies, kept in a long.
+// Amounts are written with the decimals of the currency the machine works in, chosen once on start
+public final class Money
+{
+    private static volatile CurrencyProfile currency = CurrencyProfile.GBP; // currency of all machines in process
+
+    private Money(){}
+
+    // Gets currency amounts are parsed and formatted in
+    // Returns - CurrencyProfile - current currency
+    public static CurrencyProfile getCurrency(){return currency;}
+
+    // Sets currency of all machines created afterwards. Called on start before stock is loaded
+    // Param - CurrencyProfile profile - currency
+    public static void setCurrency(CurrencyProfile profile){currency = profile;}
+
+    // Parses amount written like "2.59", "2.5" or "2" into minor units
+    // Param - String amount - amount with at most as many decimals as the currency has
+    // Returns - long - amount in minor units
+    public static long parse(String amount){return currency.parse(amount);}
+
+    // Formats minor units as amount with the decimals of the currency
+    // Param - long pennies - amount in minor units
+    // Returns - String - amount like "2.59"
+    public static String format(long pennies){return currency.format(pennies);}
+
+    // Formats minor units as amount followed by the currency symbol
+    // Param - long pennies - amount in minor units
+    // Returns - String - amount like "2.59£"
+    public static String display(long pennies){return currency.format(pennies) + currency.getSymbol();}
+}
@@ -0,0 +1,21 @@
+package main;
+
+// Destination of text printed by the machine
+public interface OutputSink
+{
+    // Prints text
+    // Param - String text - text to print
+    void print(String text);
+
+    // Prints text followed by a new line
+    // Param - String text - text to print
+    default void println(String text){this.print(text + "\n");}
+
+    // Prints formatted text
+    // Param - String format - format string
+    // Param - Object... args - format arguments
+    default void printf(String format, Object... args){this.print(String.format(format, args));}
+
+    // Waits until everything printed so far has been written
+    void flush();
+}
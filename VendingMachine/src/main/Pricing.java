@@ -0,0 +1,324 @@
+package main;
+
+import java.util.BitSet;
+import java.util.TimeZone;
+
+// Pricing rules compiled against one catalog. Item names are resolved to IDs and rules are laid out in arrays by
+// item ID, so pricing an item reads only the few rules of that item and of every item, and a bundle is looked for
+// only among bundles of the item just added to the cart. Compiled again whenever items are added or replaced.
+// Rules never change once compiled, one Pricing is shared by all customer sessions
+public final class Pricing
+{
+    private final int itemCount; // amount of items the rules were compiled for
+    private final TimeZone zone; // time zone of promotion hours
+    private final boolean timed; // true if some promotion applies only part of the day
+    private volatile int minute; // minute of the day when the rules were last evaluated
+    private volatile long minuteEnd = System.nanoTime(); // System.nanoTime when that minute ends
+
+    // Promotions of single items, grouped by item ID, followed by promotions of every item
+    private final int[] itemRules; // first promotion of each item by ID and the end, null if no item has one
+    private final int everyItemRules; // first promotion of every item
+    private final int[] from; // first minute of the day each promotion applies
+    private final int[] to; // minute of the day each promotion ends
+    private final long[] fixedPrices; // fixed price of each promotion in pennies, -1 if percent is taken off
+    private final int[] percents; // percent each promotion takes off
+
+    // Bundles grouped by item ID, and items of each bundle
+    private final int[] itemBundles; // first bundle entry of each item by ID and the end, null if no bundles
+    private final int[] bundlesOfItems; // bundle indexes grouped by item ID
+    private final int[] bundleStarts; // first item of each bundle in bundleItemIds and the end
+    private final int[] bundleItemIds; // item IDs of each bundle
+    private final long[] bundlePrices; // price of each whole bundle in pennies
+
+    // Pricing constructor. Caller keeps catalog from changing meanwhile
+    // Param - PricingRules rules - rules to compile, rules of items missing from the catalog are left out
+    // Param - Catalog catalog - items in stock
+    // Param - TimeZone zone - time zone of promotion hours
+    Pricing(PricingRules rules, Catalog catalog, TimeZone zone)
+    {
+        this.itemCount = catalog.size();
+        this.zone = zone;
+
+        // promotions of items in stock, -1 for every item
+        int promotionCount = rules.promotionItems.size();
+        int[] ids = new int[promotionCount];
+        int[] counts = new int[this.itemCount + 1];
+        int everyItemCount = 0;
+        boolean timed = false;
+        for (int i = 0; i < promotionCount; i++)
+        {
+            String name = rules.promotionItems.get(i);
+            ids[i] = name == null ? -1 : catalog.find(name);
+            if (name == null)
+            {
+                everyItemCount++;
+            }
+            else if (ids[i] >= 0)
+            {
+                counts[ids[i]]++;
+            }
+
+            int[] times = rules.promotionTimes.get(i);
+            timed |= (name == null || ids[i] >= 0) && !(times[0] == 0 && times[1] == 1440);
+        }
+
+        this.timed = timed;
+        this.itemRules = everyItemCount == promotionCount ? null : starts(counts);
+        this.everyItemRules = this.itemRules == null ? 0 : this.itemRules[this.itemCount];
+
+        int ruleCount = this.everyItemRules + everyItemCount;
+        this.from = new int[ruleCount];
+        this.to = new int[ruleCount];
+        this.fixedPrices = new long[ruleCount];
+        this.percents = new int[ruleCount];
+
+        int[] next = this.itemRules == null ? null : this.itemRules.clone();
+        int nextEveryItem = this.everyItemRules;
+        for (int i = 0; i < promotionCount; i++)
+        {
+            if (ids[i] < 0 && rules.promotionItems.get(i) != null)
+            {
+                continue;
+            }
+
+            int rule = ids[i] < 0 ? nextEveryItem++ : next[ids[i]]++;
+            this.from[rule] = rules.promotionTimes.get(i)[0];
+            this.to[rule] = rules.promotionTimes.get(i)[1];
+            this.fixedPrices[rule] = rules.promotionPrices.get(i)[0];
+            this.percents[rule] = (int) rules.promotionPrices.get(i)[1];
+        }
+
+        // bundles with every item in stock
+        int bundleCount = 0;
+        int bundleItemCount = 0;
+        int[] bundleIds = new int[rules.bundleItems.size()];
+        for (int b = 0; b < bundleIds.length; b++)
+        {
+            bundleIds[b] = -1;
+            boolean complete = true;
+            for (String name : rules.bundleItems.get(b))
+            {
+                complete &= catalog.find(name) >= 0;
+            }
+
+            if (complete)
+            {
+                bundleIds[b] = bundleCount++;
+                bundleItemCount += rules.bundleItems.get(b).length;
+            }
+        }
+
+        this.bundleStarts = new int[bundleCount + 1];
+        this.bundleItemIds = new int[bundleItemCount];
+        this.bundlePrices = new long[bundleCount];
+        int[] bundleCounts = new int[this.itemCount + 1];
+        for (int b = 0; b < bundleIds.length; b++)
+        {
+            if (bundleIds[b] < 0)
+            {
+                continue;
+            }
+
+            int bundle = bundleIds[b];
+            int start = this.bundleStarts[bundle];
+            String[] names = rules.bundleItems.get(b);
+            for (int i = 0; i < names.length; i++)
+            {
+                this.bundleItemIds[start + i] = catalog.find(names[i]);
+                // bundle is looked for once per item even if the item is listed twice
+                if (this.indexOf(this.bundleItemIds[start + i], start, start + i) < 0)
+                {
+                    bundleCounts[this.bundleItemIds[start + i]]++;
+                }
+            }
+
+            this.bundleStarts[bundle + 1] = start + names.length;
+            this.bundlePrices[bundle] = rules.bundlePrices.get(b);
+        }
+
+        this.itemBundles = bundleCount == 0 ? null : starts(bundleCounts);
+        this.bundlesOfItems = new int[this.itemBundles == null ? 0 : this.itemBundles[this.itemCount]];
+        int[] nextBundle = this.itemBundles == null ? null : this.itemBundles.clone();
+        for (int bundle = 0; bundle < bundleCount; bundle++)
+        {
+            int start = this.bundleStarts[bundle];
+            for (int i = start; i < this.bundleStarts[bundle + 1]; i++)
+            {
+                if (this.indexOf(this.bundleItemIds[i], start, i) < 0)
+                {
+                    this.bundlesOfItems[nextBundle[this.bundleItemIds[i]]++] = bundle;
+                }
+            }
+        }
+    }
+
+    // Gets price of item with promotions applying at the time
+    // Param - int id - item ID
+    // Param - long price - item price in pennies without promotions
+    // Param - long now - System.nanoTime of the selection, callers measuring the selection already have it
+    // Returns - long - lowest promoted price, or the price if no promotion applies
+    public long price(int id, long price, long now)
+    {
+        int minute = this.timed ? this.minuteOfDay(now) : 0;
+        long lowest = price;
+        if (this.itemRules != null && id < this.itemCount)
+        {
+            lowest = this.apply(this.itemRules[id], this.itemRules[id + 1], price, lowest, minute);
+        }
+
+        return this.apply(this.everyItemRules, this.from.length, price, lowest, minute);
+    }
+
+    // Gets minute of the day deciding which promotions apply. Prices stay the same while it does not change
+    // Param - long now - System.nanoTime
+    // Returns - int - minute from 0 to 1439, always 0 if no promotion depends on the time
+    public int getMinute(long now){return this.timed ? this.minuteOfDay(now) : 0;}
+
+    // Prices the item last added to the session cart as part of a bundle. If the item completes a bundle with cart
+    // items not in another bundle, it costs what is left of the bundle price after the other items
+    // Param - Session session - customer session, its last cart item has just been added
+    void priceCart(Session session)
+    {
+        int last = session.cartSize - 1;
+        int id = session.cartIds[last];
+        if (this.itemBundles == null || id >= this.itemCount)
+        {
+            return;
+        }
+
+        for (int entry = this.itemBundles[id]; entry < this.itemBundles[id + 1]; entry++)
+        {
+            int bundle = this.bundlesOfItems[entry];
+            BitSet picked = session.picking; // cart positions of the bundle
+            picked.clear();
+            picked.set(last);
+            boolean complete = true;
+            boolean lastItemPicked = false;
+            long othersPrice = 0;
+
+            for (int i = this.bundleStarts[bundle]; i < this.bundleStarts[bundle + 1] && complete; i++)
+            {
+                int itemId = this.bundleItemIds[i];
+                if (itemId == id && !lastItemPicked)
+                {
+                    lastItemPicked = true;
+                    continue;
+                }
+
+                int position = this.findInCart(session, itemId, last);
+                complete = position >= 0;
+                if (complete)
+                {
+                    picked.set(position);
+                    othersPrice += session.cartPrices[position];
+                }
+            }
+
+            long price = Math.max(this.bundlePrices[bundle] - othersPrice, 0);
+            if (complete && price < session.cartPrices[last])
+            {
+                session.cartPrices[last] = price;
+                session.bundled.or(picked);
+                return;
+            }
+        }
+    }
+
+    // Finds cart position holding item and not in a bundle or picked for the bundle being looked for yet
+    // Param - Session session - customer session
+    // Param - int id - item ID
+    // Param - int end - first cart position not searched
+    // Returns - int - cart position or -1 if there is none
+    private int findInCart(Session session, int id, int end)
+    {
+        for (int position = 0; position < end; position++)
+        {
+            if (session.cartIds[position] == id && !session.bundled.get(position) && !session.picking.get(position))
+            {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    // Applies promotions to the price
+    // Param - int first - first promotion
+    // Param - int end - promotion after the last one
+    // Param - long price - price without promotions in pennies
+    // Param - long lowest - lowest price so far in pennies
+    // Param - int minute - minute of the day
+    // Returns - long - lowest price after the promotions
+    private long apply(int first, int end, long price, long lowest, int minute)
+    {
+        for (int rule = first; rule < end; rule++)
+        {
+            boolean active = this.from[rule] <= this.to[rule]
+                    ? minute >= this.from[rule] && minute < this.to[rule]
+                    : minute >= this.from[rule] || minute < this.to[rule];
+            if (!active)
+            {
+                continue;
+            }
+
+            long promoted = this.fixedPrices[rule] >= 0 ? this.fixedPrices[rule]
+                                                        : price - price * this.percents[rule] / 100;
+            lowest = Math.min(lowest, promoted);
+        }
+
+        return lowest;
+    }
+
+    // Gets minute of the day in the time zone of promotion hours. Wall clock and time zone are read once a minute,
+    // in between the minute is known from the monotonic time the caller already has
+    // Param - long now - System.nanoTime
+    // Returns - int - minute from 0 to 1439
+    private int minuteOfDay(long now)
+    {
+        if (now - this.minuteEnd < 0)
+        {
+            return this.minute;
+        }
+
+        long millis = System.currentTimeMillis();
+        long local = millis + this.zone.getOffset(millis);
+        int minute = (int) Math.floorMod(Math.floorDiv(local, 60000L), 1440L);
+
+        // minute is written first, a reader seeing the new end sees the new minute too
+        this.minute = minute;
+        this.minuteEnd = now + (60000 - Math.floorMod(local, 60000L)) * 1000000;
+        return minute;
+    }
+
+    // Finds item among bundle items
+    // Param - int id - item ID
+    // Param - int first - first bundle item searched
+    // Param - int end - first bundle item not searched
+    // Returns - int - position in bundleItemIds or -1
+    private int indexOf(int id, int first, int end)
+    {
+        for (int i = first; i < end; i++)
+        {
+            if (this.bundleItemIds[i] == id)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // Turns counts by item ID into first entries by item ID, with the end of all entries last
+    // Param - int[] counts - entries by item ID, one more slot than items
+    // Returns - int[] - first entry of each item and the end
+    private static int[] starts(int[] counts)
+    {
+        int[] starts = new int[counts.length];
+        for (int i = 1; i < counts.length; i++)
+        {
+            starts[i] = starts[i - 1] + counts[i - 1];
+        }
+
+        return starts;
+    }
+}
@@ -0,0 +1,151 @@
+package main;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+// Promotions and bundles as written in a pricing file. Rules refer to items by name and are compiled into Pricing
+// against the current catalog, so nothing is parsed or looked up by name while customers buy.
+// Pricing file looks like
+//   <pricing>
+//       <promotion item="Coke" percent="10"/>                      every Coke 10% off
+//       <promotion item="Sprite" price="1.50" from="16:00" to="18:00"/>
+//       <promotion percent="20" from="22:00" to="06:00"/>          every item 20% off at night
+//       <bundle price="4.00">                                       Coke and Sprite together for 4.00
+//           <item name="Coke"/>
+//           <item name="Sprite"/>
+//       </bundle>
+//   </pricing>
+// When several promotions apply the lowest price wins
+public final class PricingRules
+{
+    // Promotions by rule index
+    final ArrayList<String> promotionItems = new ArrayList<>(); // item names, null for every item
+    final ArrayList<int[]> promotionTimes = new ArrayList<>(); // from and to minute of the day
+    final ArrayList<long[]> promotionPrices = new ArrayList<>(); // fixed price in pennies or -1, and percent off
+
+    // Bundles by bundle index
+    final ArrayList<String[]> bundleItems = new ArrayList<>(); // item names, an item can be listed more than once
+    final ArrayList<Long> bundlePrices = new ArrayList<>(); // price of the whole bundle in pennies
+
+    // Adds promotion
+    // Param - String item - item name, null for every item
+    // Param - int from - first minute of the day the promotion applies
+    // Param - int to - minute of the day the promotion ends, before from if it runs over midnight
+    // Param - long price - fixed price in pennies, -1 if percent is taken off instead
+    // Param - int percent - percent taken off the price
+    public void addPromotion(String item, int from, int to, long price, int percent)
+    {
+        if (from < 0 || from > 1440 || to < 0 || to > 1440 || percent < 0 || percent > 100)
+        {
+            throw new IllegalArgumentException("Invalid promotion of " + item);
+        }
+
+        this.promotionItems.add(item);
+        this.promotionTimes.add(new int[]{from, to});
+        this.promotionPrices.add(new long[]{price, percent});
+    }
+
+    // Adds bundle
+    // Param - String[] items - item names bought together
+    // Param - long price - price of the whole bundle in pennies
+    public void addBundle(String[] items, long price)
+    {
+        if (items.length < 2)
+        {
+            throw new IllegalArgumentException("Bundle needs at least two items");
+        }
+
+        this.bundleItems.add(items);
+        this.bundlePrices.add(price);
+    }
+
+    // Compiles rules against the catalog. Caller keeps catalog from changing meanwhile
+    // Param - Catalog catalog - items in stock
+    // Returns - Pricing - evaluator of the rules for the items of the catalog
+    public Pricing compile(Catalog catalog){return new Pricing(this, catalog, TimeZone.getDefault());}
+
+    // Reads rules from pricing file
+    // Param - String filePath - pricing file location
+    // Returns - PricingRules - rules or null if the file is broken
+    public static PricingRules load(String filePath)
+    {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filePath)))
+        {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input, "UTF-8");
+            try
+            {
+                PricingRules rules = new PricingRules();
+                ArrayList<String> bundle = null; // items of the bundle being read
+                long bundlePrice = 0;
+                while (reader.hasNext())
+                {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("promotion"))
+                    {
+                        String price = reader.getAttributeValue(null, "price");
+                        String percent = reader.getAttributeValue(null, "percent");
+                        rules.addPromotion(reader.getAttributeValue(null, "item"),
+                                minute(reader.getAttributeValue(null, "from"), 0),
+                                minute(reader.getAttributeValue(null, "to"), 1440),
+                                price == null ? -1 : Money.parse(price),
+                                percent == null ? 0 : Integer.parseInt(percent));
+                    }
+                    else if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("bundle"))
+                    {
+                        bundle = new ArrayList<>();
+                        bundlePrice = Money.parse(reader.getAttributeValue(null, "price"));
+                    }
+                    else if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("item")
+                            && bundle != null)
+                    {
+                        bundle.add(reader.getAttributeValue(null, "name"));
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("bundle"))
+                    {
+                        rules.addBundle(bundle.toArray(new String[0]), bundlePrice);
+                        bundle = null;
+                    }
+                }
+
+                return rules;
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Pricing contaminated. Please check " + filePath);
+            return null;
+        }
+    }
+
+    // Parses time of the day written like "16:30"
+    // Param - String time - time or null
+    // Param - int missing - minute used when time is not given
+    // Returns - int - minute of the day
+    private static int minute(String time, int missing)
+    {
+        if (time == null)
+        {
+            return missing;
+        }
+
+        int colon = time.indexOf(':');
+        int hours = Integer.parseInt(colon < 0 ? time : time.substring(0, colon));
+        int minutes = colon < 0 ? 0 : Integer.parseInt(time.substring(colon + 1));
+        if (hours < 0 || hours > 24 || minutes < 0 || minutes > 59)
+        {
+            throw new IllegalArgumentException("Invalid time " + time);
+        }
+
+        return hours * 60 + minutes;
+    }
+}
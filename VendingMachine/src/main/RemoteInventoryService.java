@@ -0,0 +1,119 @@
+package main;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// Stockroom served by InventoryServer in another process. One connection is kept open and opened again after it
+// fails. Calls are never retried, an exchange that failed may still have been settled by the stockroom, so the
+// machine reads its leases again before the next exchange
+public class RemoteInventoryService implements InventoryService
+{
+    private static final int TIMEOUT_MILLIS = 5000; // longest wait for connecting and for a response
+
+    private final String host;
+    private final int port;
+    private Socket socket; // open connection, null after a failure, guarded by this
+    private BufferedReader reader;
+    private PrintWriter writer;
+
+    // Remote inventory service constructor. Connects on the first call
+    // Param - String host - stockroom host name
+    // Param - int port - stockroom TCP port
+    public RemoteInventoryService(String host, int port)
+    {
+        this.host = host;
+        this.port = port;
+    }
+
+    public synchronized int[] getLeased(String node, String[] items) throws IOException
+    {
+        StringBuilder request = new StringBuilder();
+        request.append("leased\t").append(node).append('\t').append(items.length).append('\n');
+        for (String item : items)
+        {
+            request.append(item).append('\n');
+        }
+
+        return this.call(request.toString(), items.length);
+    }
+
+    public synchronized int[] exchange(String node, String[] items, int[] sold, int[] returned, int[] wanted)
+            throws IOException
+    {
+        StringBuilder request = new StringBuilder();
+        request.append("exchange\t").append(node).append('\t').append(items.length).append('\n');
+        for (int i = 0; i < items.length; i++)
+        {
+            request.append(items[i]).append('\t').append(sold[i]).append('\t').append(returned[i]).append('\t')
+                   .append(wanted[i]).append('\n');
+        }
+
+        return this.call(request.toString(), items.length);
+    }
+
+    // Closes connection to the stockroom
+    public synchronized void close()
+    {
+        if (this.socket == null)
+        {
+            return;
+        }
+
+        try
+        {
+            this.socket.close();
+        }
+        catch (IOException e)
+        {
+            // connection is dropped either way
+        }
+
+        this.socket = null;
+    }
+
+    // Sends request and reads units by item from the response
+    // Param - String request - request and item lines
+    // Param - int itemCount - amount of items in the request
+    // Returns - int[] - units by item
+    private int[] call(String request, int itemCount) throws IOException
+    {
+        try
+        {
+            if (this.socket == null)
+            {
+                this.socket = new Socket();
+                this.socket.connect(new InetSocketAddress(this.host, this.port), TIMEOUT_MILLIS);
+                this.socket.setSoTimeout(TIMEOUT_MILLIS);
+                this.reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream(),
+                        StandardCharsets.UTF_8));
+                this.writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream(),
+                        StandardCharsets.UTF_8)));
+            }
+
+            this.writer.print(request);
+            this.writer.flush();
+
+            String status = this.reader.readLine();
+            if (status == null || !status.equals("OK " + itemCount))
+            {
+                throw new IOException("Stockroom responded " + status);
+            }
+
+            int[] units = new int[itemCount];
+            for (int i = 0; i < itemCount; i++)
+            {
+                units[i] = Integer.parseInt(this.reader.readLine());
+            }
+
+            return units;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // connection may be in the middle of a response, the next call starts a new one
+            this.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package main;
+
+// Sales totals of the last period of time. The period is split into buckets, events are added to the bucket of
+// their time and to the running total. Buckets that fall out of the period are taken away from the total, so
+// reading the total never goes through the events again
+public class RollingWindow
+{
+    private final String name; // window name like "last hour"
+    private final long bucketMillis; // time covered by one bucket
+    private final SalesSummary[] buckets;
+    private final long[] bucketStarts; // start time of each bucket, -1 if empty
+    private final SalesSummary total; // sum of all buckets
+
+    // Rolling window constructor
+    // Param - String name - window name
+    // Param - long bucketMillis - time covered by one bucket in milliseconds
+    // Param - int bucketCount - amount of buckets, window covers bucketMillis * bucketCount
+    // Param - int coinCount - amount of coin denominations
+    public RollingWindow(String name, long bucketMillis, int bucketCount, int coinCount)
+    {
+        this.name = name;
+        this.bucketMillis = bucketMillis;
+        this.buckets = new SalesSummary[bucketCount];
+        this.bucketStarts = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++)
+        {
+            this.buckets[i] = new SalesSummary(coinCount);
+            this.bucketStarts[i] = -1;
+        }
+
+        this.total = new SalesSummary(coinCount);
+    }
+
+    // Gets window name
+    // Returns - String - window name
+    public String getName(){return this.name;}
+
+    // Adds event to its bucket and to the total
+    // Param - SaleEvent event - purchase or refund
+    public synchronized void add(SaleEvent event)
+    {
+        long start = event.time - event.time % this.bucketMillis;
+        int index = (int) ((event.time / this.bucketMillis) % this.buckets.length);
+
+        if (this.bucketStarts[index] != start)
+        {
+            // events older than the bucket now in their place are outside the window
+            if (this.bucketStarts[index] > start)
+            {
+                return;
+            }
+
+            this.expire(index);
+            this.bucketStarts[index] = start;
+        }
+
+        this.buckets[index].add(event);
+        this.total.add(event);
+    }
+
+    // Gets totals of the window ending now
+    // Param - long now - epoch milliseconds
+    // Returns - SalesSummary - copy of the totals
+    public synchronized SalesSummary getTotal(long now)
+    {
+        long oldest = now - now % this.bucketMillis - (this.buckets.length - 1) * this.bucketMillis;
+        for (int i = 0; i < this.buckets.length; i++)
+        {
+            if (this.bucketStarts[i] >= 0 && this.bucketStarts[i] < oldest)
+            {
+                this.expire(i);
+            }
+        }
+
+        SalesSummary copy = new SalesSummary(this.total.coinsIn.length);
+        copy.merge(this.total, 1);
+        return copy;
+    }
+
+    // Takes bucket away from the total and empties it
+    // Param - int index - bucket index
+    private void expire(int index)
+    {
+        this.total.merge(this.buckets[index], -1);
+        this.buckets[index].clear();
+        this.bucketStarts[index] = -1;
+    }
+}
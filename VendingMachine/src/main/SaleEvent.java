@@ -0,0 +1,91 @@
+package main;
+
+// Purchase or refund published by the machine to sales listeners. Events published by the machine are reused by
+// the session for its next transaction
+public class SaleEvent
+{
+    public static final byte SALE = 1;
+    public static final byte REFUND = 2;
+
+    public byte type; // SALE or REFUND
+    public long time; // epoch milliseconds
+    public String[] items; // names of bought or released items
+    public long[] prices; // prices of the items in pennies
+    public final int[] coinsIn; // amount of coins inserted by denomination index
+    public final int[] coinsOut; // amount of coins given back as change or refund by denomination index
+
+    private static final String[] NO_ITEMS = new String[0];
+    private static final long[] NO_PRICES = new long[0];
+    private String[] itemBuffer = NO_ITEMS; // item arrays of the last cart, kept while refunds without items come
+    private long[] priceBuffer = NO_PRICES;
+
+    // Sale event constructor
+    // Param - byte type - SALE or REFUND
+    // Param - long time - epoch milliseconds
+    // Param - String[] items - names of bought or released items
+    // Param - long[] prices - prices of the items in pennies
+    // Param - int[] coinsIn - amount of coins inserted by denomination index
+    // Param - int[] coinsOut - amount of coins given back by denomination index
+    public SaleEvent(byte type, long time, String[] items, long[] prices, int[] coinsIn, int[] coinsOut)
+    {
+        this.type = type;
+        this.time = time;
+        this.items = items;
+        this.prices = prices;
+        this.coinsIn = coinsIn;
+        this.coinsOut = coinsOut;
+    }
+
+    // Constructor of event reused by a session for all its transactions
+    // Param - int coinCount - amount of coin denominations
+    SaleEvent(int coinCount)
+    {
+        this(SALE, 0, NO_ITEMS, NO_PRICES, new int[coinCount], new int[coinCount]);
+    }
+
+    // Refills reused event with items of the cart. Item arrays are replaced only when the cart size changes
+    // Param - byte type - SALE or REFUND
+    // Param - Catalog catalog - items in stock
+    // Param - int[] cartIds - IDs of the items of the cart
+    // Param - long[] cartPrices - prices of the items of the cart in pennies
+    // Param - int cartSize - amount of items in the cart
+    void fill(byte type, Catalog catalog, int[] cartIds, long[] cartPrices, int cartSize)
+    {
+        if (cartSize > 0 && this.itemBuffer.length != cartSize)
+        {
+            this.itemBuffer = new String[cartSize];
+            this.priceBuffer = new long[cartSize];
+        }
+
+        this.items = cartSize == 0 ? NO_ITEMS : this.itemBuffer;
+        this.prices = cartSize == 0 ? NO_PRICES : this.priceBuffer;
+        this.type = type;
+        this.time = System.currentTimeMillis();
+        for (int i = 0; i < cartSize; i++)
+        {
+            this.items[i] = catalog.getName(cartIds[i]);
+            this.prices[i] = cartPrices[i];
+        }
+    }
+
+    // Refills reused event with a copy of another event. Item arrays are replaced only when the cart size changes
+    // Param - SaleEvent event - copied event with the same amount of coin denominations
+    void copy(SaleEvent event)
+    {
+        int cartSize = event.items.length;
+        if (cartSize > 0 && this.itemBuffer.length != cartSize)
+        {
+            this.itemBuffer = new String[cartSize];
+            this.priceBuffer = new long[cartSize];
+        }
+
+        this.items = cartSize == 0 ? NO_ITEMS : this.itemBuffer;
+        this.prices = cartSize == 0 ? NO_PRICES : this.priceBuffer;
+        this.type = event.type;
+        this.time = event.time;
+        System.arraycopy(event.items, 0, this.items, 0, cartSize);
+        System.arraycopy(event.prices, 0, this.prices, 0, cartSize);
+        System.arraycopy(event.coinsIn, 0, this.coinsIn, 0, this.coinsIn.length);
+        System.arraycopy(event.coinsOut, 0, this.coinsOut, 0, this.coinsOut.length);
+    }
+}
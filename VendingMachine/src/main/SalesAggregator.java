@@ -0,0 +1,51 @@
+package main;
+
+import java.util.ArrayList;
+
+// Keeps sales totals of the last minute, hour and day as they happen
+public class SalesAggregator implements SalesListener
+{
+    private final RollingWindow[] windows;
+
+    // Sales aggregator constructor
+    // Param - int coinCount - amount of coin denominations
+    public SalesAggregator(int coinCount)
+    {
+        this.windows = new RollingWindow[]
+        {
+            new RollingWindow("last minute", 1000, 60, coinCount),
+            new RollingWindow("last hour", 60 * 1000, 60, coinCount),
+            new RollingWindow("last day", 60 * 60 * 1000, 24, coinCount),
+        };
+    }
+
+    public void onSale(SaleEvent event)
+    {
+        for (RollingWindow window : this.windows)
+        {
+            window.add(event);
+        }
+    }
+
+    // Gets totals of a window ending now
+    // Param - int index - 0 for last minute, 1 for last hour, 2 for last day
+    // Returns - SalesSummary - totals
+    public SalesSummary getTotal(int index){return this.windows[index].getTotal(System.currentTimeMillis());}
+
+    // Formats totals of all windows as text
+    // Param - Machine machine - machine used for coin names
+    // Returns - ArrayList<String> - report lines
+    public ArrayList<String> report(Machine machine)
+    {
+        ArrayList<String> lines = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (RollingWindow window : this.windows)
+        {
+            ArrayList<String> windowLines = window.getTotal(now).report(machine.getCurrency(), 5);
+            windowLines.set(0, window.getName() + " - " + windowLines.get(0));
+            lines.addAll(windowLines);
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,150 @@
+package main;
+
+// Hands purchases and refunds to sales listeners on a background thread, so customer threads only copy the event
+// into a ring of reused events and never wait for listeners formatting, logging or adding up sales. Listeners get
+// events one at a time in the order they were published. Customers wait only when the ring is full
+public class SalesDispatcher
+{
+    private final SaleEvent[] ring; // events waiting for listeners, refilled by every turn of the ring
+    private volatile SalesListener[] listeners = new SalesListener[0];
+    private long published = 0; // amount of events copied into the ring so far, guarded by this
+    private long dispatched = 0; // amount of events handed to all listeners so far, guarded by this
+    private Thread dispatcher = null; // started by the first event, guarded by this
+
+    // Sales dispatcher constructor
+    // Param - int coinCount - amount of coin denominations
+    // Param - int capacity - amount of events buffered before customers wait
+    public SalesDispatcher(int coinCount, int capacity)
+    {
+        this.ring = new SaleEvent[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            this.ring[i] = new SaleEvent(coinCount);
+        }
+    }
+
+    // Adds listener receiving every event published afterwards
+    // Param - SalesListener listener - sales listener
+    public synchronized void addListener(SalesListener listener)
+    {
+        SalesListener[] bigger = new SalesListener[this.listeners.length + 1];
+        System.arraycopy(this.listeners, 0, bigger, 0, this.listeners.length);
+        bigger[this.listeners.length] = listener;
+        this.listeners = bigger;
+    }
+
+    // Copies event into the ring for the dispatcher thread. The event can be reused as soon as this returns
+    // Param - SaleEvent event - purchase or refund
+    public void publish(SaleEvent event)
+    {
+        if (this.listeners.length == 0)
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            boolean interrupted = false;
+            while (this.published - this.dispatched == this.ring.length)
+            {
+                try
+                {
+                    this.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+
+            this.ring[(int) (this.published % this.ring.length)].copy(event);
+            this.published++;
+            if (this.dispatcher == null)
+            {
+                this.dispatcher = new Thread(this::dispatchEvents, "sales-dispatcher");
+                this.dispatcher.setDaemon(true);
+                this.dispatcher.start();
+            }
+
+            this.notifyAll();
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Waits until all events published so far have been handed to the listeners
+    public synchronized void flush()
+    {
+        long target = this.published;
+        boolean interrupted = false;
+        while (this.dispatched < target)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Dispatcher thread loop. Takes all events published meanwhile and hands them to the listeners without holding
+    // the lock, the events are not refilled until they are marked dispatched
+    private void dispatchEvents()
+    {
+        while (true)
+        {
+            long first;
+            long last;
+            synchronized (this)
+            {
+                while (this.dispatched == this.published)
+                {
+                    try
+                    {
+                        this.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // nothing stops the dispatcher, it ends with the program
+                    }
+                }
+
+                first = this.dispatched;
+                last = this.published;
+            }
+
+            SalesListener[] listeners = this.listeners;
+            for (long i = first; i < last; i++)
+            {
+                SaleEvent event = this.ring[(int) (i % this.ring.length)];
+                for (SalesListener listener : listeners)
+                {
+                    try
+                    {
+                        listener.onSale(event);
+                    }
+                    catch (Exception e)
+                    {
+                        System.out.println("ERROR: Sales listener failed");
+                    }
+                }
+            }
+
+            synchronized (this)
+            {
+                this.dispatched = last;
+                this.notifyAll();
+            }
+        }
+    }
+}
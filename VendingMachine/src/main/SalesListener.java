@@ -0,0 +1,9 @@
+package main;
+
+// Receives purchases and refunds from the machine. Called on the sales dispatcher thread of the machine, one event at
+// a time. Events are reused by the dispatcher afterwards, listeners copy what they keep
+public interface SalesListener
+{
+    // Param - SaleEvent event - purchase or refund
+    void onSale(SaleEvent event);
+}
@@ -0,0 +1,276 @@
+package main;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+// Writes sale events into one text file per day in the background and answers queries over the files.
+// Only the file of the latest day is kept open, events arriving late for an earlier day are appended to the file of
+// their day right away. Queries read only the files of the asked days and read them in parallel.
+//
+// File name - sales-<yyyy-mm-dd>.log. Line - time, type, item names, prices, coins in, coins out separated by tabs,
+// lists are separated by commas and item names are URL encoded
+public class SalesLog implements SalesListener
+{
+    private static final String PREFIX = "sales-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory; // directory of the log files
+    private final ZoneId zone = ZoneId.systemDefault(); // time zone deciding where days start
+
+    private LocalDate day; // day of the open file, the latest day seen, guarded by this
+    private PrintStream file; // open file, guarded by this
+    private AsyncOutputSink sink; // writes into the open file in the background, guarded by this
+
+    // Sales log constructor
+    // Param - String directory - directory of the log files, created if missing
+    public SalesLog(String directory) throws IOException
+    {
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+    }
+
+    public void onSale(SaleEvent event)
+    {
+        String line = format(event);
+        LocalDate eventDay = Instant.ofEpochMilli(event.time).atZone(this.zone).toLocalDate();
+
+        synchronized (this)
+        {
+            try
+            {
+                if (this.day != null && eventDay.isBefore(this.day))
+                {
+                    this.appendLate(eventDay, line);
+                    return;
+                }
+
+                if (!eventDay.equals(this.day))
+                {
+                    this.open(eventDay);
+                }
+            }
+            catch (IOException e)
+            {
+                System.out.println("ERROR: Unable to open sales log in " + this.directory);
+                return;
+            }
+
+            this.sink.print(line);
+        }
+    }
+
+    // Waits until all events so far have been written
+    public synchronized void flush()
+    {
+        if (this.sink != null)
+        {
+            this.sink.flush();
+        }
+    }
+
+    // Sums events between two times from log files. Files of other days are not read
+    // Param - String directory - directory of the log files
+    // Param - long from - epoch milliseconds, included
+    // Param - long to - epoch milliseconds, excluded
+    // Param - int coinCount - amount of coin denominations
+    // Returns - SalesSummary - totals
+    public static SalesSummary query(String directory, long from, long to, int coinCount) throws IOException
+    {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate first = Instant.ofEpochMilli(from).atZone(zone).toLocalDate();
+        LocalDate last = Instant.ofEpochMilli(to - 1).atZone(zone).toLocalDate();
+
+        ArrayList<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(Paths.get(directory)))
+        {
+            list.forEach(path ->
+            {
+                LocalDate day = dayOf(path);
+                if (day != null && !day.isBefore(first) && !day.isAfter(last))
+                {
+                    files.add(path);
+                }
+            });
+        }
+
+        return files.parallelStream()
+                .map(path -> summarise(path, from, to, coinCount))
+                .reduce(new SalesSummary(coinCount), (a, b) ->
+                {
+                    SalesSummary sum = new SalesSummary(coinCount);
+                    sum.merge(a, 1);
+                    sum.merge(b, 1);
+                    return sum;
+                });
+    }
+
+    // Opens log file of a day, file of the previous day is written out and closed with its writer thread
+    // Param - LocalDate day - day of events
+    private void open(LocalDate day) throws IOException
+    {
+        if (this.sink != null)
+        {
+            this.sink.close();
+            this.file.close();
+        }
+
+        this.file = new PrintStream(new FileOutputStream(this.directory.resolve(PREFIX + day + SUFFIX).toFile(),
+                true), false, StandardCharsets.UTF_8);
+        this.sink = new AsyncOutputSink(this.file, 4096);
+        this.day = day;
+    }
+
+    // Appends event of an earlier day to the file of its day. Such events are rare, the file is opened just for them
+    // Param - LocalDate day - day of the event
+    // Param - String line - log line
+    private void appendLate(LocalDate day, String line) throws IOException
+    {
+        try (Writer writer = Files.newBufferedWriter(this.directory.resolve(PREFIX + day + SUFFIX),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+        {
+            writer.write(line);
+        }
+    }
+
+    // Sums events between two times from one log file
+    // Param - Path path - log file
+    // Param - long from - epoch milliseconds, included
+    // Param - long to - epoch milliseconds, excluded
+    // Param - int coinCount - amount of coin denominations
+    // Returns - SalesSummary - totals of the file
+    private static SalesSummary summarise(Path path, long from, long to, int coinCount)
+    {
+        SalesSummary summary = new SalesSummary(coinCount);
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                SaleEvent event = parse(line);
+                if (event == null || event.time < from || event.time >= to)
+                {
+                    continue;
+                }
+
+                // coins of a log written in another currency can not be added up
+                if (event.coinsIn.length != coinCount || event.coinsOut.length != coinCount)
+                {
+                    throw new IllegalArgumentException(path + " has " + event.coinsIn.length
+                            + " coin denominations, the currency has " + coinCount);
+                }
+
+                summary.add(event);
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to read sales log " + path);
+        }
+
+        return summary;
+    }
+
+    // Gets day of a log file from its name
+    // Param - Path path - log file
+    // Returns - LocalDate - day or null if it is not a log file
+    private static LocalDate dayOf(Path path)
+    {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+        {
+            return null;
+        }
+
+        try
+        {
+            return LocalDate.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    // Formats event as a log line
+    // Param - SaleEvent event - purchase or refund
+    // Returns - String - log line
+    private static String format(SaleEvent event)
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(event.time).append('\t').append(event.type).append('\t');
+        for (int i = 0; i < event.items.length; i++)
+        {
+            line.append(i == 0 ? "" : ",").append(URLEncoder.encode(event.items[i], StandardCharsets.UTF_8));
+        }
+
+        line.append('\t');
+        for (int i = 0; i < event.prices.length; i++)
+        {
+            line.append(i == 0 ? "" : ",").append(event.prices[i]);
+        }
+
+        appendCoins(line.append('\t'), event.coinsIn);
+        appendCoins(line.append('\t'), event.coinsOut);
+        return line.append('\n').toString();
+    }
+
+    // Appends coin counts separated by commas
+    // Param - StringBuilder line - log line
+    // Param - int[] coins - amount of coins by denomination index
+    private static void appendCoins(StringBuilder line, int[] coins)
+    {
+        for (int i = 0; i < coins.length; i++)
+        {
+            line.append(i == 0 ? "" : ",").append(coins[i]);
+        }
+    }
+
+    // Parses log line
+    // Param - String line - log line
+    // Returns - SaleEvent - event or null if line is broken
+    private static SaleEvent parse(String line)
+    {
+        try
+        {
+            String[] fields = line.split("\t", -1);
+            String[] items = fields[2].isEmpty() ? new String[0] : fields[2].split(",");
+            long[] prices = new long[items.length];
+            String[] priceFields = fields[3].split(",");
+            for (int i = 0; i < items.length; i++)
+            {
+                items[i] = URLDecoder.decode(items[i], StandardCharsets.UTF_8);
+                prices[i] = Long.parseLong(priceFields[i]);
+            }
+
+            return new SaleEvent(Byte.parseByte(fields[1]), Long.parseLong(fields[0]), items, prices,
+                    parseCoins(fields[4]), parseCoins(fields[5]));
+        }
+        catch (Exception e)
+        {
+            return null; // line cut by a crash
+        }
+    }
+
+    // Parses coin counts separated by commas
+    // Param - String field - coin counts
+    // Returns - int[] - amount of coins by denomination index
+    private static int[] parseCoins(String field)
+    {
+        String[] counts = field.split(",");
+        int[] coins = new int[counts.length];
+        for (int i = 0; i < counts.length; i++)
+        {
+            coins[i] = Integer.parseInt(counts[i]);
+        }
+
+        return coins;
+    }
+}
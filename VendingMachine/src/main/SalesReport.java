@@ -0,0 +1,40 @@
+package main;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Prints sales totals from sales log files
+// Usage - SalesReport <log directory> <first day yyyy-mm-dd> <last day yyyy-mm-dd> [--currency <code>]
+//         logs of machines started with --currency are read in the same currency, GBP by default
+public class SalesReport
+{
+    public static void main(String[] args)
+    {
+        if (args.length != 3 && !(args.length == 5 && args[3].equals("--currency")))
+        {
+            System.out.println("Usage: SalesReport <log directory> <first day yyyy-mm-dd> <last day yyyy-mm-dd> "
+                    + "[--currency <code>]");
+            return;
+        }
+
+        if (args.length == 5 && !Main.useCurrency(args[4])){return;}
+
+        try
+        {
+            ZoneId zone = ZoneId.systemDefault();
+            long from = LocalDate.parse(args[1]).atStartOfDay(zone).toInstant().toEpochMilli();
+            long to = LocalDate.parse(args[2]).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+            CurrencyProfile currency = Money.getCurrency();
+            SalesSummary summary = SalesLog.query(args[0], from, to, currency.getCoinCount());
+            for (String line : summary.report(currency, 20))
+            {
+                System.out.println(line);
+            }
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Unable to read sales logs. " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package main;
+
+import java.util.*;
+
+// Totals of sale events. Summaries of separate periods or files can be merged
+public class SalesSummary
+{
+    public long purchases = 0; // amount of purchases
+    public long refunds = 0; // amount of refunds
+    public long revenue = 0; // sum of sold item prices in pennies
+    public final Map<String, long[]> items = new HashMap<>(); // units sold and revenue in pennies by item name
+    public final long[] coinsIn; // amount of coins inserted by denomination index
+    public final long[] coinsOut; // amount of coins given back by denomination index
+
+    // Sales summary constructor
+    // Param - int coinCount - amount of coin denominations
+    public SalesSummary(int coinCount)
+    {
+        this.coinsIn = new long[coinCount];
+        this.coinsOut = new long[coinCount];
+    }
+
+    // Adds event to the totals
+    // Param - SaleEvent event - purchase or refund
+    public void add(SaleEvent event)
+    {
+        if (event.type == SaleEvent.SALE)
+        {
+            this.purchases++;
+            for (int i = 0; i < event.items.length; i++)
+            {
+                long[] item = this.items.computeIfAbsent(event.items[i], name -> new long[2]);
+                item[0] += 1;
+                item[1] += event.prices[i];
+                this.revenue += event.prices[i];
+            }
+        }
+        else
+        {
+            this.refunds++;
+        }
+
+        for (int i = 0; i < this.coinsIn.length; i++)
+        {
+            this.coinsIn[i] += event.coinsIn[i];
+            this.coinsOut[i] += event.coinsOut[i];
+        }
+    }
+
+    // Adds or takes away totals of another summary
+    // Param - SalesSummary other - summary to merge
+    // Param - int sign - 1 to add, -1 to take away
+    public void merge(SalesSummary other, int sign)
+    {
+        this.purchases += sign * other.purchases;
+        this.refunds += sign * other.refunds;
+        this.revenue += sign * other.revenue;
+
+        for (Map.Entry<String, long[]> entry : other.items.entrySet())
+        {
+            long[] item = this.items.computeIfAbsent(entry.getKey(), name -> new long[2]);
+            item[0] += sign * entry.getValue()[0];
+            item[1] += sign * entry.getValue()[1];
+
+            // items not sold anymore within the period are dropped
+            if (item[0] == 0 && item[1] == 0)
+            {
+                this.items.remove(entry.getKey());
+            }
+        }
+
+        for (int i = 0; i < this.coinsIn.length; i++)
+        {
+            this.coinsIn[i] += sign * other.coinsIn[i];
+            this.coinsOut[i] += sign * other.coinsOut[i];
+        }
+    }
+
+    // Sets all totals to 0
+    public void clear()
+    {
+        this.purchases = 0;
+        this.refunds = 0;
+        this.revenue = 0;
+        this.items.clear();
+        Arrays.fill(this.coinsIn, 0);
+        Arrays.fill(this.coinsOut, 0);
+    }
+
+    // Formats totals as text
+    // Param - CurrencyProfile currency - currency of the totals, used for coin names and amounts
+    // Param - int topItems - amount of best selling items to list
+    // Returns - ArrayList<String> - report lines
+    public ArrayList<String> report(CurrencyProfile currency, int topItems)
+    {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("purchases " + this.purchases + " refunds " + this.refunds + " revenue "
+                + currency.format(this.revenue));
+
+        ArrayList<Map.Entry<String, long[]>> best = new ArrayList<>(this.items.entrySet());
+        best.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (int i = 0; i < best.size() && i < topItems; i++)
+        {
+            lines.add("  " + best.get(i).getKey() + " units " + best.get(i).getValue()[0] + " revenue "
+                    + currency.format(best.get(i).getValue()[1]));
+        }
+
+        StringBuilder coins = new StringBuilder("  coins in/out");
+        for (int i = 0; i < this.coinsIn.length; i++)
+        {
+            coins.append(' ').append(currency.getCoinName(i)).append(' ').append(this.coinsIn[i]).append('/')
+                    .append(this.coinsOut[i]);
+        }
+
+        lines.add(coins.toString());
+        return lines;
+    }
+}
@@ -0,0 +1,400 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Finds items by name without listing the whole catalog. Names are indexed in lower case two ways - item IDs sorted
+// by name find names starting with the query by binary search, and lists of item IDs by trigram (three letters in a
+// row) find names containing the query, or sharing most trigrams with it when the query has a typo.
+// Item IDs never change for the same name, so the index only grows with the catalog. Caller holds the stock write
+// lock while the index is updated and at least the read lock while searching
+public class SearchIndex
+{
+    private static final int COMMON_GRAM = 8192; // trigrams in more names than this do not rank typo matches
+
+    private String[] names = new String[16]; // indexed names by ID, as given by the catalog
+    private String[] keys = new String[16]; // lower case names by ID
+    private int size = 0; // amount of indexed items
+    private int[] sorted = new int[0]; // item IDs sorted by key
+
+    // Trigram lists in an open addressing table. Trigrams are packed three chars to a long with bit 48 set, 0 marks
+    // a free slot. The table is never more than half full
+    private long[] grams = new long[1024];
+    private int[][] postings = new int[1024][]; // item IDs by trigram slot, ascending
+    private int[] postingSizes = new int[1024]; // amount of IDs in each list
+    private int gramCount = 0; // amount of used slots
+
+    // Indexes items added to the catalog since the last update. Index is built again if items were replaced
+    // Param - Catalog catalog - items in stock
+    public void update(Catalog catalog)
+    {
+        boolean same = catalog.size() >= this.size;
+        for (int id = 0; id < this.size && same; id++)
+        {
+            same = this.names[id] == catalog.getName(id) || this.names[id].equals(catalog.getName(id));
+        }
+
+        if (!same)
+        {
+            this.clear();
+        }
+
+        int first = this.size;
+        if (first == catalog.size())
+        {
+            return;
+        }
+
+        for (int id = first; id < catalog.size(); id++)
+        {
+            this.add(id, catalog.getName(id));
+        }
+
+        // new IDs are sorted and merged into the sorted IDs
+        Integer[] added = new Integer[this.size - first];
+        for (int i = 0; i < added.length; i++)
+        {
+            added[i] = first + i;
+        }
+
+        Arrays.sort(added, (a, b) -> this.keys[a].compareTo(this.keys[b]));
+
+        // IDs sorted before each new ID are found by binary search and copied as a block
+        int[] merged = new int[this.size];
+        int old = 0;
+        int copied = 0;
+        for (int id : added)
+        {
+            int position = this.upperBound(this.keys[id], old);
+            System.arraycopy(this.sorted, old, merged, copied, position - old);
+            copied += position - old;
+            merged[copied++] = id;
+            old = position;
+        }
+
+        System.arraycopy(this.sorted, old, merged, copied, this.sorted.length - old);
+        this.sorted = merged;
+    }
+
+    // Gets amount of indexed items
+    // Returns - int - amount of items
+    public int size(){return this.size;}
+
+    // Finds items by name, ignoring case. Names starting with the query come first in name order, then names
+    // containing it. Only if no name contains the query, names sharing at least half of its trigrams are found
+    // instead, most shared first
+    // Param - String query - whole or part of an item name
+    // Param - int limit - most items found
+    // Returns - int[] - IDs of found items
+    public int[] find(String query, int limit)
+    {
+        String key = query.trim().toLowerCase(Locale.ROOT);
+        int[] found = new int[limit];
+        int count = 0;
+
+        // names starting with the query are next to each other in name order
+        for (int i = this.lowerBound(key); i < this.sorted.length && count < limit; i++)
+        {
+            if (!this.keys[this.sorted[i]].startsWith(key))
+            {
+                break;
+            }
+
+            found[count++] = this.sorted[i];
+        }
+
+        if (count == limit || key.length() < 3)
+        {
+            return Arrays.copyOf(found, count);
+        }
+
+        // names containing the query contain all its trigrams, the rarest one is checked
+        int[] slots = new int[key.length() - 2];
+        int rarest = -1;
+        for (int i = 0; i < slots.length; i++)
+        {
+            slots[i] = this.slot(gram(key, i));
+            if (this.grams[slots[i]] == 0)
+            {
+                slots[i] = -1;
+            }
+            else if (rarest < 0 || this.postingSizes[slots[i]] < this.postingSizes[rarest])
+            {
+                rarest = slots[i];
+            }
+        }
+
+        for (int i = 0; rarest >= 0 && i < this.postingSizes[rarest] && count < limit; i++)
+        {
+            int id = this.postings[rarest][i];
+            if (this.keys[id].contains(key) && indexOf(found, count, id) < 0)
+            {
+                found[count++] = id;
+            }
+        }
+
+        if (count == 0)
+        {
+            count = this.findSimilar(slots, found);
+        }
+
+        return Arrays.copyOf(found, count);
+    }
+
+    // Finds names sharing most trigrams with the query. Trigram lists are merged in ID order counting lists with
+    // each ID, so no per item counters are needed
+    // Param - int[] slots - slots of query trigrams, -1 for trigrams no name has
+    // Param - int[] found - filled with found IDs up to its length
+    // Returns - int - amount of IDs found
+    private int findSimilar(int[] slots, int[] found)
+    {
+        // same trigram twice in the query is counted once. Very common trigrams say little about the name and
+        // would make the merge slow, they are left out of both the lists and the needed share
+        int[] lists = new int[slots.length];
+        int listCount = 0;
+        int missing = 0;
+        for (int slot : slots)
+        {
+            if (slot < 0)
+            {
+                missing++;
+            }
+            else if (this.postingSizes[slot] <= COMMON_GRAM && indexOf(lists, listCount, slot) < 0)
+            {
+                lists[listCount++] = slot;
+            }
+        }
+
+        int needed = Math.max((listCount + missing + 1) / 2, 1); // least shared trigrams
+        int[] positions = new int[listCount];
+        int[] bestIds = new int[found.length];
+        int[] bestScores = new int[bestIds.length];
+        int bestCount = 0;
+
+        while (true)
+        {
+            int id = Integer.MAX_VALUE;
+            for (int i = 0; i < listCount; i++)
+            {
+                if (positions[i] < this.postingSizes[lists[i]])
+                {
+                    id = Math.min(id, this.postings[lists[i]][positions[i]]);
+                }
+            }
+
+            if (id == Integer.MAX_VALUE)
+            {
+                break;
+            }
+
+            int score = 0;
+            for (int i = 0; i < listCount; i++)
+            {
+                if (positions[i] < this.postingSizes[lists[i]] && this.postings[lists[i]][positions[i]] == id)
+                {
+                    positions[i]++;
+                    score++;
+                }
+            }
+
+            if (score < needed)
+            {
+                continue;
+            }
+
+            // keeps the best scores sorted, ties stay in ID order
+            int position = bestCount;
+            while (position > 0 && bestScores[position - 1] < score)
+            {
+                position--;
+            }
+
+            if (position == bestIds.length)
+            {
+                continue;
+            }
+
+            int moved = Math.min(bestCount, bestIds.length - 1) - position;
+            System.arraycopy(bestIds, position, bestIds, position + 1, moved);
+            System.arraycopy(bestScores, position, bestScores, position + 1, moved);
+            bestIds[position] = id;
+            bestScores[position] = score;
+            bestCount = Math.min(bestCount + 1, bestIds.length);
+        }
+
+        System.arraycopy(bestIds, 0, found, 0, bestCount);
+        return bestCount;
+    }
+
+    // Indexes one item
+    // Param - int id - item ID, the next one after indexed items
+    // Param - String name - item name
+    private void add(int id, String name)
+    {
+        if (this.size == this.keys.length)
+        {
+            this.names = Arrays.copyOf(this.names, this.size * 2);
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+        }
+
+        String key = name.toLowerCase(Locale.ROOT);
+        this.names[id] = name;
+        this.keys[id] = key;
+        this.size++;
+
+        for (int i = 0; i + 3 <= key.length(); i++)
+        {
+            long gram = gram(key, i);
+            int slot = this.slot(gram);
+            if (this.grams[slot] == 0)
+            {
+                this.grams[slot] = gram;
+                this.postings[slot] = new int[4];
+                this.gramCount++;
+            }
+
+            // same trigram twice in a name is listed once
+            int size = this.postingSizes[slot];
+            if (size > 0 && this.postings[slot][size - 1] == id)
+            {
+                continue;
+            }
+
+            if (size == this.postings[slot].length)
+            {
+                this.postings[slot] = Arrays.copyOf(this.postings[slot], size * 2);
+            }
+
+            this.postings[slot][size] = id;
+            this.postingSizes[slot]++;
+
+            if (this.gramCount * 2 > this.grams.length)
+            {
+                this.growGrams();
+            }
+        }
+    }
+
+    // Empties the index
+    private void clear()
+    {
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.keys, 0, this.size, null);
+        this.size = 0;
+        this.sorted = new int[0];
+        this.grams = new long[1024];
+        this.postings = new int[1024][];
+        this.postingSizes = new int[1024];
+        this.gramCount = 0;
+    }
+
+    // Moves trigram lists into a table twice as big
+    private void growGrams()
+    {
+        long[] grams = this.grams;
+        int[][] postings = this.postings;
+        int[] postingSizes = this.postingSizes;
+
+        this.grams = new long[grams.length * 2];
+        this.postings = new int[grams.length * 2][];
+        this.postingSizes = new int[grams.length * 2];
+        for (int i = 0; i < grams.length; i++)
+        {
+            if (grams[i] != 0)
+            {
+                int slot = this.slot(grams[i]);
+                this.grams[slot] = grams[i];
+                this.postings[slot] = postings[i];
+                this.postingSizes[slot] = postingSizes[i];
+            }
+        }
+    }
+
+    // Finds slot of trigram, or the free slot where it belongs
+    // Param - long gram - packed trigram
+    // Returns - int - slot
+    private int slot(long gram)
+    {
+        int mask = this.grams.length - 1;
+        long hash = gram * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash >>> 40) & mask;
+        while (this.grams[slot] != 0 && this.grams[slot] != gram)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    // Finds first position in sorted IDs with a key after the given one
+    // Param - String key - lower case name
+    // Param - int low - first position searched
+    // Returns - int - position in sorted IDs
+    private int upperBound(String key, int low)
+    {
+        int high = this.sorted.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (this.keys[this.sorted[middle]].compareTo(key) <= 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    // Finds first position in sorted IDs with a key not before the query
+    // Param - String key - lower case query
+    // Returns - int - position in sorted IDs
+    private int lowerBound(String key)
+    {
+        int low = 0;
+        int high = this.sorted.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (this.keys[this.sorted[middle]].compareTo(key) < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    // Packs trigram
+    // Param - String key - lower case name
+    // Param - int start - position of the first char
+    // Returns - long - three chars with bit 48 set
+    private static long gram(String key, int start)
+    {
+        return 1L << 48 | (long) key.charAt(start) << 32 | (long) key.charAt(start + 1) << 16 | key.charAt(start + 2);
+    }
+
+    // Param - int[] values - searched values
+    // Param - int count - amount of values searched
+    // Param - int value - value to find
+    // Returns - int - position of the value or -1
+    private static int indexOf(int[] values, int count, int value)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (values[i] == value)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,83 @@
+package main;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Class representing a single customer transaction. Each session has its own coin escrow and item reservation
+// so that many customers can be served by the same machine at once. One session is used by one thread at a time.
+// Items reserved by the session form a cart that is paid and given change for at once.
+// Sessions are taken from a pool and reset when closed, so purchasing does not allocate anything
+public class Session
+{
+    int[] pendingCoins; // Amount of coins inserted by the user in this session, by denomination index
+    int[] changeCoins; // Amount of coins given as change by the last purchase, by denomination index
+    int[] refundedCoins; // Amount of coins returned by the last refund, by denomination index
+    int[] cartIds = new int[4]; // IDs of the reserved items
+    long[] cartPrices = new long[4]; // prices of the reserved items in pennies when they were selected
+    int cartSize = 0; // amount of reserved items
+    final BitSet bundled = new BitSet(); // cart positions priced as part of a bundle
+    final BitSet picking = new BitSet(); // cart positions of the bundle being looked for, used by Pricing
+    boolean open = true; // false while the session waits in the session pool
+    final SaleEvent saleEvent; // last purchase or refund of the session, refilled by every transaction
+
+    // Session constructor. Sessions are opened by the machine
+    // Param - int coinCount - amount of accepted coin denominations
+    Session(int coinCount)
+    {
+        this.pendingCoins = new int[coinCount];
+        this.changeCoins = new int[coinCount];
+        this.refundedCoins = new int[coinCount];
+        this.saleEvent = new SaleEvent(coinCount);
+    }
+
+    // Checks whether session has an item reserved
+    // return - boolean - true if an item has been selected
+    public boolean hasItem(){return this.cartSize > 0;}
+
+    // Gets ID of the first reserved item
+    // return - int - item ID or -1 if nothing is selected
+    public int getItemId(){return this.cartSize > 0 ? this.cartIds[0] : -1;}
+
+    // Gets amount of items in the cart
+    // return - int - amount of reserved items
+    public int getCartSize(){return this.cartSize;}
+
+    // Gets ID of reserved item
+    // Param - int index - position in the cart
+    // return - int - item ID
+    public int getCartId(int index){return this.cartIds[index];}
+
+    // Adds reserved item to the cart
+    // Param - int id - item ID
+    // Param - long price - item price in pennies
+    void addToCart(int id, long price)
+    {
+        if (this.cartSize == this.cartIds.length)
+        {
+            this.cartIds = Arrays.copyOf(this.cartIds, this.cartSize * 2);
+            this.cartPrices = Arrays.copyOf(this.cartPrices, this.cartSize * 2);
+        }
+
+        this.cartPrices[this.cartSize] = price;
+
+        this.cartIds[this.cartSize] = id;
+        this.cartSize++;
+    }
+
+    // Empties the cart without touching the items
+    void clearCart()
+    {
+        this.cartSize = 0;
+        this.bundled.clear();
+    }
+
+    // Clears session before it is reused by another customer. Items and coins have to be released first
+    void reset()
+    {
+        this.clearCart();
+        Arrays.fill(this.pendingCoins, 0);
+        Arrays.fill(this.changeCoins, 0);
+        Arrays.fill(this.refundedCoins, 0);
+        this.open = false;
+    }
+}
@@ -0,0 +1,47 @@
+package main;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+// Sessions given back by finished customers, reset and kept for the next ones. Kiosks connecting all day reuse
+// the same escrows instead of allocating new ones. The pool is an array so giving back a session allocates nothing
+class SessionPool
+{
+    private final ArrayBlockingQueue<Session> free; // reset sessions ready to be opened
+    private final int coinCount; // amount of coin denominations of new sessions
+
+    // Session pool constructor
+    // Param - int coinCount - amount of accepted coin denominations
+    // Param - int capacity - most sessions kept, sessions given back to a full pool are dropped
+    SessionPool(int coinCount, int capacity)
+    {
+        this.coinCount = coinCount;
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // Takes reset session from the pool or creates one if the pool is empty
+    // Returns - Session - open session
+    Session take()
+    {
+        Session session = this.free.poll();
+        if (session == null)
+        {
+            session = new Session(this.coinCount);
+        }
+
+        session.open = true;
+        return session;
+    }
+
+    // Resets session and puts it into the pool. Sessions already given back are ignored
+    // Param - Session session - session without reserved items or inserted coins
+    void give(Session session)
+    {
+        if (!session.open)
+        {
+            return;
+        }
+
+        session.reset();
+        this.free.offer(session);
+    }
+}
@@ -0,0 +1,220 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+
+// Compact binary stock file. It is memory mapped on load and prices and stock are read straight from the mapping,
+// so loading does not parse any text.
+//
+// Layout - header, coin records, item records, item names. Records have fixed size so any record can be found
+// by its index and checkpoints can update changed records in place.
+//   header      - int magic, int version, long journal sequence, int coin count, int item count
+//   coin record - long value in pennies, int stock, long journal sequence
+//   item record - long price in pennies, int stock, long journal sequence, int name offset, int name length
+//   item names  - UTF-8 bytes, offsets are relative to the start of item names
+// Every record remembers the last journal record it includes. Records written by a checkpoint that was cut by a
+// crash can be newer than the header, journal replay skips records already included in each of them.
+public class Snapshot
+{
+    public static final int MAGIC = 0x564D5331; // "VMS1"
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 24;
+    public static final int COIN_RECORD_SIZE = 20;
+    public static final int ITEM_RECORD_SIZE = 28;
+
+    private Snapshot(){}
+
+    // Loads items and coins from binary stock file into stock controller
+    // Param - String filePath - binary stock file location
+    // Param - StockController stockController - stock controller to fill, its current stock is replaced
+    public static void read(String filePath, StockController stockController) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            {
+                throw new IOException("Not a stock snapshot: " + filePath);
+            }
+
+            long journalSequence = buffer.getLong(8);
+            int coinCount = buffer.getInt(16);
+            int itemCount = buffer.getInt(20);
+
+            int[] coinStock = new int[coinCount];
+            long[] coinValues = new long[coinCount];
+            long[] coinSequences = new long[coinCount];
+            for (int i = 0; i < coinCount; i++)
+            {
+                int position = coinOffset(i);
+                coinValues[i] = buffer.getLong(position);
+                coinStock[i] = buffer.getInt(position + 8);
+                coinSequences[i] = buffer.getLong(position + 12);
+            }
+
+            ArrayList<Item> items = new ArrayList<>(itemCount);
+            int namesStart = itemOffset(coinCount, itemCount);
+            byte[] name = new byte[64];
+            for (int i = 0; i < itemCount; i++)
+            {
+                int position = itemOffset(coinCount, i);
+                int nameOffset = buffer.getInt(position + 20);
+                int nameLength = buffer.getInt(position + 24);
+
+                if (name.length < nameLength)
+                {
+                    name = new byte[nameLength];
+                }
+
+                buffer.get(namesStart + nameOffset, name, 0, nameLength);
+                Item item = new Item(new String(name, 0, nameLength, StandardCharsets.UTF_8),
+                                     buffer.getLong(position), buffer.getInt(position + 8));
+                item.savedSequence = buffer.getLong(position + 12);
+                items.add(item);
+            }
+
+            stockController.applySnapshot(items, coinValues, coinStock, coinSequences, journalSequence);
+        }
+    }
+
+    // Writes items and coins into binary stock file. File is written next to the target and moved over it, so a
+    // crash never leaves a half written stock file
+    // Param - String filePath - binary stock file location
+    // Param - String[] itemNames - item names by ID
+    // Param - long[] prices - item prices in pennies by ID
+    // Param - int[] stocks - item stock by ID
+    // Param - int itemCount - amount of items
+    // Param - long[] coinValues - coin values in pennies by denomination index
+    // Param - int[] coinStock - coin stock by denomination index
+    // Param - long journalSequence - last journal record included in the stock
+    public static void write(String filePath, String[] itemNames, long[] prices, int[] stocks, int itemCount,
+                             long[] coinValues, int[] coinStock, long journalSequence) throws IOException
+    {
+        byte[][] names = new byte[itemCount][];
+        int namesSize = 0;
+        for (int i = 0; i < itemCount; i++)
+        {
+            names[i] = itemNames[i].getBytes(StandardCharsets.UTF_8);
+            namesSize += names[i].length;
+        }
+
+        int namesStart = itemOffset(coinValues.length, itemCount);
+        ByteBuffer buffer = ByteBuffer.allocate(namesStart + namesSize);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(journalSequence);
+        buffer.putInt(coinValues.length);
+        buffer.putInt(itemCount);
+
+        for (int i = 0; i < coinValues.length; i++)
+        {
+            buffer.putLong(coinValues[i]);
+            buffer.putInt(coinStock[i]);
+            buffer.putLong(journalSequence);
+        }
+
+        int nameOffset = 0;
+        for (int i = 0; i < itemCount; i++)
+        {
+            buffer.putLong(prices[i]);
+            buffer.putInt(stocks[i]);
+            buffer.putLong(journalSequence);
+            buffer.putInt(nameOffset);
+            buffer.putInt(names[i].length);
+            nameOffset += names[i].length;
+        }
+
+        for (byte[] name : names)
+        {
+            buffer.put(name);
+        }
+
+        buffer.flip();
+
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Overwrites changed item and coin records of existing binary stock file in place. Records are synced to disk
+    // before the header, so the header never claims more than the records include
+    // Param - String filePath - binary stock file location
+    // Param - int[] itemIds - indexes of changed items
+    // Param - long[] prices - prices of changed items in pennies
+    // Param - int[] stocks - stock of changed items
+    // Param - int itemCount - amount of changed items
+    // Param - int[] coinIndexes - denomination indexes of changed coins
+    // Param - int[] coinStock - coin stock by denomination index
+    // Param - int coinCount - amount of changed coins
+    // Param - long journalSequence - last journal record included in the changed records
+    public static void update(String filePath, int[] itemIds, long[] prices, int[] stocks, int itemCount,
+                              int[] coinIndexes, int[] coinStock, int coinCount, long journalSequence)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            {
+                throw new IOException("Not a stock snapshot: " + filePath);
+            }
+
+            int fileCoinCount = buffer.getInt(16);
+
+            for (int i = 0; i < coinCount; i++)
+            {
+                int position = coinOffset(coinIndexes[i]);
+                buffer.putInt(position + 8, coinStock[coinIndexes[i]]);
+                buffer.putLong(position + 12, journalSequence);
+            }
+
+            for (int i = 0; i < itemCount; i++)
+            {
+                int position = itemOffset(fileCoinCount, itemIds[i]);
+                buffer.putLong(position, prices[i]);
+                buffer.putInt(position + 8, stocks[i]);
+                buffer.putLong(position + 12, journalSequence);
+            }
+
+            buffer.force();
+
+            buffer.putLong(8, journalSequence);
+            buffer.force();
+        }
+    }
+
+    // Gets position of coin record
+    // Param - int index - denomination index
+    // Returns - int - position in file
+    public static int coinOffset(int index){return HEADER_SIZE + index * COIN_RECORD_SIZE;}
+
+    // Gets position of item record
+    // Param - int coinCount - amount of coin records in file
+    // Param - int index - item index
+    // Returns - int - position in file
+    public static int itemOffset(int coinCount, int index)
+    {
+        return HEADER_SIZE + coinCount * COIN_RECORD_SIZE + index * ITEM_RECORD_SIZE;
+    }
+}
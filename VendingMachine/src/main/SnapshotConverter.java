@@ -0,0 +1,29 @@
+package main;
+
+// Converts stock between xml and binary stock files
+// Usage - SnapshotConverter toBinary stock.xml stock.bin
+//         SnapshotConverter toXml stock.bin stock.xml
+public class SnapshotConverter
+{
+    public static void main(String[] args)
+    {
+        if (args.length != 3 || !(args[0].equals("toBinary") || args[0].equals("toXml")))
+        {
+            System.out.println("Usage: SnapshotConverter toBinary|toXml <source> <target>");
+            return;
+        }
+
+        StockController stockController = new StockController(new HeapCatalog(), new Cashier());
+
+        if (args[0].equals("toBinary"))
+        {
+            stockController.restock(args[1]);
+            stockController.saveSnapshot(args[2]);
+        }
+        else
+        {
+            stockController.loadSnapshot(args[1]);
+            stockController.saveStock(args[2]);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package main;
 
 import org.w3c.dom.*;
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -9,24 +13,89 @@ import javax.xml.transform.stream.StreamResult;
 import java.io.*;
 import java.util.*;
 
-// Controls physical stock (reads and updates stock files)
+// Controls physical stock (reads and updates stock files). When stock is shared through a stockroom, item units
+// come only from leases of the stockroom and stock files set items, prices and coins only
 public class StockController
 {
-    private ArrayList<Item> items; // items in stock
+    private static final int IDLE_EXCHANGES = 3; // exchanges without a sale before an item keeps a single unit
+    private static final XMLInputFactory XML_INPUT = XMLInputFactory.newInstance(); // creates stock file readers
+
+    // Receives items of a stock file one at a time as they are read
+    private interface ItemReader
+    {
+        void read(String name, long price, int stock);
+    }
+
+    // Units of items to settle with the stockroom, taken out of stock under the stock write lock and sent without it
+    public static class LeaseExchange
+    {
+        public final int[] ids; // item IDs
+        public final String[] items; // item names
+        public final int[] sold; // units sold since the last exchange
+        public final int[] returned; // unused units taken out of stock to give back
+        public final int[] wanted; // units to lease
+        public final StockChanges taken = new StockChanges(); // units given back, taken out of stock
+
+        LeaseExchange(int count)
+        {
+            this.ids = new int[count];
+            this.items = new String[count];
+            this.sold = new int[count];
+            this.returned = new int[count];
+            this.wanted = new int[count];
+        }
+    }
+
+    // Stock changes of single items made by leases, journaled as changes rather than as whole stock
+    public static class StockChanges
+    {
+        public final ArrayList<Integer> ids = new ArrayList<>(); // IDs of changed items
+        public final ArrayList<Integer> deltas = new ArrayList<>(); // units added to stock, negative if taken out
+
+        // Adds change of one item
+        // param - int id - item ID
+        // param - int delta - units added to stock, negative if taken out
+        void add(int id, int delta)
+        {
+            this.ids.add(id);
+            this.deltas.add(delta);
+        }
+    }
+
+    private Catalog catalog; // items in stock
     private Cashier cashier; // cashier instance that handles money
+    private long journalSequence = 0; // last journal record included in the stock file
+    private long[] coinSequences; // last journal record included in each saved coin count, by denomination index
+
+    private InventoryService inventoryService; // stockroom leasing item units, null if stock is local
+    private String nodeName; // name of this machine at the stockroom
+    private int leaseBatch; // units of an item leased at once
+    private int[] leased = new int[0]; // units leased by item ID and not reported sold or returned yet
+    private int[] idleExchanges = new int[0]; // exchanges since each item last sold, by item ID
+    private boolean leasesKnown; // false until leases are read from the stockroom and after a failed exchange
 
     // Constructor
-    // param - ArrayList<Item> items - stock items from machine
+    // param - Catalog catalog - stock items from machine
     // param - Cashier cashier - cashier instance from machine
-    public StockController(ArrayList<Item> items, Cashier cashier)
+    public StockController(Catalog catalog, Cashier cashier)
     {
-        this.items = items;
+        this.catalog = catalog;
         this.cashier = cashier;
+        this.coinSequences = new long[cashier.getCoinCount()];
     }
 
+    // Gets last journal record included in the loaded or saved stock file
+    // returns long - journal record sequence
+    public long getJournalSequence(){return this.journalSequence;}
+
+    // Sets last journal record included in the next saved stock file
+    // param - long journalSequence - journal record sequence
+    public void setJournalSequence(long journalSequence){this.journalSequence = journalSequence;}
+
     // Writes current coin and item stock into xml file. Called when exiting machine
     // param - string filePath - stock file location
-    public void saveStock(String filePath)
+    // returns boolean - true if stock has been saved
+    public boolean saveStock(String filePath)
     {
         try {
             // initialises doc builder
@@ -36,6 +105,7 @@ public class StockController
 
             // Root element
             Element rootElement = doc.createElement("wendingMachineStock");
+            rootElement.setAttribute("journal", Long.toString(this.journalSequence));
             doc.appendChild(rootElement);
 
             // Items element
@@ -47,27 +117,26 @@ public class StockController
             rootElement.appendChild(coinsElement);
 
             // Add all item elements
-            for(Item item : this.items)
+            for(int id = 0; id < this.catalog.size(); id++)
             {
                 Element itemElement = doc.createElement("item");
 
-                itemElement.setAttribute("name", item.name);
-                itemElement.setAttribute("price", Double.toString(item.price));
-                itemElement.setAttribute("stock", Integer.toString(item.stock));
+                itemElement.setAttribute("name", this.catalog.getName(id));
+                itemElement.setAttribute("price", Money.format(this.catalog.getPrice(id)));
+                itemElement.setAttribute("stock", Integer.toString(this.catalog.getSavedStock(id)));
 
                 itemsElement.appendChild(itemElement);
             }
 
-            Map<String, Coin> cashierContents = cashier.getContents();
-            SortedSet<String> keys = new TreeSet<>(cashierContents.keySet()); // Gets sorted key set to write coin elements incrementally
+            int[] coinStock = this.cashier.getCoinStock();
 
-            // Add all coin elements
-            for (String key : keys)
+            // Add all coin elements, smallest coin first
+            for (int i = coinStock.length - 1; i >= 0; i--)
             {
                 Element coinElement = doc.createElement("coin");
 
-                coinElement.setAttribute("value", key);
-                coinElement.setAttribute("stock", Integer.toString(cashierContents.get(key).stock));
+                coinElement.setAttribute("value", this.cashier.getCoinName(i));
+                coinElement.setAttribute("stock", Integer.toString(coinStock[i]));
 
                 coinsElement.appendChild(coinElement);
             }
@@ -80,132 +149,672 @@ public class StockController
             transformer.transform(source, result);
 
             System.out.println("Stock saved");
+            return true;
         }
         catch(Exception e)
         {
             System.out.println("Error saving a stock. Please check stock.xml");
+            return false;
+        }
+    }
+
+    // Writes current coin and item stock into binary stock file
+    // param - string filePath - binary stock file location
+    // returns boolean - true if stock has been saved
+    public boolean saveSnapshot(String filePath)
+    {
+        long[] coinValues = new long[this.cashier.getCoinCount()];
+        for (int i = 0; i < coinValues.length; i++)
+        {
+            coinValues[i] = this.cashier.getCoinValue(i);
+        }
+
+        int itemCount = this.catalog.size();
+        String[] names = new String[itemCount];
+        long[] prices = new long[itemCount];
+        int[] stocks = new int[itemCount];
+        for (int id = 0; id < itemCount; id++)
+        {
+            names[id] = this.catalog.getName(id);
+            prices[id] = this.catalog.getPrice(id);
+            stocks[id] = this.catalog.getSavedStock(id);
+        }
+
+        try
+        {
+            Snapshot.write(filePath, names, prices, stocks, itemCount, coinValues, this.cashier.getCoinStock(),
+                    this.journalSequence);
+            return true;
+        }
+        catch (Exception e)
+        {
+            System.out.println("Error saving a stock. Please check " + filePath);
+            return false;
+        }
+    }
+
+    // Replaces current coin and item stock with stock from binary stock file
+    // param - string filePath - binary stock file location
+    public void loadSnapshot(String filePath)
+    {
+        try
+        {
+            Snapshot.read(filePath, this);
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Stock contaminated. Please check " + filePath);
         }
     }
 
     // Add stock to the current coin and item stock from xml file
     // param - string filePath - add stock file location
-    public void addStock(String filePath)
+    // returns boolean - true if the whole file has been added
+    public boolean addStock(String filePath)
     {
         try
         {
-            // initialises doc reader
-            File xmlFile = new File(filePath);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(xmlFile);
-            doc.getDocumentElement().normalize();
+            this.readStock(filePath, true);
+            return true;
+        }catch (Exception e)
+        {
+            System.out.println("ERROR: Stock contaminated. Please check addStock.xml");
+            return false;
+        }
+
+    }
+
+    // Clears contents of current coin and item stock and adds them new from xml file. Items keep their IDs, items
+    // missing from the file are left without stock
+    // param - string filePath - stock file location
+    public void restock(String filePath)
+    {
+        //Clears item stock and cashier contents
+        this.emptyItems();
+        this.cashier.clearContents();
+        this.journalSequence = 0;
+
+        try
+        {
+            this.readStock(filePath, false);
+        }catch (Exception e)
+        {
+            System.out.println("ERROR: Stock contaminated. Please check stock.xml");
+        }
+
+        // whole xml file includes the same journal records
+        for (int id = 0; id < this.catalog.size(); id++)
+        {
+            this.catalog.setSavedSequence(id, this.journalSequence);
+        }
+
+        Arrays.fill(this.coinSequences, this.journalSequence);
+    }
+
+    // Reads items and coins from xml file and merges them into current stock. Nothing is merged if the file is broken,
+    // so the file is streamed twice - first only checked, then merged item by item - and is never held in memory
+    // param - string filePath - stock file location
+    // param - boolean add - true to add stock to existing stock, false to replace it
+    private void readStock(String filePath, boolean add) throws IOException, XMLStreamException
+    {
+        int coinCount = this.cashier.getCoinCount();
+        this.parseStock(filePath, (name, price, stock) -> {}, new int[coinCount], new boolean[coinCount]);
 
-            // Reads all items from the file
-            NodeList items = doc.getElementsByTagName("item");
-            for(int i = 0; i < items.getLength(); i++)
+        int[] fileCoins = new int[coinCount];
+        boolean[] listedCoins = new boolean[coinCount];
+        long journal = this.parseStock(filePath, (name, price, stock) -> this.mergeItem(name, price, stock, add),
+                fileCoins, listedCoins);
+
+        // saved stock remembers which journal records it already includes
+        if (!add && journal >= 0)
+        {
+            this.journalSequence = journal;
+        }
+
+        for (int i = 0; i < fileCoins.length; i++)
+        {
+            // adds coin stock to already existing stock or stocks coins in cashier
+            if (add)
             {
-                Node itemNode = items.item(i);
+                this.cashier.addCoin(this.cashier.getCoinName(i), fileCoins[i]);
+            }
+            else if (listedCoins[i])
+            {
+                this.cashier.stockCoin(this.cashier.getCoinName(i), fileCoins[i]);
+            }
+        }
+    }
 
-                if(itemNode.getNodeType() == Node.ELEMENT_NODE)
-                {
-                    Element itemElement = (Element) itemNode;
+    // Reads items and coins from xml file without touching current stock. Used to reload stock outside of the
+    // stock lock
+    // param - string filePath - stock file location
+    // param - ArrayList<Item> fileItems - filled with items of the file
+    // param - int[] fileCoins - filled with coin stock of the file by denomination index
+    // returns boolean - true if the whole file has been read
+    public boolean readStockFile(String filePath, ArrayList<Item> fileItems, int[] fileCoins)
+    {
+        try
+        {
+            this.parseStock(filePath, (name, price, stock) -> fileItems.add(new Item(name, price, stock)), fileCoins,
+                    new boolean[fileCoins.length]);
+            return true;
+        }
+        catch (Exception e)
+        {
+            System.out.println("ERROR: Stock contaminated. Please check " + filePath);
+            return false;
+        }
+    }
 
-                    // Checks whether item to be added already exists
-                    boolean newItem = true;
-                    for(Item item : this.items)
+    // Streams items and coins from xml file one element at a time
+    // param - string filePath - stock file location
+    // param - ItemReader items - receives items of the file
+    // param - int[] fileCoins - filled with coin stock of the file by denomination index
+    // param - boolean[] listedCoins - set for coin denominations found in the file
+    // returns long - last journal record included in the file, -1 if the file does not say
+    private long parseStock(String filePath, ItemReader items, int[] fileCoins, boolean[] listedCoins)
+            throws IOException, XMLStreamException
+    {
+        long journal = -1;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(filePath)))
+        {
+            XMLStreamReader reader = XML_INPUT.createXMLStreamReader(input);
+            try
+            {
+                while (reader.hasNext())
+                {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT)
                     {
-                        // Updates existing stock and price of the item
-                        String name = itemElement.getAttribute("name");
-                        if(item.name.equals(name))
-                        {
-                            newItem = false;
-                            item.stock += Integer.parseInt(itemElement.getAttribute("stock"));
-                            item.price = Double.parseDouble(itemElement.getAttribute("price"));
-                            break;
-                        }
+                        continue;
                     }
 
-                    // Adds new item if its not currently in stock
-                    if(newItem)
+                    switch (reader.getLocalName())
                     {
-                        this.items.add(new Item(itemElement.getAttribute("name"),
-                                           Double.parseDouble(itemElement.getAttribute("price")),
-                                           Integer.parseInt(itemElement.getAttribute("stock"))));
+                        case "wendingMachineStock":
+                            String sequence = reader.getAttributeValue(null, "journal");
+                            if (sequence != null)
+                            {
+                                journal = Long.parseLong(sequence);
+                            }
+                            break;
+                        case "item":
+                            if (reader.getAttributeValue(null, "name") == null)
+                            {
+                                throw new IllegalArgumentException("Item without name");
+                            }
+
+                            items.read(reader.getAttributeValue(null, "name"),
+                                       Money.parse(reader.getAttributeValue(null, "price")),
+                                       Integer.parseInt(reader.getAttributeValue(null, "stock")));
+                            break;
+                        case "coin":
+                            int index = this.cashier.getCoinIndex(reader.getAttributeValue(null, "value"));
+                            if (index < 0)
+                            {
+                                throw new IllegalArgumentException("Unknown coin");
+                            }
+
+                            fileCoins[index] += Integer.parseInt(reader.getAttributeValue(null, "stock"));
+                            listedCoins[index] = true;
+                            break;
                     }
                 }
             }
+            finally
+            {
+                reader.close();
+            }
+        }
+
+        return journal;
+    }
 
-            // Reads all coin values from the file
-            NodeList coins = doc.getElementsByTagName("coin");
-            for(int i = 0; i < coins.getLength(); i++)
+    // Updates current stock to match stock read from stock file in place. Items keep their IDs and reservations.
+    // Units reserved by customers are counted as inside the machine, so they are taken from the file stock.
+    // Items missing from the file are left without stock so IDs of later items do not shift. Coin denominations
+    // missing from the file are left without coins, as after restock
+    // param - ArrayList<Item> fileItems - items of the stock file
+    // param - int[] fileCoins - coin stock of the stock file by denomination index
+    // param - ArrayList<Integer> changedIds - filled with IDs of changed items
+    // param - ArrayList<Integer> changedCoins - filled with denomination indexes of changed coins
+    // returns int - amount of changed items and coin denominations
+    public int reconcile(ArrayList<Item> fileItems, int[] fileCoins, ArrayList<Integer> changedIds,
+                         ArrayList<Integer> changedCoins)
+    {
+        HashMap<String, Item> fileIndex = new HashMap<>();
+        for (Item fileItem : fileItems)
+        {
+            fileIndex.put(fileItem.name, fileItem);
+        }
+
+        for (int id = 0; id < this.catalog.size(); id++)
+        {
+            Item fileItem = fileIndex.get(this.catalog.getName(id));
+            int stock = fileItem == null ? 0 : Math.max(fileItem.stock - this.catalog.getReserved(id), 0);
+            if (this.inventoryService != null)
             {
-                Node coinNode = coins.item(i);
-                if(coinNode.getNodeType() == Node.ELEMENT_NODE)
-                {
-                    // adds coin stock to already existing stock
-                    Element coinElement = (Element) coinNode;
-                    this.cashier.addCoin(coinElement.getAttribute("value"),
-                            Integer.parseInt(coinElement.getAttribute("stock")));
-                }
+                stock = this.catalog.getStock(id); // leased units stay
             }
-        }catch (Exception e)
+
+            long price = fileItem == null ? this.catalog.getPrice(id) : fileItem.price;
+
+            if (this.catalog.getStock(id) != stock || this.catalog.getPrice(id) != price)
+            {
+                changedIds.add(id);
+                this.catalog.setStock(id, stock);
+                this.catalog.setPrice(id, price);
+            }
+        }
+
+        // new items are added after the current ones
+        for (Item fileItem : fileItems)
         {
-            System.out.println("ERROR: Stock contaminated. Please check addStock.xml");
+            if (this.catalog.find(fileItem.name) < 0)
+            {
+                int stock = this.inventoryService == null ? fileItem.stock : 0;
+                changedIds.add(this.catalog.add(fileItem.name, fileItem.price, stock));
+            }
         }
 
+        int[] coinStock = this.cashier.getCoinStock();
+        for (int i = 0; i < fileCoins.length; i++)
+        {
+            if (coinStock[i] != fileCoins[i])
+            {
+                this.cashier.stockCoin(this.cashier.getCoinName(i), fileCoins[i]);
+                changedCoins.add(i);
+            }
+        }
+
+        return changedIds.size() + changedCoins.size();
     }
 
-    // Clears contents of current coin and item stock and adds them new from xml file
-    // param - string filePath - stock file location
-    public void restock(String filePath)
+    // Applies purchase read back from journal. Item and coins saved after the purchase already include it
+    // param - long sequence - journal record sequence
+    // param - String name - bought item name
+    // param - int[] paidCoins - amount of coins inserted by denomination index
+    // param - int[] changeCoins - amount of coins given as change by denomination index
+    public void applyPurchase(long sequence, String name, int[] paidCoins, int[] changeCoins)
     {
-        //Clears item stock and cashier contents
-        this.items.clear();
+        this.applySale(sequence, name);
+        this.applyCoins(sequence, paidCoins, changeCoins);
+    }
+
+    // Applies purchase of several items read back from journal
+    // param - long sequence - journal record sequence
+    // param - String[] names - bought item names
+    // param - int[] paidCoins - amount of coins inserted by denomination index
+    // param - int[] changeCoins - amount of coins given as change by denomination index
+    public void applyCart(long sequence, String[] names, int[] paidCoins, int[] changeCoins)
+    {
+        for (String name : names)
+        {
+            this.applySale(sequence, name);
+        }
+
+        this.applyCoins(sequence, paidCoins, changeCoins);
+    }
+
+    // Applies stock changes of leases read back from journal
+    // param - long sequence - journal record sequence
+    // param - String[] names - names of changed items
+    // param - int[] deltas - units added to stock by item, negative if taken out
+    public void applyLeases(long sequence, String[] names, int[] deltas)
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            int id = this.catalog.find(names[i]);
+            if (id >= 0 && sequence > this.catalog.getSavedSequence(id))
+            {
+                this.catalog.setStock(id, Math.max(this.catalog.getStock(id) + deltas[i], 0));
+            }
+        }
+    }
+
+    // Takes one sold item out of stock unless saved item already includes the sale
+    // param - long sequence - journal record sequence
+    // param - String name - bought item name
+    private void applySale(long sequence, String name)
+    {
+        int id = this.catalog.find(name);
+        if (id >= 0 && sequence > this.catalog.getSavedSequence(id))
+        {
+            this.catalog.setStock(id, this.catalog.getStock(id) - 1);
+        }
+    }
+
+    // Puts paid coins into coin stock and takes change out unless saved coins already include them
+    // param - long sequence - journal record sequence
+    // param - int[] paidCoins - amount of coins inserted by denomination index
+    // param - int[] changeCoins - amount of coins given as change by denomination index
+    private void applyCoins(long sequence, int[] paidCoins, int[] changeCoins)
+    {
+        for (int i = 0; i < paidCoins.length; i++)
+        {
+            if (sequence > this.coinSequences[i])
+            {
+                this.cashier.addCoin(this.cashier.getCoinName(i), paidCoins[i] - changeCoins[i]);
+            }
+        }
+    }
+
+    // Applies items and coins changed by a stock file reload read back from journal. Items new to the catalog are
+    // added, the rest is set unless saved stock already includes the reload
+    // param - long sequence - journal record sequence
+    // param - ArrayList<Item> items - changed items with their price and stock
+    // param - int[] coinIndexes - denomination indexes of changed coins
+    // param - int[] coinStock - stock of changed coins
+    public void applyReload(long sequence, ArrayList<Item> items, int[] coinIndexes, int[] coinStock)
+    {
+        for (Item item : items)
+        {
+            int id = this.catalog.find(item.name);
+            if (id < 0)
+            {
+                this.catalog.add(item.name, item.price, item.stock);
+            }
+            else if (sequence > this.catalog.getSavedSequence(id))
+            {
+                this.catalog.setStock(id, item.stock);
+                this.catalog.setPrice(id, item.price);
+            }
+        }
+
+        for (int i = 0; i < coinIndexes.length; i++)
+        {
+            if (sequence > this.coinSequences[coinIndexes[i]])
+            {
+                this.cashier.stockCoin(this.cashier.getCoinName(coinIndexes[i]), coinStock[i]);
+            }
+        }
+    }
+
+    // Replaces item and coin stock with stock read back from journal
+    // param - long sequence - journal record sequence
+    // param - ArrayList<Item> items - items in stock
+    // param - int[] coins - coin stock by denomination index
+    public void applyStock(long sequence, ArrayList<Item> items, int[] coins)
+    {
+        this.emptyItems();
+        for (Item item : items)
+        {
+            this.mergeItem(item.name, item.price, item.stock, false);
+        }
+
+        for (int id = 0; id < this.catalog.size(); id++)
+        {
+            this.catalog.setSavedSequence(id, sequence);
+        }
+
+        for (int i = 0; i < coins.length; i++)
+        {
+            this.cashier.stockCoin(this.cashier.getCoinName(i), coins[i]);
+        }
+
+        // every record after this one has to be applied to the new stock
+        Arrays.fill(this.coinSequences, sequence);
+    }
+
+    // Replaces item and coin stock with stock read from binary stock file
+    // param - ArrayList<Item> items - items in stock
+    // param - long[] coinValues - coin values in pennies by coin record
+    // param - int[] coinStock - coin stock by coin record
+    // param - long[] coinSequences - last journal record included in each coin record
+    // param - long journalSequence - last journal record included in the whole stock file
+    public void applySnapshot(ArrayList<Item> items, long[] coinValues, int[] coinStock, long[] coinSequences,
+                              long journalSequence)
+    {
+        this.emptyItems();
         this.cashier.clearContents();
+        Arrays.fill(this.coinSequences, journalSequence);
 
-        try
+        // items missing from the file are saved without stock as of the whole file
+        for (int id = 0; id < this.catalog.size(); id++)
         {
-            // initialises doc reader
-            File xmlFile = new File(filePath);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(xmlFile);
-            doc.getDocumentElement().normalize();
+            this.catalog.setSavedSequence(id, journalSequence);
+        }
 
+        for (Item item : items)
+        {
+            this.mergeItem(item.name, item.price, item.stock, false);
+            this.catalog.setSavedSequence(this.catalog.find(item.name), item.savedSequence);
+        }
 
-            // Reads all items from the file
-            NodeList items = doc.getElementsByTagName("item");
-            for(int i = 0; i < items.getLength(); i++)
+        for (int i = 0; i < coinValues.length; i++)
+        {
+            // coins the currency does not have are left out
+            int index = this.cashier.getCoinIndex(coinValues[i]);
+            if (index < 0)
             {
-                Node itemNode = items.item(i);
+                continue;
+            }
 
-                if(itemNode.getNodeType() == Node.ELEMENT_NODE)
-                {
-                    // adds items to item list
-                    Element itemElement = (Element) itemNode;
-                    this.items.add(new Item(itemElement.getAttribute("name"),
-                                            Double.parseDouble(itemElement.getAttribute("price")),
-                                            Integer.parseInt(itemElement.getAttribute("stock"))));
-                }
+            this.cashier.stockCoin(this.cashier.getCoinName(index), coinStock[i]);
+            this.coinSequences[index] = coinSequences[i];
+        }
+
+        this.journalSequence = journalSequence;
+    }
+
+    // Shares item stock with other machines. From now on item units come only from stockroom leases, units in stock
+    // that the stockroom has not leased to this machine are dropped once leases are read. Caller holds the write lock
+    // param - InventoryService inventoryService - stockroom
+    // param - String nodeName - name of this machine at the stockroom, the same after every start
+    // param - int leaseBatch - units of an item leased at once
+    public void shareStock(InventoryService inventoryService, String nodeName, int leaseBatch)
+    {
+        this.inventoryService = inventoryService;
+        this.nodeName = nodeName;
+        this.leaseBatch = leaseBatch;
+        this.leasesKnown = false;
+    }
+
+    // returns InventoryService - stockroom leasing item units, null if stock is local
+    public InventoryService getInventoryService(){return this.inventoryService;}
+
+    // returns String - name of this machine at the stockroom
+    public String getNodeName(){return this.nodeName;}
+
+    // Checks whether leases have to be read from the stockroom before the next exchange
+    // returns boolean - true if leases are not known
+    public boolean needsLeases(){return !this.leasesKnown;}
+
+    // Gets names of all items. Caller holds the stock lock
+    // returns String[] - item names by ID
+    public String[] getItemNames()
+    {
+        String[] names = new String[this.catalog.size()];
+        for (int id = 0; id < names.length; id++)
+        {
+            names[id] = this.catalog.getName(id);
+        }
+
+        return names;
+    }
+
+    // Sets units leased to this machine as the stockroom knows them. Units in stock beyond the lease are dropped,
+    // units missing from stock were sold and are reported on the next exchange. Caller holds the write lock
+    // param - String[] names - item names by ID, as read before the stockroom was called
+    // param - int[] leased - leased units by item
+    // returns StockChanges - units dropped from stock by item
+    public StockChanges useLeases(String[] names, int[] leased)
+    {
+        this.growLeases();
+        StockChanges changes = new StockChanges();
+        for (int id = 0; id < names.length; id++)
+        {
+            this.leased[id] = leased[id];
+            if (this.catalog.getSavedStock(id) > leased[id])
+            {
+                int stock = this.catalog.getStock(id);
+                this.catalog.setStock(id, Math.max(leased[id] - this.catalog.getReserved(id), 0));
+                changes.add(id, this.catalog.getStock(id) - stock);
             }
+        }
 
-            // Reads all coins from the file
-            NodeList coins = doc.getElementsByTagName("coin");
-            for(int i = 0; i < coins.getLength(); i++)
+        // items added meanwhile have no lease yet
+        for (int id = names.length; id < this.catalog.size(); id++)
+        {
+            this.leased[id] = 0;
+            if (this.catalog.getStock(id) > 0)
             {
-                Node coinNode = coins.item(i);
+                changes.add(id, -this.catalog.getStock(id));
+                this.catalog.setStock(id, 0);
+            }
+        }
 
-                if(coinNode.getNodeType() == Node.ELEMENT_NODE)
-                {
-                    // stocks coins in cashier
-                    Element coinElement = (Element) coinNode;
-                    this.cashier.stockCoin(coinElement.getAttribute("value"),
-                                           Integer.parseInt(coinElement.getAttribute("stock")));
-                }
+        this.leasesKnown = true;
+        return changes;
+    }
+
+    // Works out units sold since the last exchange and units to lease or give back. Items keep about a batch while
+    // they sell and a single unit once they stop selling, the rest goes back to the stockroom for other machines.
+    // Units given back are taken out of stock right away. Caller holds the write lock
+    // param - boolean returnAll - true to give back every unit not reserved by a customer and lease nothing
+    // returns LeaseExchange - units to settle, null if there is nothing to settle
+    public LeaseExchange prepareLeaseExchange(boolean returnAll)
+    {
+        this.growLeases();
+        int itemCount = this.catalog.size();
+        int[] sold = new int[itemCount];
+        int[] returned = new int[itemCount];
+        int[] wanted = new int[itemCount];
+        int count = 0;
+
+        for (int id = 0; id < itemCount; id++)
+        {
+            sold[id] = Math.max(this.leased[id] - this.catalog.getSavedStock(id), 0);
+            this.idleExchanges[id] = sold[id] > 0 ? 0 : Math.min(this.idleExchanges[id] + 1, IDLE_EXCHANGES);
+
+            int stock = this.catalog.getStock(id);
+            int target = this.idleExchanges[id] >= IDLE_EXCHANGES ? 1 : this.leaseBatch;
+            if (returnAll)
+            {
+                returned[id] = stock;
             }
-        }catch (Exception e)
+            else if (stock > target * 2)
+            {
+                returned[id] = stock - target;
+            }
+            else if (stock <= target / 2)
+            {
+                wanted[id] = target - stock;
+            }
+
+            if (sold[id] > 0 || returned[id] > 0 || wanted[id] > 0)
+            {
+                count++;
+            }
+        }
+
+        if (count == 0)
         {
-            System.out.println("ERROR: Stock contaminated. Please check stock.xml");
+            return null;
+        }
+
+        LeaseExchange exchange = new LeaseExchange(count);
+        int next = 0;
+        for (int id = 0; id < itemCount; id++)
+        {
+            if (sold[id] == 0 && returned[id] == 0 && wanted[id] == 0)
+            {
+                continue;
+            }
+
+            exchange.ids[next] = id;
+            exchange.items[next] = this.catalog.getName(id);
+            exchange.sold[next] = sold[id];
+            exchange.returned[next] = returned[id];
+            exchange.wanted[next] = wanted[id];
+            next++;
+
+            this.leased[id] -= sold[id] + returned[id];
+            this.catalog.setStock(id, this.catalog.getStock(id) - returned[id]);
+            if (returned[id] > 0)
+            {
+                exchange.taken.add(id, -returned[id]);
+            }
+        }
+
+        return exchange;
+    }
+
+    // Puts units leased by the stockroom into stock. If the exchange failed units given back are put back into stock
+    // and leases are read again before the next exchange, the stockroom may have settled it anyway. Caller holds the
+    // write lock
+    // param - LeaseExchange exchange - exchange sent to the stockroom
+    // param - int[] granted - units leased by item, null if the exchange failed
+    // returns StockChanges - units put into stock by item
+    public StockChanges finishLeaseExchange(LeaseExchange exchange, int[] granted)
+    {
+        StockChanges changes = new StockChanges();
+        for (int i = 0; i < exchange.ids.length; i++)
+        {
+            int id = exchange.ids[i];
+            int added = granted == null ? exchange.returned[i] : granted[i];
+            if (added > 0)
+            {
+                this.leased[id] += granted == null ? 0 : added;
+                this.catalog.setStock(id, this.catalog.getStock(id) + added);
+                changes.add(id, added);
+            }
+        }
+
+        this.leasesKnown = granted != null;
+        return changes;
+    }
+
+    // Makes room for leases of items added since the last exchange
+    private void growLeases()
+    {
+        if (this.leased.length < this.catalog.size())
+        {
+            this.leased = Arrays.copyOf(this.leased, this.catalog.size());
+            this.idleExchanges = Arrays.copyOf(this.idleExchanges, this.catalog.size());
+        }
+    }
+
+    // Updates stock and price of the item with the same name or adds new item if its not currently in stock.
+    // Replaced stock counts units reserved by customers as inside the machine, like reconcile
+    // param - String name - item name
+    // param - long price - item price in pennies
+    // param - int stock - amount of items
+    // param - boolean add - true to add stock to existing stock, false to replace it
+    private void mergeItem(String name, long price, int stock, boolean add)
+    {
+        int id = this.catalog.find(name);
+
+        if (id < 0)
+        {
+            // units of new items come with their first lease
+            this.catalog.add(name, price, this.inventoryService == null ? stock : 0);
+            return;
+        }
+
+        if (this.inventoryService != null)
+        {
+            this.catalog.setPrice(id, price);
+            return;
+        }
+
+        int reserved = this.catalog.getReserved(id);
+        this.catalog.setStock(id, add ? this.catalog.getStock(id) + stock : Math.max(stock - reserved, 0));
+        this.catalog.setPrice(id, price);
+    }
+
+    // Takes all units out of stock before stock is replaced. Items are not removed, so an item keeps its ID for as
+    // long as the machine runs and the search index and customer carts stay valid
+    private void emptyItems()
+    {
+        // leased units stay, they are not in stock files
+        if (this.inventoryService != null)
+        {
+            return;
+        }
+
+        for (int id = 0; id < this.catalog.size(); id++)
+        {
+            this.catalog.setStock(id, 0);
         }
     }
 }
@@ -0,0 +1,127 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+// Watches stock files and applies their changes to the running machine. Changes of the stock file are reconciled
+// with current stock in place, so the machine never empties and item IDs stay the same. An add stock file is added
+// once when it appears or changes and is renamed with .applied so it is not added again
+public class StockWatcher
+{
+    private static final String APPLIED_SUFFIX = ".applied"; // added to add stock files after they are applied
+    private static final long SETTLE_MILLIS = 200; // time for a file being written to settle before it is read
+
+    private final Machine machine; // machine stock files are applied to
+    private final Path stockFile; // reconciled with current stock when it changes
+    private final Path addStockFile; // added to current stock when it appears or changes
+    private final WatchService watchService;
+
+    // Stock watcher constructor. Watches directories of both files, changes are applied after start
+    // Param - Machine machine - machine to restock
+    // Param - String stockFilePath - stock file location
+    // Param - String addStockFilePath - add stock file location
+    public StockWatcher(Machine machine, String stockFilePath, String addStockFilePath) throws IOException
+    {
+        this.machine = machine;
+        this.stockFile = Paths.get(stockFilePath).toAbsolutePath();
+        this.addStockFile = Paths.get(addStockFilePath).toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        // a directory registered twice keeps one registration
+        this.stockFile.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.addStockFile.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    // Starts applying file changes on a background thread
+    public void start()
+    {
+        Thread watcher = new Thread(this::watch, "stock-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    // Stops watching files
+    public void stop()
+    {
+        try
+        {
+            this.watchService.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to stop watching stock files");
+        }
+    }
+
+    // Waits for file changes until stopped. Changes arriving together are applied once
+    private void watch()
+    {
+        try
+        {
+            while (true)
+            {
+                WatchKey key = this.watchService.take();
+                Thread.sleep(SETTLE_MILLIS);
+
+                boolean stockChanged = false;
+                boolean addStockChanged = false;
+                do
+                {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        // lost events could have been about either file
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        {
+                            stockChanged = true;
+                            addStockChanged = true;
+                            continue;
+                        }
+
+                        Path file = directory.resolve((Path) event.context());
+                        stockChanged |= file.equals(this.stockFile);
+                        addStockChanged |= file.equals(this.addStockFile);
+                    }
+
+                    key.reset();
+                }
+                while ((key = this.watchService.poll()) != null);
+
+                if (stockChanged && Files.exists(this.stockFile))
+                {
+                    this.machine.reloadStock(this.stockFile.toString());
+                }
+
+                if (addStockChanged && Files.exists(this.addStockFile))
+                {
+                    this.applyAddStock();
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException e)
+        {
+            // watcher stopped
+        }
+    }
+
+    // Adds stock from add stock file and renames the file. A file still being written is left for its next change
+    private void applyAddStock()
+    {
+        if (!this.machine.addStock(this.addStockFile.toString()))
+        {
+            return;
+        }
+
+        try
+        {
+            Files.move(this.addStockFile, Paths.get(this.addStockFile + APPLIED_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to rename applied add stock file. Please check " + this.addStockFile);
+        }
+    }
+}
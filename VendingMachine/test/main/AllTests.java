@@ -0,0 +1,72 @@
+package main;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+// Runs every static method named test... of the test classes and prints failures. Exits with 1 if any test failed
+// Usage - AllTests [class filter]
+public class AllTests
+{
+    private static final Class<?>[] testClasses =
+    {
+        MachineTest.class,
+        ChangeMakerTest.class,
+        JournalTest.class,
+        CommandServerTest.class,
+        SalesLogTest.class,
+        PricingTest.class,
+        LeaseTest.class,
+        SearchIndexTest.class,
+        SnapshotTest.class,
+        ReloadTest.class,
+        ColumnarCatalogTest.class,
+        CurrencyProfileTest.class,
+        CashierTest.class,
+    };
+
+    public static void main(String[] args)
+    {
+        String filter = args.length > 0 ? args[0] : "";
+        int passed = 0;
+        int failed = 0;
+
+        for (Class<?> testClass : testClasses)
+        {
+            if (!testClass.getSimpleName().contains(filter))
+            {
+                continue;
+            }
+
+            for (Method method : testClass.getDeclaredMethods())
+            {
+                if (!method.getName().startsWith("test") || !Modifier.isStatic(method.getModifiers()))
+                {
+                    continue;
+                }
+
+                String name = testClass.getSimpleName() + "." + method.getName();
+                try
+                {
+                    method.setAccessible(true);
+                    method.invoke(null);
+                    passed++;
+                }
+                catch (InvocationTargetException e)
+                {
+                    failed++;
+                    System.out.println("FAILED " + name);
+                    e.getCause().printStackTrace(System.out);
+                }
+                catch (IllegalAccessException e)
+                {
+                    failed++;
+                    System.out.println("FAILED " + name + " - " + e);
+                }
+            }
+        }
+
+        System.out.println(passed + " passed, " + failed + " failed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,104 @@
+package main;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Tests of the cashier - change coins reserved, given and put back by concurrent purchases
+public class CashierTest
+{
+    // Threads reserving change from a small coin stock and then giving or putting it back never reserve a coin
+    // twice. Coins left and coins given add up to the coins there were, and none stay reserved
+    static void testConcurrentChange() throws Exception
+    {
+        Cashier cashier = new Cashier(CurrencyProfile.GBP);
+        int coinCount = cashier.getCoinCount();
+        for (int i = 0; i < coinCount; i++)
+        {
+            cashier.stockCoin(cashier.getCoinName(i), 30);
+        }
+
+        AtomicIntegerArray given = new AtomicIntegerArray(coinCount);
+        AtomicInteger wrongChange = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            Random random = new Random(t);
+            threads[t] = new Thread(() ->
+            {
+                int[] changeCoins = new int[coinCount];
+                for (int n = 0; n < 5000; n++)
+                {
+                    long change = 1 + random.nextInt(500);
+                    if (!cashier.reserveChange(change, changeCoins))
+                    {
+                        continue;
+                    }
+
+                    long sum = 0;
+                    for (int i = 0; i < coinCount; i++)
+                    {
+                        sum += changeCoins[i] * cashier.getCoinValue(i);
+                    }
+
+                    if (sum != change)
+                    {
+                        wrongChange.incrementAndGet();
+                    }
+
+                    // most purchases are refunded, so coins keep coming back for others to reserve
+                    if (random.nextInt(10) == 0)
+                    {
+                        cashier.commitChange(changeCoins);
+                        for (int i = 0; i < coinCount; i++)
+                        {
+                            given.addAndGet(i, changeCoins[i]);
+                        }
+                    }
+                    else
+                    {
+                        cashier.releaseChange(changeCoins);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        boolean negative = false;
+        for (Thread thread : threads)
+        {
+            while (thread.isAlive())
+            {
+                for (int coins : cashier.getCoinStock())
+                {
+                    negative |= coins < 0;
+                }
+            }
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        Check.isTrue(!negative, "coin stock stays positive");
+        Check.equal(0, wrongChange.get(), "reservations not adding up to the change");
+
+        int[] coinStock = cashier.getCoinStock();
+        long left = 0;
+        for (int i = 0; i < coinCount; i++)
+        {
+            Check.isTrue(coinStock[i] >= 0, "coins of " + cashier.getCoinName(i) + " left");
+            Check.equal(30, coinStock[i] + given.get(i), "coins of " + cashier.getCoinName(i) + " left and given");
+            left += coinStock[i] * cashier.getCoinValue(i);
+        }
+
+        // every coin left can be reserved at once, so none is still held by a reservation
+        int[] all = new int[coinCount];
+        Check.isTrue(cashier.reserveChange(left, all), "all coins left are reserved");
+        for (int i = 0; i < coinCount; i++)
+        {
+            Check.equal(coinStock[i], all[i], "reserved coins of " + cashier.getCoinName(i));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Tests of change with the fewest coins from limited coin stock
+public class ChangeMakerTest
+{
+    private static final int[] VALUES = {200, 100, 50, 20, 10, 5, 2, 1}; // pennies by denomination index
+    private static final int MAX_AMOUNT = 500;
+
+    // Change is compared with fewest coins found by trying every coin for random coin stock
+    static void testFewestCoins()
+    {
+        ChangeMaker changeMaker = new ChangeMaker(VALUES, MAX_AMOUNT);
+        Random random = new Random(7);
+        int[] changeCoins = new int[VALUES.length];
+
+        for (int round = 0; round < 200; round++)
+        {
+            AtomicIntegerArray coins = randomCoins(random);
+            int[] fewest = fewestCoins(coins);
+            for (int amount = 0; amount <= MAX_AMOUNT; amount++)
+            {
+                boolean made = changeMaker.makeChange(coins, amount, changeCoins);
+                Check.equal(fewest[amount] >= 0, made, "change of " + amount + " can be made");
+                Check.equal(made, changeMaker.canMakeChange(coins, amount), "change of " + amount + " is possible");
+                if (made)
+                {
+                    checkChange(coins, amount, changeCoins);
+                    Check.equal(fewest[amount], count(changeCoins), "coins in change of " + amount);
+                }
+            }
+        }
+    }
+
+    // Amounts above the tables and negative amounts
+    static void testOutsideTables()
+    {
+        ChangeMaker changeMaker = new ChangeMaker(VALUES, MAX_AMOUNT);
+        AtomicIntegerArray coins = new AtomicIntegerArray(new int[]{5, 0, 0, 0, 0, 0, 0, 3});
+        int[] changeCoins = new int[VALUES.length];
+
+        Check.isTrue(changeMaker.makeChange(coins, 1003, changeCoins), "change above the tables");
+        checkChange(coins, 1003, changeCoins);
+        Check.isTrue(!changeMaker.makeChange(coins, 1004, changeCoins), "too few pennies");
+        Check.isTrue(!changeMaker.makeChange(coins, -1, changeCoins), "negative change");
+        Check.isTrue(!changeMaker.canMakeChange(coins, -1), "negative change is impossible");
+    }
+
+    // Threads looking up change with their own coin stock never see tables of another thread's stock
+    static void testConcurrentLookups() throws InterruptedException
+    {
+        ChangeMaker changeMaker = new ChangeMaker(VALUES, MAX_AMOUNT);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++)
+        {
+            long seed = t;
+            threads[t] = new Thread(() ->
+            {
+                try
+                {
+                    Random random = new Random(seed);
+                    int[] changeCoins = new int[VALUES.length];
+                    for (int round = 0; round < 2000; round++)
+                    {
+                        AtomicIntegerArray coins = randomCoins(random);
+                        int amount = random.nextInt(MAX_AMOUNT + 1);
+                        if (changeMaker.makeChange(coins, amount, changeCoins))
+                        {
+                            checkChange(coins, amount, changeCoins);
+                        }
+                    }
+                }
+                catch (Throwable e)
+                {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        if (failure.get() != null)
+        {
+            throw new AssertionError("concurrent lookup failed", failure.get());
+        }
+    }
+
+    // Param - Random random - random source
+    // Returns - AtomicIntegerArray - 0 to 3 coins of every denomination
+    private static AtomicIntegerArray randomCoins(Random random)
+    {
+        AtomicIntegerArray coins = new AtomicIntegerArray(VALUES.length);
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            coins.set(i, random.nextInt(4));
+        }
+
+        return coins;
+    }
+
+    // Checks that change sums to the amount and uses only coins in stock
+    private static void checkChange(AtomicIntegerArray coins, int amount, int[] changeCoins)
+    {
+        long sum = 0;
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            Check.isTrue(changeCoins[i] >= 0 && changeCoins[i] <= coins.get(i), "coins of " + VALUES[i] + " in stock");
+            sum += (long) changeCoins[i] * VALUES[i];
+        }
+
+        Check.equal(amount, sum, "change sum");
+    }
+
+    // Finds fewest coins for every amount by taking coins one at a time
+    // Returns - int[] - fewest coins by amount, -1 if impossible
+    private static int[] fewestCoins(AtomicIntegerArray coins)
+    {
+        int[] fewest = new int[MAX_AMOUNT + 1];
+        Arrays.fill(fewest, -1);
+        fewest[0] = 0;
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            for (int coin = 0; coin < coins.get(i); coin++)
+            {
+                for (int amount = MAX_AMOUNT; amount >= VALUES[i]; amount--)
+                {
+                    int rest = fewest[amount - VALUES[i]];
+                    if (rest >= 0 && (fewest[amount] < 0 || rest + 1 < fewest[amount]))
+                    {
+                        fewest[amount] = rest + 1;
+                    }
+                }
+            }
+        }
+
+        return fewest;
+    }
+
+    private static int count(int[] changeCoins)
+    {
+        int count = 0;
+        for (int coins : changeCoins)
+        {
+            count += coins;
+        }
+
+        return count;
+    }
+}
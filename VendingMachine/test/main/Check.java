@@ -0,0 +1,39 @@
+package main;
+
+// Assertions of tests. Tests run without a test framework, a failed check throws AssertionError
+final class Check
+{
+    private Check(){}
+
+    // Param - boolean condition - checked condition
+    // Param - String message - what was expected
+    static void isTrue(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(message);
+        }
+    }
+
+    // Param - long expected - expected value
+    // Param - long actual - actual value
+    // Param - String message - what was checked
+    static void equal(long expected, long actual, String message)
+    {
+        if (expected != actual)
+        {
+            throw new AssertionError(message + " - expected " + expected + " but was " + actual);
+        }
+    }
+
+    // Param - Object expected - expected value
+    // Param - Object actual - actual value
+    // Param - String message - what was checked
+    static void equal(Object expected, Object actual, String message)
+    {
+        if (expected == null ? actual != null : !expected.equals(actual))
+        {
+            throw new AssertionError(message + " - expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tests of the columnar catalog - stock and reserved units packed into one count and the name table growing
+public class ColumnarCatalogTest
+{
+    // Reserving, releasing, selling and setting stock move units between the two halves of the count and keep the
+    // other half as it is, also for counts that do not fit in a short
+    static void testPackedCounts()
+    {
+        Catalog catalog = new ColumnarCatalog();
+        int id = catalog.add("Coke", 259, 2);
+        Check.isTrue(catalog.reserve(id), "first unit is reserved");
+        Check.isTrue(catalog.reserve(id), "second unit is reserved");
+        Check.isTrue(!catalog.reserve(id), "nothing left to reserve");
+        Check.equal(0, catalog.getStock(id), "stock after reserving all");
+        Check.equal(2, catalog.getReserved(id), "reserved after reserving all");
+
+        catalog.release(id);
+        catalog.sell(id);
+        Check.equal(1, catalog.getStock(id), "stock after release and sale");
+        Check.equal(0, catalog.getReserved(id), "reserved after release and sale");
+
+        catalog.reserve(id);
+        catalog.setStock(id, 2000000000);
+        Check.equal(2000000000, catalog.getStock(id), "big stock");
+        Check.equal(1, catalog.getReserved(id), "reservation kept by setting stock");
+        Check.equal(2000000001, catalog.getSavedStock(id), "saved stock counts reserved units");
+
+        catalog.sell(id);
+        Check.equal(2000000000, catalog.getStock(id), "big stock after sale");
+        Check.equal(0, catalog.getReserved(id), "reserved after sale");
+    }
+
+    // Threads reserving, releasing and selling the same item never reserve more units than there are, and every
+    // unit ends up either in stock or sold
+    static void testConcurrentReservations() throws Exception
+    {
+        Catalog catalog = new ColumnarCatalog();
+        int id = catalog.add("Coke", 259, 5000);
+        AtomicInteger sold = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            int seed = t;
+            threads[t] = new Thread(() ->
+            {
+                for (int i = 0; i < 20000; i++)
+                {
+                    if (!catalog.reserve(id))
+                    {
+                        continue;
+                    }
+
+                    if ((i + seed) % 3 == 0)
+                    {
+                        catalog.sell(id);
+                        sold.incrementAndGet();
+                    }
+                    else
+                    {
+                        catalog.release(id);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        // stock is checked while the threads run, it never goes below zero
+        boolean negative = false;
+        for (Thread thread : threads)
+        {
+            while (thread.isAlive())
+            {
+                negative |= catalog.getStock(id) < 0 || catalog.getReserved(id) < 0;
+            }
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        Check.isTrue(!negative, "stock and reservations stay positive");
+        Check.equal(0, catalog.getReserved(id), "nothing reserved at the end");
+        Check.equal(5000, catalog.getStock(id) + sold.get(), "units in stock and sold");
+    }
+
+    // Name table grows with the columns, every name is found by its ID after growing and after clearing
+    static void testNameTableGrowth()
+    {
+        ColumnarCatalog catalog = new ColumnarCatalog(16);
+        for (int id = 0; id < 5000; id++)
+        {
+            Check.equal(id, catalog.add("item " + id, id, id), "ID of new item");
+        }
+
+        for (int id = 0; id < 5000; id++)
+        {
+            if (catalog.find("item " + id) != id || catalog.getPrice(id) != id || catalog.getStock(id) != id)
+            {
+                Check.isTrue(false, "item " + id + " after growing");
+            }
+        }
+
+        Check.equal(-1, catalog.find("item 5000"), "missing item");
+        Check.isTrue(catalog.markDirty(4999), "last item is marked changed");
+        Check.isTrue(!catalog.markDirty(4999), "last item is marked changed once");
+
+        catalog.clear();
+        Check.equal(-1, catalog.find("item 1"), "item after clearing");
+        Check.equal(0, catalog.add("item 1", 100, 1), "ID after clearing");
+        Check.equal(0, catalog.find("item 1"), "item added after clearing");
+        Check.isTrue(catalog.markDirty(4999), "changed marks are cleared");
+    }
+}
@@ -0,0 +1,126 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// Tests of commands served to kiosks over TCP
+public class CommandServerTest
+{
+    // Kiosks of a server not started for admins can not save, restock or power off the machine
+    static void testAdminCommandsRefused() throws Exception
+    {
+        Machine machine = TestStock.machine(TestStock.directory());
+        CommandServer server = new CommandServer(machine, 0, "stock.xml", "addstock.xml", false);
+        server.start();
+        try (Socket socket = new Socket("localhost", server.getPort()))
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            for (String command : new String[]{"save", "restock", "addstock", "exit"})
+            {
+                writer.println(command);
+                Check.equal("ERROR Not allowed", reader.readLine(), command + " is refused");
+            }
+
+            writer.println("select 0");
+            Check.equal("OK 2.59", reader.readLine(), "connection still serves customers");
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    // Stopping the server refunds sessions of open connections
+    static void testStopRefundsConnections() throws Exception
+    {
+        Machine machine = TestStock.machine(TestStock.directory());
+        CommandServer server = new CommandServer(machine, 0, "stock.xml", "addstock.xml", false);
+        server.start();
+        try (Socket socket = new Socket("localhost", server.getPort()))
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            writer.println("select 0");
+            reader.readLine();
+            writer.println("coin 1.00");
+            Check.equal("OK 1.59", reader.readLine(), "coin is inserted");
+            Check.equal(9, machine.getItems().get(0).stock, "Coke is reserved");
+
+            server.stop();
+            Check.equal(10, machine.getItems().get(0).stock, "Coke is back in stock");
+            Check.isTrue(reader.readLine() == null, "connection is closed");
+        }
+    }
+
+    // Connection idle longer than the idle timeout is closed and its session refunded
+    static void testIdleConnectionRefunded() throws Exception
+    {
+        Machine machine = TestStock.machine(TestStock.directory());
+        CommandServer server = new CommandServer(machine, 0, "stock.xml", "addstock.xml", false);
+        server.setIdleTimeout(200);
+        server.start();
+        try (Socket socket = new Socket("localhost", server.getPort()))
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            writer.println("select 0");
+            reader.readLine();
+            Check.equal(9, machine.getItems().get(0).stock, "Coke is reserved");
+
+            Check.isTrue(reader.readLine() == null, "idle connection is closed");
+            long deadline = System.currentTimeMillis() + 2000;
+            while (machine.getItems().get(0).stock != 10 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+
+            Check.equal(10, machine.getItems().get(0).stock, "Coke is back in stock");
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    // Line longer than a command can be is refused and closes the connection, the session is refunded
+    static void testLongLineRefused() throws Exception
+    {
+        Machine machine = TestStock.machine(TestStock.directory());
+        CommandServer server = new CommandServer(machine, 0, "stock.xml", "addstock.xml", false);
+        server.start();
+        try (Socket socket = new Socket("localhost", server.getPort()))
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            writer.println("select 0" + " ".repeat(248));
+            Check.equal("OK 2.59", reader.readLine(), "longest line is served");
+
+            writer.println("find " + "a".repeat(100000));
+            Check.equal("ERROR Line too long", reader.readLine(), "long line is refused");
+            Check.isTrue(reader.readLine() == null, "connection is closed");
+            long deadline = System.currentTimeMillis() + 2000;
+            while (machine.getItems().get(0).stock != 10 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+
+            Check.equal(10, machine.getItems().get(0).stock, "Coke is back in stock");
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Tests of currency profiles - loading them from the currencies file, amounts and coins written in them
+public class CurrencyProfileTest
+{
+    private static final String CURRENCIES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<currencies>\n"
+            + "    <currency code=\"GBP\" symbol=\"£\" minorUnits=\"2\">\n"
+            + "        <coin value=\"2.00\"/><coin value=\"1.00\"/><coin value=\"0.50\"/><coin value=\"0.20\"/>\n"
+            + "        <coin value=\"0.10\"/><coin value=\"0.05\"/><coin value=\"0.02\"/><coin value=\"0.01\"/>\n"
+            + "    </currency>\n"
+            + "    <currency code=\"JPY\" symbol=\"¥\" minorUnits=\"0\">\n"
+            + "        <coin value=\"1\"/><coin value=\"500\"/><coin value=\"100\"/><coin value=\"50\"/>\n"
+            + "        <coin value=\"10\"/><coin value=\"5\"/>\n"
+            + "    </currency>\n"
+            + "</currencies>\n";
+
+    // Currency is read from the currencies file with its coins biggest first, missing currencies are not found
+    static void testLoad() throws Exception
+    {
+        Path file = TestStock.directory().resolve("currencies.xml");
+        Files.writeString(file, CURRENCIES, StandardCharsets.UTF_8);
+
+        CurrencyProfile gbp = CurrencyProfile.load(file.toString(), "GBP");
+        Check.equal("£", gbp.getSymbol(), "GBP symbol");
+        Check.equal(8, gbp.getCoinCount(), "GBP coins");
+        Check.equal("2.00", gbp.getCoinName(0), "biggest GBP coin");
+        Check.equal(1, gbp.getCoinValue(7), "smallest GBP coin");
+
+        CurrencyProfile jpy = CurrencyProfile.load(file.toString(), "JPY");
+        Check.equal("¥", jpy.getSymbol(), "JPY symbol");
+        Check.equal(6, jpy.getCoinCount(), "JPY coins");
+        Check.equal("500", jpy.getCoinName(0), "biggest JPY coin first");
+        Check.equal("5", jpy.getCoinName(4), "JPY coin without decimals");
+
+        Check.isTrue(CurrencyProfile.load(file.toString(), "USD") == null, "currency missing from the file");
+        Files.writeString(file, CURRENCIES.substring(0, CURRENCIES.length() / 2), StandardCharsets.UTF_8);
+        Check.isTrue(CurrencyProfile.load(file.toString(), "JPY") == null, "currency of a broken file");
+    }
+
+    // Amounts of a currency without decimals are whole numbers, a decimal point is refused
+    static void testNoDecimals()
+    {
+        CurrencyProfile jpy = new CurrencyProfile("JPY", "¥", 0, new String[]{"500", "100", "50", "10", "5", "1"});
+        Check.equal(1234, jpy.parse("1234"), "parsed amount");
+        Check.equal("1234", jpy.format(1234), "formatted amount");
+        Check.equal("-5", jpy.format(-5), "formatted negative amount");
+        Check.equal(0, jpy.getCoinIndex("500"), "biggest coin");
+        Check.equal(5, jpy.getCoinIndex("1"), "smallest coin");
+        Check.equal(-1, jpy.getCoinIndex("1.0"), "coin with decimals");
+        Check.equal(-1, jpy.getCoinIndex("0500"), "coin with leading zero");
+        Check.equal(-1, jpy.getCoinIndex("1000"), "coin bigger than the biggest");
+
+        try
+        {
+            jpy.parse("12.5");
+            Check.isTrue(false, "amount with decimals is parsed");
+        }
+        catch (NumberFormatException e)
+        {
+            Check.equal("Invalid amount: 12.5", e.getMessage(), "refused amount");
+        }
+    }
+
+    // Coins are accepted only written exactly like their names
+    static void testCoinNames()
+    {
+        CurrencyProfile gbp = CurrencyProfile.GBP;
+        Check.equal(2, gbp.getCoinIndex("0.50"), "0.50");
+        Check.equal(0, gbp.getCoinIndex("2.00"), "2.00");
+        String[] refused = {"0.5", "00.10", "2.000", ".50", "2", "0.03", "3.00", "1,00", ""};
+        for (String coin : refused)
+        {
+            Check.equal(-1, gbp.getCoinIndex(coin), "coin \"" + coin + "\"");
+        }
+
+        String[][] invalidCoins = {{"0.50", "0.5"}, {"0.00"}, {}};
+        for (String[] coins : invalidCoins)
+        {
+            try
+            {
+                new CurrencyProfile("XXX", "X", 2, coins);
+                Check.isTrue(false, "currency with coins " + String.join(" ", coins));
+            }
+            catch (IllegalArgumentException e)
+            {
+                Check.isTrue(e.getMessage().startsWith("Invalid"), "refused with " + e.getMessage());
+            }
+        }
+    }
+}
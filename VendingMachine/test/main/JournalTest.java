@@ -0,0 +1,193 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Tests of the stock journal - replay after a crash and checkpoints rotating it while customers refund
+public class JournalTest
+{
+    // Purchases journaled since the stock was saved are replayed by the next start, a record cut by the crash is
+    // dropped
+    static void testReplayAfterCrash() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+        long cashBefore = machine.getCashSum();
+
+        Session session = machine.openSession();
+        machine.selectItem(session, 0);
+        TestStock.pay(machine, session);
+        Check.isTrue(machine.commit(session) != null, "Coke is bought");
+        machine.selectItem(session, 1);
+        machine.addToCart(session, 1);
+        TestStock.pay(machine, session);
+        Check.isTrue(machine.commit(session) != null, "two Sprites are bought");
+
+        // crash in the middle of writing the next record
+        Files.write(journal, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Machine restarted = TestStock.machine(directory);
+        restarted.openJournal(journal.toString());
+        Check.equal(9, restarted.getItems().get(0).stock, "Coke after replay");
+        Check.equal(8, restarted.getItems().get(1).stock, "Sprite after replay");
+        Check.equal(cashBefore + 259 + 400, restarted.getCashSum(), "cash after replay");
+
+        // the broken record is cut off so later records are replayed too
+        session = restarted.openSession();
+        restarted.selectItem(session, 0);
+        TestStock.pay(restarted, session);
+        Check.isTrue(restarted.commit(session) != null, "Coke is bought after restart");
+
+        Machine again = TestStock.machine(directory);
+        again.openJournal(journal.toString());
+        Check.equal(8, again.getItems().get(0).stock, "Coke after second replay");
+    }
+
+    // Checkpoints rotate the journal while other threads refund without the stock lock. Nothing fails and purchases
+    // keep being journaled
+    static void testRotateDuringRefunds() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+        machine.enableCheckpoints(directory.resolve("stock.bin").toString());
+
+        String printed = refundWhile(machine, machine::checkpoint);
+        machine.checkpoint();
+        Check.isTrue(!printed.contains("ERROR"), "no errors, printed " + printed);
+
+        // binary stock and the rest of the journal hold the purchase
+        Machine restarted = new Machine();
+        restarted.setOutput(machine.getOutput());
+        restarted.loadSnapshot(directory.resolve("stock.bin").toString());
+        restarted.openJournal(journal.toString());
+        Check.equal(9, restarted.getItems().get(0).stock, "Coke after restart");
+        Check.equal(10, restarted.getItems().get(1).stock, "Sprite after restart");
+    }
+
+    // Saving stock clears the journal while other threads refund. Nothing fails and the purchase journaled after the
+    // last save is replayed
+    static void testResetDuringRefunds() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        String stockFile = directory.resolve("stock.xml").toString();
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+
+        String printed = refundWhile(machine, () -> machine.saveStock(stockFile));
+        Check.isTrue(!printed.contains("ERROR"), "no errors, printed " + printed);
+
+        Machine restarted = new Machine();
+        restarted.setOutput(machine.getOutput());
+        restarted.restock(stockFile);
+        restarted.openJournal(journal.toString());
+        Check.equal(9, restarted.getItems().get(0).stock, "Coke after restart");
+        Check.equal(machine.getCashSum(), restarted.getCashSum(), "cash after restart");
+    }
+
+    // Purchases are refused once the journal can not be written, the session stays open for a refund
+    static void testFailedJournalStopsSales() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+        machine.enableCheckpoints(directory.resolve("stock.bin").toString());
+
+        Session session = machine.openSession();
+        machine.selectItem(session, 0);
+        TestStock.pay(machine, session);
+
+        // rotating a journal whose directory is gone fails
+        Files.delete(journal);
+        Files.delete(directory.resolve("stock.xml"));
+        Files.delete(directory);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true));
+        try
+        {
+            machine.checkpoint();
+        }
+        finally
+        {
+            System.setOut(console);
+        }
+
+        Check.isTrue(machine.commit(session) == null, "purchase is refused");
+        machine.refund(session);
+        Check.equal(10, machine.getItems().get(0).stock, "Coke is back in stock");
+    }
+
+    // Runs the action over and over while four threads select, insert a coin and refund, then buys Coke
+    // Param - Machine machine - machine with Coke as item 0 and Sprite as item 1
+    // Param - Runnable action - checkpoint or save
+    // Returns - String - printed to the console meanwhile
+    private static String refundWhile(Machine machine, Runnable action) throws InterruptedException
+    {
+        PrintStream console = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try
+        {
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] customers = new Thread[4];
+            long end = System.currentTimeMillis() + 500;
+            for (int t = 0; t < customers.length; t++)
+            {
+                customers[t] = new Thread(() ->
+                {
+                    try
+                    {
+                        Session session = machine.openSession();
+                        while (System.currentTimeMillis() < end)
+                        {
+                            machine.selectItem(session, 1);
+                            machine.insertCoin(session, "1.00");
+                            machine.refund(session);
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                customers[t].start();
+            }
+
+            while (System.currentTimeMillis() < end)
+            {
+                action.run();
+            }
+
+            for (Thread customer : customers)
+            {
+                customer.join();
+            }
+
+            if (failure.get() != null)
+            {
+                throw new AssertionError("refund failed", failure.get());
+            }
+
+            Session session = machine.openSession();
+            machine.selectItem(session, 0);
+            TestStock.pay(machine, session);
+            Check.isTrue(machine.commit(session) != null, "Coke is bought");
+        }
+        finally
+        {
+            System.setOut(console);
+        }
+
+        return printed.toString();
+    }
+}
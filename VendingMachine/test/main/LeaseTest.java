@@ -0,0 +1,79 @@
+package main;
+
+import java.nio.file.Path;
+
+// Tests of stock shared through a stockroom - lease exchanges, their journal records and the stockroom protocol
+public class LeaseTest
+{
+    private static final long NO_PERIODIC_EXCHANGE = 3600000; // exchanges of tests are started by the tests
+
+    // Leased units are sold, given back on power off and journaled on the way, so a restart replays them
+    static void testLeaseRoundTrip() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        LocalInventoryService stockroom = new LocalInventoryService();
+        stockroom.addStock("Coke", 20);
+        stockroom.addStock("Sprite", 20);
+
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+        Pricing pricing = machine.getPricing();
+        machine.shareStock(stockroom, "hall", 5, NO_PERIODIC_EXCHANGE);
+        Check.equal(5, machine.getItems().get(0).stock, "Coke leased");
+        Check.equal(15, stockroom.getStock("Coke"), "Coke left in stockroom");
+        Check.isTrue(machine.getPricing() == pricing, "pricing is not compiled again by leases");
+
+        Session session = machine.openSession();
+        machine.selectItem(session, 0);
+        TestStock.pay(machine, session);
+        Check.isTrue(machine.commit(session) != null, "leased Coke is bought");
+
+        // stock file still says 10, the journal holds the leases and the sale
+        Machine restarted = TestStock.machine(directory);
+        restarted.openJournal(journal.toString());
+        Check.equal(4, restarted.getItems().get(0).stock, "Coke after replay");
+        Check.equal(5, restarted.getItems().get(1).stock, "Sprite after replay");
+
+        Check.isTrue(machine.returnLeases(), "leases are given back");
+        Check.equal(0, machine.getItems().get(0).stock, "Coke after giving back");
+        Check.equal(19, stockroom.getStock("Coke"), "Coke back in stockroom");
+        Check.equal(20, stockroom.getStock("Sprite"), "Sprite back in stockroom");
+
+        Machine again = TestStock.machine(directory);
+        again.openJournal(journal.toString());
+        Check.equal(0, again.getItems().get(0).stock, "Coke after second replay");
+        Check.equal(0, again.getItems().get(1).stock, "Sprite after second replay");
+    }
+
+    // Machine reaches the stockroom of another process through the stockroom server
+    static void testRemoteStockroom() throws Exception
+    {
+        LocalInventoryService stockroom = new LocalInventoryService();
+        stockroom.addStock("Coke", 3);
+        InventoryServer server = new InventoryServer(stockroom, 0);
+        server.start();
+        RemoteInventoryService remote = new RemoteInventoryService("localhost", server.getPort());
+        try
+        {
+            Machine machine = TestStock.machine(TestStock.directory());
+            machine.shareStock(remote, "hall", 5, NO_PERIODIC_EXCHANGE);
+            Check.equal(3, machine.getItems().get(0).stock, "Coke leased up to the stockroom stock");
+            Check.equal(0, machine.getItems().get(1).stock, "Sprite is not in the stockroom");
+
+            Session session = machine.openSession();
+            machine.selectItem(session, 0);
+            TestStock.pay(machine, session);
+            Check.isTrue(machine.commit(session) != null, "leased Coke is bought");
+
+            Check.isTrue(machine.returnLeases(), "leases are given back");
+            Check.equal(2, stockroom.getStock("Coke"), "unsold Coke back in stockroom");
+            Check.equal(0, remote.getLeased("hall", new String[]{"Coke"})[0], "nothing leased after giving back");
+        }
+        finally
+        {
+            remote.close();
+            server.stop();
+        }
+    }
+}
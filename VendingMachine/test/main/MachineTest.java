@@ -0,0 +1,288 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+// Tests of purchases through customer sessions. Purchases and refunds are checked with heap and columnar catalogs
+public class MachineTest
+{
+    // Commit with less money than due sells nothing and takes no coins, paying the rest completes it
+    static void testUnderpaidCommit() throws Exception
+    {
+        for (Catalog catalog : catalogs())
+        {
+            Machine machine = TestStock.machine(TestStock.directory(), catalog);
+            long cashBefore = machine.getCashSum();
+            Session session = machine.openSession();
+
+            Check.isTrue(machine.selectItem(session, 0), "Coke is selected");
+            Check.isTrue(machine.insertCoin(session, "1.00"), "coin is accepted");
+            Check.isTrue(machine.commit(session) == null, "underpaid commit fails");
+            Check.equal(cashBefore, machine.getCashSum(), "cash after underpaid commit");
+            Check.equal(9, machine.getItems().get(0).stock, "Coke stays reserved");
+            Check.equal(159, machine.getRemainingAmount(session), "remaining amount");
+
+            TestStock.pay(machine, session);
+            Check.isTrue(machine.commit(session) != null, "paid commit succeeds");
+            Check.equal(cashBefore + 259, machine.getCashSum(), "cash after purchase");
+            Check.equal(9, machine.getItems().get(0).stock, "Coke is sold");
+        }
+    }
+
+    // Refund of an underpaid session gives the coins back and puts the item back into stock
+    static void testUnderpaidRefund() throws Exception
+    {
+        for (Catalog catalog : catalogs())
+        {
+            Machine machine = TestStock.machine(TestStock.directory(), catalog);
+            Session session = machine.openSession();
+            machine.selectItem(session, 1);
+            machine.insertCoin(session, "0.50");
+
+            int[] refunded = machine.refund(session);
+            for (int i = 0; i < refunded.length; i++)
+            {
+                String coin = machine.getCoinName(i);
+                Check.equal(coin.equals("0.50") ? 1 : 0, refunded[i], "refunded " + coin);
+            }
+
+            Check.equal(10, machine.getItems().get(1).stock, "Sprite is back in stock");
+        }
+    }
+
+    // Change is given with the fewest coins
+    static void testChange() throws Exception
+    {
+        for (Catalog catalog : catalogs())
+        {
+            Machine machine = TestStock.machine(TestStock.directory(), catalog);
+            Session session = machine.openSession();
+            machine.selectItem(session, 0);
+            machine.insertCoin(session, "2.00");
+            machine.insertCoin(session, "1.00");
+
+            int[] change = machine.commit(session);
+            Check.isTrue(change != null, "purchase succeeds");
+
+            long sum = 0;
+            int count = 0;
+            for (int i = 0; i < change.length; i++)
+            {
+                sum += change[i] * Money.parse(machine.getCoinName(i));
+                count += change[i];
+            }
+
+            Check.equal(41, sum, "change sum");
+            Check.equal(3, count, "change coins - 0.20, 0.20, 0.01");
+        }
+    }
+
+    // Cart whose change is gone by the time it is bought keeps every item reserved and takes no coin, its refund
+    // puts all items back and gives back every coin
+    static void testCartWithoutChange() throws Exception
+    {
+        for (Catalog catalog : catalogs())
+        {
+            Machine machine = TestStock.machine(TestStock.directory(), catalog);
+            machine.restock(onePenny(TestStock.directory()));
+            Session cart = machine.openSession();
+            machine.selectItem(cart, 0);
+            machine.addToCart(cart, 1);
+            for (String coin : new String[]{"2.00", "2.00", "0.50", "0.10"})
+            {
+                Check.isTrue(machine.insertCoin(cart, coin), coin + " is accepted while the penny is there");
+            }
+
+            // another customer gets the only penny as change first
+            Session other = machine.openSession();
+            machine.selectItem(other, 0);
+            for (String coin : new String[]{"2.00", "0.50", "0.10"})
+            {
+                machine.insertCoin(other, coin);
+            }
+
+            Check.isTrue(machine.commit(other) != null, "other customer gets the penny");
+            long cash = machine.getCashSum();
+
+            Check.isTrue(machine.commit(cart) == null, "cart without change is not bought");
+            Check.equal(cash, machine.getCashSum(), "cash after failed cart");
+            Check.equal(8, machine.getItems().get(0).stock, "Coke of the cart stays reserved");
+            Check.equal(9, machine.getItems().get(1).stock, "Sprite of the cart stays reserved");
+            Check.equal(460, machine.getInsertedAmount(cart), "coins of the cart stay inserted");
+
+            int[] refunded = machine.refund(cart);
+            Check.equal(cash, machine.getCashSum(), "cash after refund");
+            Check.equal(9, machine.getItems().get(0).stock, "Coke after refund");
+            Check.equal(10, machine.getItems().get(1).stock, "Sprite after refund");
+            Check.equal(2, refunded[0], "2.00 coins refunded");
+            Check.equal(1, refunded[2], "0.50 coins refunded");
+            Check.equal(1, refunded[4], "0.10 coins refunded");
+            Check.equal(0, machine.getInsertedAmount(cart), "nothing inserted after refund");
+        }
+    }
+
+    // Coin leaving change the coin stock can not give is rejected, the coins after it making the amount exact are
+    // accepted. Customers are warned to pay exact amount only when the biggest coins would leave such change
+    static void testCoinsWithoutChange() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Machine machine = TestStock.machine(directory);
+        Session session = machine.openSession();
+        machine.selectItem(session, 0);
+        Check.isTrue(!machine.needsExactChange(session), "Coke needs no exact amount with full coin stock");
+        Check.isTrue(machine.insertCoin(session, "2.00"), "2.00 with full coin stock");
+        Check.isTrue(machine.insertCoin(session, "1.00"), "1.00 leaving change with full coin stock");
+        machine.refund(session);
+
+        // only a penny for change, 2.59 paid with 2.00 and 1.00 would need 0.41
+        machine.restock(onePenny(directory));
+        machine.selectItem(session, 0);
+        Check.isTrue(machine.needsExactChange(session), "Coke needs exact amount without change");
+        Check.isTrue(machine.insertCoin(session, "2.00"), "2.00 leaving nothing to change");
+        Check.isTrue(!machine.insertCoin(session, "1.00"), "1.00 leaving 0.41 change");
+        Check.isTrue(machine.insertCoin(session, "0.50"), "0.50 leaving 0.09 to pay");
+        Check.isTrue(!machine.insertCoin(session, "0.20"), "0.20 leaving 0.11 change");
+        Check.isTrue(machine.insertCoin(session, "0.10"), "0.10 leaving the penny as change");
+        Check.equal(-1, machine.getRemainingAmount(session), "penny of change due");
+        Check.isTrue(machine.commit(session) != null, "Coke is bought with the penny as change");
+
+        // Sprite is paid exactly with the biggest coin
+        machine.selectItem(session, 1);
+        Check.isTrue(!machine.needsExactChange(session), "Sprite needs no change");
+        Check.isTrue(machine.insertCoin(session, "2.00"), "2.00 for Sprite");
+        Check.isTrue(machine.commit(session) != null, "Sprite is bought");
+    }
+
+    // Stock gauges follow reservations, refunds, purchases and restocks like snapshots do
+    static void testStockGauges() throws Exception
+    {
+        for (Catalog catalog : catalogs())
+        {
+            Path directory = TestStock.directory();
+            Machine machine = TestStock.machine(directory, catalog);
+            Check.equal(20, machine.getItemUnitsInStock(), "units after restock");
+
+            Session session = machine.openSession();
+            machine.selectItem(session, 0);
+            machine.addToCart(session, 1);
+            Check.equal(18, machine.getItemUnitsInStock(), "units after reserving two");
+            Check.equal(machine.getInventory().getItemUnits(), machine.getItemUnitsInStock(), "units of snapshot");
+
+            machine.refund(session);
+            Check.equal(20, machine.getItemUnitsInStock(), "units after refund");
+
+            long cash = machine.getCashSum();
+            machine.selectItem(session, 1);
+            TestStock.pay(machine, session);
+            machine.commit(session);
+            Check.equal(19, machine.getItemUnitsInStock(), "units after purchase");
+            Check.equal(cash + 200, machine.getCashSum(), "cash after purchase");
+            Check.equal(machine.getInventory().getCashSum(), machine.getCashSum(), "cash of snapshot");
+
+            machine.restock(TestStock.write(directory.resolve("more.xml"), new String[]{"Coke"}, new String[]{"2.59"},
+                    new int[]{5}, 1));
+            Check.equal(5, machine.getItemUnitsInStock(), "units after another restock");
+            Check.equal(machine.getInventory().getItemUnits(), machine.getItemUnitsInStock(), "units of new snapshot");
+        }
+    }
+
+    // Sales listeners get purchases and refunds in order on the dispatcher thread, a listener that is stuck does
+    // not hold up customers
+    static void testSalesListenersOffCustomerThread() throws Exception
+    {
+        Machine machine = TestStock.machine(TestStock.directory());
+        CountDownLatch stuck = new CountDownLatch(1);
+        ArrayList<String> heard = new ArrayList<>();
+        machine.addSalesListener(event ->
+        {
+            try
+            {
+                stuck.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            heard.add(event.type + " " + String.join(",", event.items) + " " + event.coinsIn[1]);
+        });
+
+        Session session = machine.openSession();
+        for (int i = 0; i < 3; i++)
+        {
+            machine.selectItem(session, i % 2);
+            TestStock.pay(machine, session);
+            Check.isTrue(machine.commit(session) != null, "purchase " + i + " while the listener is stuck");
+        }
+
+        machine.selectItem(session, 1);
+        machine.insertCoin(session, "1.00");
+        machine.refund(session);
+
+        stuck.countDown();
+        machine.flushSales();
+        Check.equal("[1 Coke 0, 1 Sprite 0, 1 Coke 0, 2 Sprite 1]", heard.toString(), "events heard");
+        Check.equal(3, machine.getSales().getTotal(0).purchases, "purchases of the last minute");
+    }
+
+    // Select, insert and commit allocate nothing once warmed up, also when coins below their change table caps
+    // change on every purchase
+    static void testSteadyStateAllocatesNothing() throws Exception
+    {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+        {
+            return;
+        }
+
+        Path directory = TestStock.directory();
+        Machine machine = TestStock.machine(directory);
+        machine.restock(TestStock.write(directory.resolve("big.xml"), new String[]{"Coke", "Sprite"},
+                new String[]{"2.59", "2.00"}, new int[]{2000, 2000}, 2000));
+        Session session = machine.openSession();
+        long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        int failed = 0;
+
+        // each purchase gives 0.41 change, using up one of the pennies, which stay below their table cap. Warming up
+        // goes once round the ring of the sales dispatcher, whose events get their item arrays on first use
+        for (int i = 0; i < 1500; i++)
+        {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            machine.selectItem(session, 0);
+            machine.insertCoin(session, "2.00");
+            machine.insertCoin(session, "1.00");
+            failed += machine.commit(session) == null ? 1 : 0; // messages of checks would allocate
+            if (i >= 1200)
+            {
+                allocated += threads.getThreadAllocatedBytes(threadId) - before;
+            }
+        }
+
+        Check.equal(0, failed, "failed purchases");
+
+        // a few bytes are allowed for anything the JVM allocates on the side, rebuilt tables used to take 40 KB
+        Check.isTrue(allocated < 1024, "allocated " + allocated + " bytes in 300 purchases");
+    }
+
+    // Writes stock file of Coke 2.59 and Sprite 2.00, 10 of each, with a single penny for change
+    // Param - Path directory - directory of the stock file
+    // Returns - String - stock file location
+    private static String onePenny(Path directory) throws Exception
+    {
+        Path file = directory.resolve("penny.xml");
+        Files.writeString(file, "<wendingMachineStock><items>"
+                + "<item name=\"Coke\" price=\"2.59\" stock=\"10\"/>"
+                + "<item name=\"Sprite\" price=\"2.00\" stock=\"10\"/>"
+                + "</items><coins><coin stock=\"1\" value=\"0.01\"/></coins></wendingMachineStock>");
+        return file.toString();
+    }
+
+    // Creates one empty catalog of each kind
+    // Returns - Catalog[] - heap and columnar catalog
+    private static Catalog[] catalogs(){return new Catalog[]{new HeapCatalog(), new ColumnarCatalog()};}
+}
@@ -0,0 +1,88 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+// Tests of promotions and bundles
+public class PricingTest
+{
+    // Item lists of the console and kiosks show the promoted price customers are charged
+    static void testPromotionShown() throws Exception
+    {
+        Machine machine = TestStock.machine(TestStock.directory());
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        machine.setOutput(new ConsoleSink(new PrintStream(printed, true, StandardCharsets.UTF_8)));
+        machine.printAllItems(); // rendered before the promotion and cached
+
+        PricingRules rules = new PricingRules();
+        rules.addPromotion("Coke", 0, 1440, -1, 10);
+        machine.setPricingRules(rules);
+
+        printed.reset();
+        machine.printAllItems();
+        Check.isTrue(printed.toString(StandardCharsets.UTF_8).contains("Coke\tprice: " + Money.display(234)),
+                "console shows promoted price, printed " + printed);
+
+        Session session = machine.openSession();
+        machine.selectItem(session, 0);
+        Check.equal(234, machine.getDueAmount(session), "customer is charged the promoted price");
+
+        CommandServer server = new CommandServer(machine, 0, "stock.xml", "addstock.xml", false);
+        server.start();
+        try (Socket socket = new Socket("localhost", server.getPort()))
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            writer.println("view");
+            Check.equal("OK 2", reader.readLine(), "view lines");
+            Check.equal("0\tCoke\t2.34\t9", reader.readLine(), "kiosk view shows promoted price");
+            reader.readLine();
+
+            writer.println("find cok");
+            Check.equal("OK 1", reader.readLine(), "find lines");
+            Check.equal("0\tCoke\t2.34\t9", reader.readLine(), "kiosk find shows promoted price");
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    // Bundles are found in carts of any length, each cart line is in one bundle at most
+    static void testBundleInLongCart() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Machine machine = TestStock.machine(directory);
+        machine.restock(TestStock.write(directory.resolve("big.xml"), new String[]{"Coke", "Sprite", "Water"},
+                new String[]{"2.59", "2.00", "1.00"}, new int[]{100, 100, 100}, 100));
+
+        PricingRules rules = new PricingRules();
+        rules.addBundle(new String[]{"Coke", "Sprite"}, 400);
+        machine.setPricingRules(rules);
+
+        Session session = machine.openSession();
+        machine.selectItem(session, 2);
+        for (int i = 1; i < 70; i++)
+        {
+            machine.addToCart(session, 2);
+        }
+
+        machine.addToCart(session, 0);
+        machine.addToCart(session, 1);
+        Check.equal(70 * 100 + 400, machine.getDueAmount(session), "Coke and Sprite after 70 lines are a bundle");
+
+        machine.addToCart(session, 1);
+        Check.equal(70 * 100 + 400 + 200, machine.getDueAmount(session), "second Sprite has no Coke left");
+
+        machine.addToCart(session, 0);
+        Check.equal(70 * 100 + 800, machine.getDueAmount(session), "second Coke completes another bundle");
+    }
+}
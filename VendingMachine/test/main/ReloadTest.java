@@ -0,0 +1,141 @@
+package main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Tests of stock files read into a running machine
+public class ReloadTest
+{
+    // Items and coins changed by a reload are journaled on their own and replayed by the next start
+    static void testReloadReplay() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+
+        String reload = TestStock.write(directory.resolve("reload.xml"), new String[]{"Coke", "Sprite", "Fanta"},
+                new String[]{"3.00", "2.00", "1.50"}, new int[]{6, 10, 4}, 50);
+        machine.reloadStock(reload);
+        Pricing pricing = machine.getPricing();
+        Check.equal("[2]", Arrays.toString(machine.findItems("fanta", 10)), "new item is searchable");
+
+        // only Sprite changes, nothing is added so pricing stays
+        TestStock.write(directory.resolve("reload.xml"), new String[]{"Coke", "Sprite", "Fanta"},
+                new String[]{"3.00", "2.00", "1.50"}, new int[]{6, 7, 4}, 50);
+        machine.reloadStock(reload);
+        Check.isTrue(machine.getPricing() == pricing, "pricing is not compiled again without new items");
+        long cash = machine.getCashSum();
+
+        Machine restarted = TestStock.machine(directory);
+        restarted.openJournal(journal.toString());
+        Check.equal(3, restarted.getItems().size(), "items after replay");
+        Check.equal(300, restarted.getItems().get(0).price, "Coke price after replay");
+        Check.equal(6, restarted.getItems().get(0).stock, "Coke after replay");
+        Check.equal(7, restarted.getItems().get(1).stock, "Sprite after replay");
+        Check.equal(4, restarted.getItems().get(2).stock, "Fanta after replay");
+        Check.equal(cash, restarted.getCashSum(), "cash after replay");
+    }
+
+    // Reload takes units reserved by customers from the file stock, leaves items missing from the file without stock
+    // under their IDs and coins missing from the file without coins, like restock does
+    static void testReconcile() throws Exception
+    {
+        Catalog catalog = new HeapCatalog();
+        Cashier cashier = new Cashier();
+        StockController stock = new StockController(catalog, cashier);
+        catalog.add("Coke", 259, 10);
+        catalog.add("Fanta", 150, 5);
+        catalog.add("Sprite", 200, 10);
+        for (int i = 0; i < cashier.getCoinCount(); i++)
+        {
+            cashier.stockCoin(cashier.getCoinName(i), 5);
+        }
+
+        catalog.reserve(0);
+        catalog.reserve(0);
+
+        ArrayList<Item> fileItems = new ArrayList<>();
+        fileItems.add(new Item("Sprite", 200, 10));
+        fileItems.add(new Item("Coke", 259, 10));
+        int[] fileCoins = cashier.getCoinStock();
+        fileCoins[0] = 0;
+
+        ArrayList<Integer> changedIds = new ArrayList<>();
+        ArrayList<Integer> changedCoins = new ArrayList<>();
+        Check.equal(2, stock.reconcile(fileItems, fileCoins, changedIds, changedCoins), "changes");
+        Check.equal("[1]", changedIds.toString(), "changed items");
+        Check.equal("[0]", changedCoins.toString(), "changed coins");
+        Check.equal(8, catalog.getStock(0), "Coke without the reserved units");
+        Check.equal(2, catalog.getReserved(0), "Coke reservations stay");
+        Check.equal("Fanta", catalog.getName(1), "Fanta keeps its ID");
+        Check.equal(0, catalog.getStock(1), "Fanta missing from the file");
+        Check.equal("Sprite", catalog.getName(2), "Sprite keeps its ID");
+        Check.equal(0, cashier.getCoinStock()[0], "coin missing from the file");
+        Check.equal(5, cashier.getCoinStock()[1], "coin in the file");
+
+        changedIds.clear();
+        changedCoins.clear();
+        Check.equal(0, stock.reconcile(fileItems, fileCoins, changedIds, changedCoins), "changes of the same file");
+
+        // restock leaves the coin missing from the file without coins as well
+        Path directory = TestStock.directory();
+        String restock = TestStock.write(directory.resolve("restock.xml"), new String[]{"Coke"},
+                new String[]{"2.59"}, new int[]{10}, 5);
+        Files.writeString(Path.of(restock), Files.readString(Path.of(restock))
+                .replace("<coin stock=\"5\" value=\"" + cashier.getCoinName(0) + "\"/>", ""));
+        cashier.stockCoin(cashier.getCoinName(0), 5);
+        stock.restock(restock);
+        Check.equal(0, cashier.getCoinStock()[0], "coin missing from the restock file");
+        Check.equal(5, cashier.getCoinStock()[1], "coin in the restock file");
+    }
+
+    // Reload of a file matching the stock journals nothing
+    static void testMatchingReloadNotJournaled() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Path journal = directory.resolve("stock.journal");
+        Machine machine = TestStock.machine(directory);
+        machine.openJournal(journal.toString());
+
+        String reload = TestStock.write(directory.resolve("reload.xml"), new String[]{"Coke", "Sprite"},
+                new String[]{"2.59", "2.00"}, new int[]{10, 10}, 100);
+        machine.reloadStock(reload);
+        Check.equal(0, Files.size(journal), "journal after reloading the same stock");
+
+        TestStock.write(directory.resolve("reload.xml"), new String[]{"Coke", "Sprite"},
+                new String[]{"2.59", "2.00"}, new int[]{10, 9}, 100);
+        machine.reloadStock(reload);
+        Check.isTrue(Files.size(journal) > 0, "changed stock is journaled");
+    }
+
+    // Add stock file broken after its first items adds nothing at all
+    static void testBrokenAddStock() throws Exception
+    {
+        Path directory = TestStock.directory();
+        Machine machine = TestStock.machine(directory);
+        long cash = machine.getCashSum();
+        Path addStock = directory.resolve("addStock.xml");
+        Files.writeString(addStock, "<wendingMachineStock><items>"
+                + "<item name=\"Coke\" price=\"2.59\" stock=\"5\"/>"
+                + "<item name=\"Fanta\" price=\"1.50\" stock=\"5\"/>"
+                + "<item name=\"Sprite\" price=\"two\" stock=\"5\"/>"
+                + "</items><coins><coin stock=\"5\" value=\"0.01\"/></coins></wendingMachineStock>");
+
+        Check.isTrue(!machine.addStock(addStock.toString()), "broken file is refused");
+        Check.equal(2, machine.getItems().size(), "items after broken file");
+        Check.equal(10, machine.getItems().get(0).stock, "Coke after broken file");
+        Check.equal(cash, machine.getCashSum(), "cash after broken file");
+
+        Files.writeString(addStock, "<wendingMachineStock><items>"
+                + "<item name=\"Coke\" price=\"2.59\" stock=\"5\"/>"
+                + "<item name=\"Fanta\" price=\"1.50\" stock=\"5\"/>"
+                + "</items><coins><coin stock=\"5\" value=\"0.01\"/></coins></wendingMachineStock>");
+        Check.isTrue(machine.addStock(addStock.toString()), "fixed file is added");
+        Check.equal(15, machine.getItems().get(0).stock, "Coke after fixed file");
+        Check.equal(5, machine.getItems().get(2).stock, "Fanta after fixed file");
+        Check.equal(cash + 5, machine.getCashSum(), "cash after fixed file");
+    }
+}
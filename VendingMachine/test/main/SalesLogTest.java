@@ -0,0 +1,118 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Tests of daily sales log files
+public class SalesLogTest
+{
+    // Events go into files of their days, also when they arrive after the next day has started
+    static void testLateEvents() throws Exception
+    {
+        Path directory = TestStock.directory();
+        SalesLog log = new SalesLog(directory.toString());
+        LocalDate day = LocalDate.of(2024, 3, 1);
+
+        log.onSale(event(day, 10));
+        log.onSale(event(day.plusDays(1), 9));
+        log.onSale(event(day, 23)); // late sale of the first day
+        log.onSale(event(day.plusDays(1), 11));
+        log.flush();
+
+        Check.equal(2, lines(directory, day), "sales of the first day");
+        Check.equal(2, lines(directory, day.plusDays(1)), "sales of the second day");
+
+        SalesSummary first = SalesLog.query(directory.toString(), millis(day, 0), millis(day.plusDays(1), 0), 8);
+        Check.equal(2, first.purchases, "purchases of the first day by query");
+    }
+
+    // Writer threads of closed days stop, so a log running for many days keeps one
+    static void testRolloverStopsWriters() throws Exception
+    {
+        Path directory = TestStock.directory();
+        SalesLog log = new SalesLog(directory.toString());
+        LocalDate day = LocalDate.of(2024, 3, 1);
+
+        log.onSale(event(day, 12));
+        int writers = writerThreads();
+        for (int i = 1; i <= 30; i++)
+        {
+            log.onSale(event(day.plusDays(i), 12));
+        }
+
+        log.flush();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (writerThreads() > writers && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        Check.equal(writers, writerThreads(), "writer threads after 30 days");
+        Check.equal(1, lines(directory, day.plusDays(30)), "sales of the last day");
+    }
+
+    // Logs of a machine working in another currency are summed in that currency and refused in the wrong one
+    static void testOtherCurrency() throws Exception
+    {
+        Path directory = TestStock.directory();
+        SalesLog log = new SalesLog(directory.toString());
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        CurrencyProfile usd = new CurrencyProfile("USD", "$", 2,
+                new String[]{"1.00", "0.50", "0.25", "0.10", "0.05", "0.01"});
+        int[] coinsIn = {2, 1, 0, 1, 0, 0};
+        log.onSale(new SaleEvent(SaleEvent.SALE, millis(day, 10), new String[]{"Coke"}, new long[]{259}, coinsIn,
+                new int[]{0, 0, 0, 0, 0, 1}));
+        log.flush();
+
+        SalesSummary summary = SalesLog.query(directory.toString(), millis(day, 0), millis(day.plusDays(1), 0),
+                usd.getCoinCount());
+        Check.equal("  coins in/out 1.00 2/0 0.50 1/0 0.25 0/0 0.10 1/0 0.05 0/0 0.01 0/1",
+                summary.report(usd, 5).get(2), "coins of the report");
+
+        try
+        {
+            SalesLog.query(directory.toString(), millis(day, 0), millis(day.plusDays(1), 0), 8);
+            Check.isTrue(false, "log is summed with 8 coin denominations");
+        }
+        catch (IllegalArgumentException e)
+        {
+            Check.isTrue(e.getMessage().contains("has 6 coin denominations"), "refused with " + e.getMessage());
+        }
+    }
+
+    // Param - LocalDate day - day of the sale
+    // Param - int hour - hour of the sale
+    // Returns - SaleEvent - sale of one Coke
+    private static SaleEvent event(LocalDate day, int hour)
+    {
+        return new SaleEvent(SaleEvent.SALE, millis(day, hour), new String[]{"Coke"}, new long[]{259},
+                new int[8], new int[8]);
+    }
+
+    // Returns - long - epoch milliseconds of the hour of the day
+    private static long millis(LocalDate day, int hour)
+    {
+        return day.atTime(hour, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Returns - int - amount of lines in the log file of the day
+    private static int lines(Path directory, LocalDate day) throws Exception
+    {
+        return Files.readAllLines(directory.resolve("sales-" + day + ".log"), StandardCharsets.UTF_8).size();
+    }
+
+    // Returns - int - amount of running output writer threads
+    private static int writerThreads()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            count += thread.getName().equals("output-writer") && thread.isAlive() ? 1 : 0;
+        }
+
+        return count;
+    }
+}
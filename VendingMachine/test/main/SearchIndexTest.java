@@ -0,0 +1,115 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Tests of item search by name - prefixes, parts of names, typos and a catalog that grows between searches
+public class SearchIndexTest
+{
+    private static final String[] WORDS = {"cola", "zero", "cherry", "orange", "lemon", "lime", "tea", "water"};
+
+    // Names starting with the query come first in name order, then names containing it, case is ignored
+    static void testPrefixAndContains()
+    {
+        Catalog catalog = catalog("Sprite", "Coke Zero", "Cherry Coke", "Coke", "Fanta Orange");
+        SearchIndex index = new SearchIndex();
+        index.update(catalog);
+
+        Check.equal("[3, 1]", Arrays.toString(index.find("co", 10)), "short prefix");
+        Check.equal("[3, 1, 2]", Arrays.toString(index.find("COKE", 10)), "prefix, then contained");
+        Check.equal("[3]", Arrays.toString(index.find("coke", 1)), "limited");
+        Check.equal("[4]", Arrays.toString(index.find(" orange ", 10)), "contained");
+        Check.equal("[]", Arrays.toString(index.find("juice", 10)), "nothing like it");
+    }
+
+    // Names sharing most trigrams are found only when no name contains the query
+    static void testTypo()
+    {
+        Catalog catalog = catalog("Sprite", "Fanta Orange", "Fanta Lemon");
+        SearchIndex index = new SearchIndex();
+        index.update(catalog);
+
+        Check.equal("[1]", Arrays.toString(index.find("fanta ornge", 10)), "typo");
+        Check.equal("[2, 1]", Arrays.toString(index.find("fanta", 10)), "no typo search with exact matches");
+    }
+
+    // Items added to the catalog are found after the next update, replaced items are indexed again
+    static void testUpdate()
+    {
+        Catalog catalog = catalog("Coke", "Sprite");
+        SearchIndex index = new SearchIndex();
+        index.update(catalog);
+        catalog.add("Cola Light", 200, 1);
+        catalog.add("Apple Juice", 200, 1);
+        index.update(catalog);
+
+        Check.equal(4, index.size(), "indexed items");
+        Check.equal("[0, 2]", Arrays.toString(index.find("co", 10)), "new item in name order");
+        Check.equal("[3]", Arrays.toString(index.find("juice", 10)), "new item contained");
+
+        catalog.clear();
+        catalog.add("Water", 100, 1);
+        index.update(catalog);
+        Check.equal(1, index.size(), "indexed items after replace");
+        Check.equal("[]", Arrays.toString(index.find("coke", 10)), "replaced item");
+        Check.equal("[0]", Arrays.toString(index.find("wat", 10)), "replacing item");
+    }
+
+    // Found items are compared with names checked one by one, for a catalog indexed in several updates
+    static void testAgainstScan()
+    {
+        Random random = new Random(11);
+        Catalog catalog = new HeapCatalog();
+        SearchIndex index = new SearchIndex();
+        for (int id = 0; id < 3000; id++)
+        {
+            catalog.add(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id,
+                    100, 1);
+            if (id % 700 == 0)
+            {
+                index.update(catalog);
+            }
+        }
+
+        index.update(catalog);
+        String[] queries = {"col", "cola", "ola ze", "lime tea", "water 2", "rry or", "123"};
+        for (String query : queries)
+        {
+            int[] found = index.find(query, catalog.size());
+            int starting = 0;
+            int containing = 0;
+            for (int id = 0; id < catalog.size(); id++)
+            {
+                String name = catalog.getName(id);
+                starting += name.startsWith(query) ? 1 : 0;
+                containing += name.contains(query) ? 1 : 0;
+            }
+
+            Check.equal(containing, found.length, "items found by " + query);
+            for (int i = 0; i < found.length; i++)
+            {
+                String name = catalog.getName(found[i]);
+                Check.isTrue(name.contains(query), name + " contains " + query);
+                Check.equal(i < starting, name.startsWith(query), name + " position for " + query);
+                if (i > 0 && i < starting)
+                {
+                    Check.isTrue(catalog.getName(found[i - 1]).compareTo(name) <= 0, "name order for " + query);
+                }
+            }
+        }
+    }
+
+    // Creates catalog of items with the given names
+    // Param - String... names - item names
+    // Returns - Catalog - items in the given order
+    private static Catalog catalog(String... names)
+    {
+        Catalog catalog = new HeapCatalog();
+        for (String name : names)
+        {
+            catalog.add(name, 100, 1);
+        }
+
+        return catalog;
+    }
+}
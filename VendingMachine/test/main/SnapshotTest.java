@@ -0,0 +1,116 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Tests of the binary stock file - layout, conversion from and to xml and checkpoint updates in place
+public class SnapshotTest
+{
+    private static final String[] NAMES = {"Coke", "Café Crème"};
+    private static final long[] PRICES = {259, 150};
+    private static final int[] STOCKS = {10, 3};
+
+    // Xml stock converted to binary and back keeps items, prices and coins. Header and records are where the
+    // layout puts them
+    static void testConvertRoundTrip() throws Exception
+    {
+        Path directory = TestStock.directory();
+        String xml = TestStock.write(directory.resolve("stock.xml"), NAMES, new String[]{"2.59", "1.50"}, STOCKS, 7);
+        Path binary = directory.resolve("stock.bin");
+        SnapshotConverter.main(new String[]{"toBinary", xml, binary.toString()});
+
+        int coinCount = Money.getCurrency().getCoinCount();
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(binary));
+        Check.equal(Snapshot.MAGIC, file.getInt(0), "magic");
+        Check.equal(Snapshot.VERSION, file.getInt(4), "version");
+        Check.equal(coinCount, file.getInt(16), "coin count");
+        Check.equal(2, file.getInt(20), "item count");
+        Check.equal(7, file.getInt(Snapshot.coinOffset(coinCount - 1) + 8), "stock of the last coin");
+        Check.equal(150, file.getLong(Snapshot.itemOffset(coinCount, 1)), "price of the second item");
+        int namesSize = NAMES[0].length() + NAMES[1].getBytes(StandardCharsets.UTF_8).length;
+        Check.equal(Snapshot.itemOffset(coinCount, 2) + namesSize, file.capacity(), "file size");
+
+        Catalog loaded = new ColumnarCatalog();
+        Cashier loadedCashier = new Cashier();
+        new StockController(loaded, loadedCashier).loadSnapshot(binary.toString());
+        checkStock(loaded, loadedCashier, 7);
+
+        Path converted = directory.resolve("converted.xml");
+        SnapshotConverter.main(new String[]{"toXml", binary.toString(), converted.toString()});
+        Catalog restocked = new HeapCatalog();
+        Cashier restockedCashier = new Cashier();
+        new StockController(restocked, restockedCashier).restock(converted.toString());
+        checkStock(restocked, restockedCashier, 7);
+    }
+
+    // Checkpoint updates only changed records and moves the header sequence after them
+    static void testUpdateInPlace() throws Exception
+    {
+        Path binary = TestStock.directory().resolve("stock.bin");
+        int coinCount = Money.getCurrency().getCoinCount();
+        long[] coinValues = new long[coinCount];
+        int[] coinStock = new int[coinCount];
+        for (int i = 0; i < coinCount; i++)
+        {
+            coinValues[i] = Money.parse(Money.getCurrency().getCoinName(i));
+            coinStock[i] = 7;
+        }
+
+        Snapshot.write(binary.toString(), NAMES, PRICES, STOCKS, NAMES.length, coinValues, coinStock, 3);
+        coinStock[0] = 2;
+        Snapshot.update(binary.toString(), new int[]{1}, new long[]{175}, new int[]{1}, 1, new int[]{0}, coinStock,
+                1, 9);
+
+        Catalog catalog = new HeapCatalog();
+        Cashier cashier = new Cashier();
+        StockController loaded = new StockController(catalog, cashier);
+        loaded.loadSnapshot(binary.toString());
+        Check.equal(9, loaded.getJournalSequence(), "header sequence");
+        Check.equal(3, catalog.getSavedSequence(0), "unchanged item sequence");
+        Check.equal(9, catalog.getSavedSequence(1), "changed item sequence");
+        Check.equal(259, catalog.getPrice(0), "unchanged price");
+        Check.equal(175, catalog.getPrice(1), "changed price");
+        Check.equal(1, catalog.getStock(1), "changed stock");
+        Check.equal(2, cashier.getCoinStock()[0], "changed coin");
+        Check.equal(7, cashier.getCoinStock()[1], "unchanged coin");
+    }
+
+    // Files that are not binary stock are refused
+    static void testNotSnapshot() throws Exception
+    {
+        Path directory = TestStock.directory();
+        String xml = TestStock.write(directory.resolve("stock.xml"), NAMES, new String[]{"2.59", "1.50"}, STOCKS, 7);
+        try
+        {
+            Snapshot.read(xml, new StockController(new HeapCatalog(), new Cashier()));
+            Check.isTrue(false, "xml file is read as binary stock");
+        }
+        catch (IOException e)
+        {
+            Check.isTrue(e.getMessage().startsWith("Not a stock snapshot"), "refused with " + e.getMessage());
+        }
+    }
+
+    // Checks items of the test stock and coins
+    // Param - Catalog catalog - loaded items
+    // Param - Cashier cashier - loaded coins
+    // Param - int coinStock - expected stock of every coin denomination
+    private static void checkStock(Catalog catalog, Cashier cashier, int coinStock)
+    {
+        Check.equal(NAMES.length, catalog.size(), "item count");
+        for (int id = 0; id < NAMES.length; id++)
+        {
+            Check.equal(NAMES[id], catalog.getName(id), "name");
+            Check.equal(PRICES[id], catalog.getPrice(id), "price of " + NAMES[id]);
+            Check.equal(STOCKS[id], catalog.getStock(id), "stock of " + NAMES[id]);
+        }
+
+        for (int coins : cashier.getCoinStock())
+        {
+            Check.equal(coinStock, coins, "coin stock");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Stock files and machines of tests, written into a new temporary directory
+final class TestStock
+{
+    private TestStock(){}
+
+    // Creates temporary directory deleted when tests end
+    // Returns - Path - empty directory
+    static Path directory() throws IOException
+    {
+        Path directory = Files.createTempDirectory("vending-test");
+        directory.toFile().deleteOnExit();
+        return directory;
+    }
+
+    // Writes stock file
+    // Param - Path file - stock file location
+    // Param - String[] items - item names
+    // Param - String[] prices - item prices like "2.59"
+    // Param - int[] stocks - item stock
+    // Param - int coinStock - stock of every coin denomination
+    // Returns - String - stock file location
+    static String write(Path file, String[] items, String[] prices, int[] stocks, int coinStock) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file)))
+        {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+            writer.println("<wendingMachineStock>");
+            writer.println("    <items>");
+            for (int i = 0; i < items.length; i++)
+            {
+                writer.printf("        <item name=\"%s\" price=\"%s\" stock=\"%d\"/>\n", items[i], prices[i],
+                        stocks[i]);
+            }
+
+            writer.println("    </items>");
+            writer.println("    <coins>");
+            for (int i = 0; i < Money.getCurrency().getCoinCount(); i++)
+            {
+                writer.printf("        <coin stock=\"%d\" value=\"%s\"/>\n", coinStock,
+                        Money.getCurrency().getCoinName(i));
+            }
+
+            writer.println("    </coins>");
+            writer.println("</wendingMachineStock>");
+        }
+
+        return file.toString();
+    }
+
+    // Creates machine stocked with Coke 2.59 and Sprite 2.00, 10 of each, and 100 coins of every denomination
+    // Param - Path directory - directory of the stock file
+    // Returns - Machine - stocked machine printing into nowhere
+    static Machine machine(Path directory) throws IOException{return machine(directory, new HeapCatalog());}
+
+    // Creates machine like machine(directory) keeping items in the given catalog
+    // Param - Path directory - directory of the stock file
+    // Param - Catalog catalog - empty item store
+    // Returns - Machine - stocked machine printing into nowhere
+    static Machine machine(Path directory, Catalog catalog) throws IOException
+    {
+        Machine machine = new Machine(catalog);
+        machine.setOutput(new ConsoleSink(new PrintStream(OutputStream.nullOutputStream())));
+        machine.restock(write(directory.resolve("stock.xml"), new String[]{"Coke", "Sprite"},
+                new String[]{"2.59", "2.00"}, new int[]{10, 10}, 100));
+        return machine;
+    }
+
+    // Inserts coins into the session until the due amount is paid, biggest coin first
+    // Param - Machine machine - machine
+    // Param - Session session - session with reserved items
+    static void pay(Machine machine, Session session)
+    {
+        while (machine.getRemainingAmount(session) > 0)
+        {
+            long remaining = machine.getRemainingAmount(session);
+            int coin = 0;
+            while (coin < machine.getCoinCount() - 1 && Money.parse(machine.getCoinName(coin)) > remaining)
+            {
+                coin++;
+            }
+
+            machine.insertCoin(session, machine.getCoinName(coin));
+        }
+    }
+}